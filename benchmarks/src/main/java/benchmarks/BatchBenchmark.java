@@ -0,0 +1,63 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import calculators.BatchEvaluator;
+import calculators.EvaluationResult;
+import calculators.InfixCalculator;
+
+/**
+ * scaling of the parallel batch evaluation with the number of workers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5 , time = 1)
+@Measurement(iterations = 5 , time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBenchmark
+{
+	@Param({"1" , "2" , "4" , "8"})
+	public int parallelism;
+	
+	private List<String> expressions;
+	private BatchEvaluator evaluator;
+	
+	@Setup
+	public void setup()
+	{
+		Random random = new Random(42);
+		Expressions.Shape[] shapes = Expressions.Shape.values();
+		expressions = new ArrayList<>(10_000);
+		for (int i = 0 ; i < 10_000 ; i++) expressions.add(shapes[i % shapes.length].generate(random));
+		evaluator = new BatchEvaluator(new InfixCalculator() , parallelism , BatchEvaluator.DEFAULT_CHUNK_SIZE);
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		evaluator.close();
+	}
+	
+	@Benchmark
+	public List<EvaluationResult> computeAll()
+	{
+		return evaluator.computeAll(expressions);
+	}
+}
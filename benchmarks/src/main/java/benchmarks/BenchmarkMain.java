@@ -0,0 +1,33 @@
+package benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * runs the benchmarks with the GC profiler attached, so that the allocation rate is reported alongside
+ * throughput and average time. takes the usual JMH command line, e.g. a regular expression to select benchmarks.
+ */
+public class BenchmarkMain
+{
+	public static void main(String[] args) throws IOException , RunnerException , CommandLineOptionException
+	{
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		if (commandLine.shouldHelp() || commandLine.shouldList())
+		{
+			// leave listing and help to the JMH launcher
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		
+		new Runner(new OptionsBuilder()
+				.parent(commandLine)
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
@@ -0,0 +1,112 @@
+package benchmarks;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import calculators.CompiledExpression;
+import calculators.InfixCalculator;
+
+/**
+ * one formula over many rows: parsing every row, evaluating a compiled plan row by row,
+ * and evaluating it a column at a time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5 , time = 1)
+@Measurement(iterations = 5 , time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColumnBenchmark
+{
+	private static final String FORMULA = "a * (b + 15) - c * 3";
+	private static final int ROWS = 100_000;
+	
+	private final InfixCalculator calculator = new InfixCalculator();
+	private CompiledExpression plan;
+	private String[] literalRows;
+	private Map<String , long[]> longs;
+	private Map<String , double[]> doubles;
+	private Map<String , BigDecimal[]> decimals;
+	
+	@Setup
+	public void setup()
+	{
+		plan = calculator.compile(FORMULA);
+		Random random = new Random(42);
+		long[] a = new long[ROWS] , b = new long[ROWS] , c = new long[ROWS];
+		literalRows = new String[ROWS];
+		for (int i = 0 ; i < ROWS ; i++)
+		{
+			a[i] = random.nextInt(1_000_000);
+			b[i] = random.nextInt(1_000_000);
+			c[i] = random.nextInt(1_000_000);
+			literalRows[i] = a[i] + " * (" + b[i] + " + 15) - " + c[i] + " * 3";
+		}
+		longs = Map.of("a" , a , "b" , b , "c" , c);
+		doubles = Map.of("a" , toDoubles(a) , "b" , toDoubles(b) , "c" , toDoubles(c));
+		decimals = Map.of("a" , toDecimals(a) , "b" , toDecimals(b) , "c" , toDecimals(c));
+	}
+	
+	private static double[] toDoubles(long[] column)
+	{
+		double[] res = new double[column.length];
+		for (int i = 0 ; i < column.length ; i++) res[i] = column[i];
+		return res;
+	}
+	
+	private static BigDecimal[] toDecimals(long[] column)
+	{
+		BigDecimal[] res = new BigDecimal[column.length];
+		for (int i = 0 ; i < column.length ; i++) res[i] = BigDecimal.valueOf(column[i]);
+		return res;
+	}
+	
+	@Benchmark
+	public BigDecimal[] parseEveryRow()
+	{
+		BigDecimal[] res = new BigDecimal[ROWS];
+		for (int i = 0 ; i < ROWS ; i++) res[i] = calculator.compute(literalRows[i]);
+		return res;
+	}
+	
+	@Benchmark
+	public BigDecimal[] planPerRow()
+	{
+		BigDecimal[] a = decimals.get("a") , b = decimals.get("b") , c = decimals.get("c");
+		BigDecimal[] res = new BigDecimal[ROWS];
+		for (int i = 0 ; i < ROWS ; i++) res[i] = calculator.compute(plan , Map.of("a" , a[i] , "b" , b[i] , "c" , c[i]));
+		return res;
+	}
+	
+	@Benchmark
+	public BigDecimal[] longColumns()
+	{
+		return plan.evaluateLongs(longs , 4 , RoundingMode.HALF_UP);
+	}
+	
+	@Benchmark
+	public BigDecimal[] decimalColumns()
+	{
+		return plan.evaluateDecimals(decimals , 4 , RoundingMode.HALF_UP);
+	}
+	
+	@Benchmark
+	public double[] doubleColumns()
+	{
+		return plan.evaluateDoubles(doubles);
+	}
+}
@@ -0,0 +1,118 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import calculators.CalculatorConfig;
+import calculators.CalculatorMetrics;
+import calculators.CompiledExpression;
+import calculators.InfixCalculator;
+import calculators.PostfixCalculator;
+
+/**
+ * infix and postfix evaluation over expressions of every shape.
+ * the postfix input is the infix expression translated by its compiled plan, so both sides compute the same thing.
+ */
+@BenchmarkMode({Mode.Throughput , Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5 , time = 1)
+@Measurement(iterations = 5 , time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExpressionBenchmark
+{
+	@Param({"SHORT" , "LONG" , "NESTED" , "SCIENTIFIC" , "DIVISION"})
+	public Expressions.Shape shape;
+	
+	private final InfixCalculator infix = new InfixCalculator();
+	private final PostfixCalculator postfix = new PostfixCalculator();
+	private final InfixCalculator tieredInfix = new InfixCalculator(CalculatorConfig.DEFAULT.withTiered(true));
+	private final InfixCalculator meteredInfix =
+			new InfixCalculator(CalculatorConfig.DEFAULT.withMetrics(new CalculatorMetrics()));
+	
+	private String infixExpression;
+	private String postfixExpression;
+	private CompiledExpression plan;
+	private CompiledExpression tieredPlan;
+	
+	@Setup
+	public void setup()
+	{
+		infixExpression = shape.generate();
+		plan = infix.compile(infixExpression);
+		tieredPlan = tieredInfix.compile(infixExpression);
+		postfixExpression = plan.toString();
+	}
+	
+	@Benchmark
+	public BigDecimal infix()
+	{
+		return infix.compute(infixExpression);
+	}
+	
+	/**
+	 * the cost of metrics, against infix().
+	 */
+	@Benchmark
+	public BigDecimal infixMetered()
+	{
+		return meteredInfix.compute(infixExpression);
+	}
+	
+	/**
+	 * parsing alone, without evaluation.
+	 */
+	@Benchmark
+	public CompiledExpression infixCompile()
+	{
+		return infix.compile(infixExpression);
+	}
+	
+	/**
+	 * evaluation alone, of a plan compiled beforehand.
+	 */
+	@Benchmark
+	public BigDecimal infixPrecompiled()
+	{
+		return infix.compute(plan);
+	}
+	
+	/**
+	 * evaluation of a plan compiled beforehand, and compiled to bytecode once hot, against infixPrecompiled().
+	 * LONG and NESTED are too long to be compiled, and stay interpreted.
+	 */
+	@Benchmark
+	public BigDecimal infixTiered()
+	{
+		return tieredInfix.compute(tieredPlan);
+	}
+	
+	@Benchmark
+	public BigDecimal postfix()
+	{
+		return postfix.compute(postfixExpression);
+	}
+	
+	/**
+	 * postfix evaluation as the tokens are read, without compiling.
+	 */
+	@Benchmark
+	public BigDecimal postfixStream() throws IOException
+	{
+		return postfix.compute(new StringReader(postfixExpression));
+	}
+}
@@ -0,0 +1,218 @@
+package benchmarks;
+
+import java.util.Random;
+
+/**
+ * deterministic expression generators shared by the benchmarks.
+ * every generator is seeded, so that each run of a benchmark sees exactly the same input.
+ */
+public final class Expressions
+{
+	private Expressions() {}
+	
+	/**
+	 * the shapes of infix expression that are benchmarked.
+	 */
+	public enum Shape
+	{
+		/**
+		 * a handful of small integers, the typical interactive input.
+		 */
+		SHORT
+				{
+					@Override
+					public String generate(Random random)
+					{
+						return "1 + 2 * 3 - 4";
+					}
+				},
+		
+		/**
+		 * a flat chain of a few hundred integer terms of mixed priority.
+		 */
+		LONG
+				{
+					@Override
+					public String generate(Random random)
+					{
+						StringBuilder sb = new StringBuilder();
+						sb.append(1 + random.nextInt(999));
+						for (int i = 1 ; i < 256 ; i++)
+						{
+							sb.append(' ').append(random.nextBoolean() ? '+' : (random.nextBoolean() ? '-' : '*')).append(' ');
+							sb.append(1 + random.nextInt(9));
+						}
+						return sb.toString();
+					}
+				},
+		
+		/**
+		 * brackets nested a hundred deep.
+		 */
+		NESTED
+				{
+					@Override
+					public String generate(Random random)
+					{
+						int depth = 100;
+						StringBuilder sb = new StringBuilder();
+						for (int i = 0 ; i < depth ; i++) sb.append('(').append(1 + random.nextInt(9)).append(" + ");
+						sb.append(1 + random.nextInt(9));
+						for (int i = 0 ; i < depth ; i++) sb.append(") * ").append(1 + random.nextInt(3));
+						return sb.toString();
+					}
+				},
+		
+		/**
+		 * non-integral numerals in scientific notation, which cannot take the long fast path.
+		 */
+		SCIENTIFIC
+				{
+					@Override
+					public String generate(Random random)
+					{
+						StringBuilder sb = new StringBuilder();
+						for (int i = 0 ; i < 32 ; i++)
+						{
+							if (i > 0) sb.append(random.nextBoolean() ? " + " : " * ");
+							sb.append(1 + random.nextInt(9)).append('.').append(random.nextInt(1000))
+									.append('e').append(random.nextInt(7) - 3);
+						}
+						return sb.toString();
+					}
+				},
+		
+		/**
+		 * a chain of divisions, each rounded to the calculator's scale.
+		 */
+		DIVISION
+				{
+					@Override
+					public String generate(Random random)
+					{
+						StringBuilder sb = new StringBuilder();
+						sb.append(1 + random.nextInt(1_000_000));
+						for (int i = 1 ; i < 32 ; i++) sb.append(" / ").append(1 + random.nextInt(97));
+						return sb.toString();
+					}
+				};
+		
+		public abstract String generate(Random random);
+		
+		public String generate()
+		{
+			return generate(new Random(42));
+		}
+	}
+	
+	/**
+	 * a flat sum and difference of single digits and brackets, as accepted by BasicCalculator.
+	 */
+	public static String additive(Random random , int terms)
+	{
+		StringBuilder sb = new StringBuilder();
+		int open = 0;
+		for (int i = 0 ; i < terms ; i++)
+		{
+			if (i > 0) sb.append(random.nextBoolean() ? " + " : " - ");
+			if (random.nextInt(4) == 0)
+			{
+				sb.append('(');
+				open++;
+			}
+			sb.append(random.nextInt(10));
+			if (open > 0 && random.nextInt(3) == 0)
+			{
+				sb.append(')');
+				open--;
+			}
+		}
+		while (open-- > 0) sb.append(')');
+		return sb.toString();
+	}
+	
+	/**
+	 * four operations on small positive integers, without brackets, as accepted by BasicCalculatorII.
+	 * divisors are never zero.
+	 */
+	public static String arithmetic(Random random , int terms)
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(1 + random.nextInt(99));
+		for (int i = 1 ; i < terms ; i++)
+		{
+			sb.append(' ').append("+-*/".charAt(random.nextInt(4))).append(' ');
+			sb.append(1 + random.nextInt(9));
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * brackets nested $depth deep, each around a difference, as in (3 - (1 + (4 - ... 5))): the worst case of
+	 * anything that recurses on brackets. accepted by BasicCalculator, and its value stays small.
+	 */
+	public static String nested(Random random , int depth)
+	{
+		StringBuilder sb = new StringBuilder(depth * 6 + 1);
+		for (int i = 0 ; i < depth ; i++) sb.append('(').append(random.nextInt(10)).append(random.nextBoolean() ? " + " : " - ");
+		sb.append(random.nextInt(10));
+		for (int i = 0 ; i < depth ; i++) sb.append(')');
+		return sb.toString();
+	}
+	
+	/**
+	 * a flat sum and difference of $terms small integers, without brackets, whose value stays small.
+	 */
+	public static String flatSum(Random random , int terms)
+	{
+		StringBuilder sb = new StringBuilder(terms * 5);
+		sb.append(random.nextInt(1000));
+		for (int i = 1 ; i < terms ; i++) sb.append(random.nextBoolean() ? " + " : " - ").append(random.nextInt(1000));
+		return sb.toString();
+	}
+	
+	/**
+	 * a sum of $terms numerals of 19 to 40 significant digits, too many for a long, in scientific notation.
+	 */
+	public static String scientificSum(Random random , int terms)
+	{
+		StringBuilder sb = new StringBuilder(terms * 40);
+		for (int i = 0 ; i < terms ; i++)
+		{
+			if (i > 0) sb.append(random.nextBoolean() ? " + " : " - ");
+			sb.append(1 + random.nextInt(9)).append('.');
+			for (int j = 19 + random.nextInt(22) ; j > 1 ; j--) sb.append(random.nextInt(10));
+			sb.append('e').append(random.nextInt(7) - 3);
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * a chain of $terms divisions by non-zero digits, each rounded to the calculator's scale;
+	 * accepted by BasicCalculatorII.
+	 */
+	public static String divisionChain(Random random , int terms)
+	{
+		StringBuilder sb = new StringBuilder(terms * 4 + 10);
+		sb.append(1 + random.nextInt(Integer.MAX_VALUE - 1));
+		for (int i = 1 ; i < terms ; i++) sb.append(" / ").append(1 + random.nextInt(9));
+		return sb.toString();
+	}
+	
+	/**
+	 * a chain of $terms digits joined by && and || and, now and then, by the ? and : of a conditional,
+	 * whose else branch is the rest of the chain.
+	 */
+	public static String logicalChain(Random random , int terms)
+	{
+		StringBuilder sb = new StringBuilder(terms * 5);
+		sb.append(random.nextInt(10));
+		for (int i = 1 ; i < terms ; i++)
+		{
+			if (i + 1 < terms && random.nextInt(8) == 0) sb.append(" ? ").append(random.nextInt(10)).append(" : ");
+			else sb.append(random.nextBoolean() ? " && " : " || ");
+			sb.append(random.nextInt(10));
+		}
+		return sb.toString();
+	}
+}
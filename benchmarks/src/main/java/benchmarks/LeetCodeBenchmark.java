@@ -0,0 +1,69 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import calculators.leetcode.BasicCalculator;
+import calculators.leetcode.BasicCalculatorII;
+
+/**
+ * the int-only leetcode calculators, each over the subset of syntax it accepts,
+ * single-pass against the original stack-based solutions; 262144 terms make about a megabyte of input.
+ */
+@BenchmarkMode({Mode.Throughput , Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5 , time = 1)
+@Measurement(iterations = 5 , time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LeetCodeBenchmark
+{
+	@Param({"8" , "512" , "262144"})
+	public int terms;
+	
+	private String additive;
+	private String arithmetic;
+	
+	@Setup
+	public void setup()
+	{
+		additive = Expressions.additive(new Random(42) , terms);
+		arithmetic = Expressions.arithmetic(new Random(42) , terms);
+	}
+	
+	@Benchmark
+	public int basicCalculator()
+	{
+		return BasicCalculator.calculate(additive);
+	}
+	
+	@Benchmark
+	public int basicCalculatorWithStacks()
+	{
+		return BasicCalculator.calculateWithStacks(additive);
+	}
+	
+	@Benchmark
+	public int basicCalculatorII()
+	{
+		return BasicCalculatorII.calculate(arithmetic);
+	}
+	
+	@Benchmark
+	public int basicCalculatorIIWithStacks()
+	{
+		return BasicCalculatorII.calculateWithStacks(arithmetic);
+	}
+}
@@ -0,0 +1,124 @@
+package benchmarks;
+
+import java.util.Random;
+
+import calculators.leetcode.BasicCalculator;
+import calculators.leetcode.BasicCalculatorII;
+
+/**
+ * a randomised differential test of the single-pass leetcode calculators against the stack-based originals:
+ * both are run on random expressions, from a handful of terms to over a megabyte, including unary minus,
+ * brackets nested beyond 64 levels and numerals that overflow int, and must agree on every one.
+ * exits with status 1 on the first disagreement, printing the seed and the expression.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar benchmarks.LeetCodeDifferential [seed] [cases]
+ * </pre>
+ */
+public class LeetCodeDifferential
+{
+	/**
+	 * about a megabyte of either kind of expression.
+	 */
+	private static final int HUGE_TERMS = 1 << 18;
+	
+	public static void main(String[] args)
+	{
+		long seed = args.length > 0 ? Long.parseLong(args[0]) : System.nanoTime();
+		int cases = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+		Random random = new Random(seed);
+		
+		for (int i = 0 ; i < cases ; i++)
+		{
+			int terms = i % 1000 == 999 ? HUGE_TERMS : 1 + random.nextInt(i % 10 == 9 ? 2000 : 20);
+			check(seed , "BasicCalculator" , signed(random , terms) ,
+					BasicCalculator::calculate , BasicCalculator::calculateWithStacks);
+			check(seed , "BasicCalculatorII" , Expressions.arithmetic(random , terms) ,
+					BasicCalculatorII::calculate , BasicCalculatorII::calculateWithStacks);
+			check(seed , "BasicCalculatorII" , large(random , terms) ,
+					BasicCalculatorII::calculate , BasicCalculatorII::calculateWithStacks);
+		}
+		System.out.printf("seed %d: %d case(s) of each calculator agree%n" , seed , cases);
+	}
+	
+	private interface Solution
+	{
+		int calculate(String expression);
+	}
+	
+	private static void check(long seed , String name , String expression , Solution fast , Solution reference)
+	{
+		String expected = outcome(reference , expression);
+		String actual = outcome(fast , expression);
+		if (expected.equals(actual)) return;
+		
+		System.out.printf("%s disagrees, seed %d: expected %s, got %s, for%n%s%n" , name , seed , expected , actual ,
+				expression.length() > 200 ? expression.substring(0 , 200) + "... (" + expression.length() + " chars)" : expression);
+		System.exit(1);
+	}
+	
+	private static String outcome(Solution solution , String expression)
+	{
+		try
+		{
+			return Integer.toString(solution.calculate(expression));
+		} catch (ArithmeticException e)
+		{
+			return e.toString();
+		}
+	}
+	
+	/**
+	 * like Expressions.additive, but with unary minus at the start and after opening brackets,
+	 * with numerals of up to 10 digits, and now and then a run of brackets opened 100 deep.
+	 */
+	private static String signed(Random random , int terms)
+	{
+		StringBuilder sb = new StringBuilder();
+		int open = 0;
+		for (int i = 0 ; i < terms ; i++)
+		{
+			if (i > 0) sb.append(random.nextBoolean() ? " + " : "-");
+			int brackets = random.nextInt(4) != 0 ? 0 : random.nextInt(50) == 0 ? 100 : 1;
+			for (int j = 0 ; j < brackets ; j++)
+			{
+				if ((i == 0 || j > 0) && random.nextBoolean()) sb.append('-'); // never right after a binary operator
+				sb.append('(');
+				open++;
+			}
+			if ((i == 0 || brackets > 0) && random.nextBoolean()) sb.append('-');
+			sb.append(numeral(random));
+			while (open > 0 && random.nextBoolean()) // at least as often as opened, so that the nesting stays bounded
+			{
+				sb.append(')');
+				open--;
+			}
+		}
+		while (open-- > 0) sb.append(')');
+		return sb.toString();
+	}
+	
+	/**
+	 * four operations on numerals of up to 10 digits, so that products and sums overflow;
+	 * divisors may be zero, which both must fail on.
+	 */
+	private static String large(Random random , int terms)
+	{
+		StringBuilder sb = new StringBuilder(numeral(random));
+		for (int i = 1 ; i < terms ; i++)
+		{
+			sb.append(random.nextBoolean() ? " " : "").append("+-*/".charAt(random.nextInt(4)));
+			sb.append(random.nextBoolean() ? " " : "").append(numeral(random));
+		}
+		return sb.toString();
+	}
+	
+	private static String numeral(Random random)
+	{
+		return switch (random.nextInt(4))
+				{
+					case 0 -> Long.toString(1_000_000_000L + random.nextLong(9_000_000_000L)).substring(0 , 1 + random.nextInt(10));
+					case 1 -> "0";
+					default -> Integer.toString(random.nextInt(1000));
+				};
+	}
+}
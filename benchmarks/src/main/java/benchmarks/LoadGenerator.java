@@ -0,0 +1,234 @@
+package benchmarks;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import calculators.CalculatorServer;
+import calculators.InfixCalculator;
+
+/**
+ * a load generator for CalculatorServer: a number of connections each send infix expressions, pipelining
+ * a window of requests at a time, and the latency of every request, from its write to the arrival of its reply,
+ * is measured. reports throughput and latency percentiles.
+ * <p>
+ * without "--address", a server is started in this JVM, on a loopback port, or with "--unix" on a
+ * Unix domain socket in the temporary directory.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar benchmarks.LoadGenerator [--address &lt;address&gt; | --unix]
+ *     [--connections 4] [--requests 100000] [--pipeline 16] [--shape SHORT] [--scale 4]
+ * </pre>
+ * every connection first sends as many requests again, unmeasured, to warm up.
+ */
+public class LoadGenerator
+{
+	private static final int DISTINCT_EXPRESSIONS = 64;
+	
+	public static void main(String[] args) throws Exception
+	{
+		String address = null;
+		boolean unix = false;
+		int connections = 4;
+		int requests = 100_000;
+		int pipeline = 16;
+		Expressions.Shape shape = Expressions.Shape.SHORT;
+		int scale = 4;
+		for (int i = 0 ; i < args.length ; i++)
+		{
+			switch (args[i])
+			{
+				case "--address" -> address = args[++i];
+				case "--unix" -> unix = true;
+				case "--connections" -> connections = Integer.parseInt(args[++i]);
+				case "--requests" -> requests = Integer.parseInt(args[++i]);
+				case "--pipeline" -> pipeline = Integer.parseInt(args[++i]);
+				case "--shape" -> shape = Expressions.Shape.valueOf(args[++i]);
+				case "--scale" -> scale = Integer.parseInt(args[++i]);
+				default -> {
+					System.err.println("Unrecognised option: " + args[i]);
+					System.exit(2);
+				}
+			}
+		}
+		
+		CalculatorServer server = null;
+		SocketAddress target;
+		if (address != null) target = CalculatorServer.address(address);
+		else
+		{
+			SocketAddress local = unix
+					? UnixDomainSocketAddress.of(Files.createTempDirectory("calculator").resolve("server.sock"))
+					: new InetSocketAddress(InetAddress.getLoopbackAddress() , 0);
+			server = CalculatorServer.start(local , new InfixCalculator(scale));
+			target = server.address();
+		}
+		
+		try
+		{
+			run(target , connections , requests , pipeline , shape , scale);
+		} finally
+		{
+			if (server != null)
+			{
+				server.close();
+				if (unix) Files.deleteIfExists(((UnixDomainSocketAddress) target).getPath().getParent());
+			}
+		}
+	}
+	
+	private static void run(
+			SocketAddress target , int connections , int requests , int pipeline , Expressions.Shape shape , int scale
+	) throws Exception
+	{
+		Random random = new Random(42);
+		byte[][] lines = new byte[DISTINCT_EXPRESSIONS][];
+		for (int i = 0 ; i < lines.length ; i++) lines[i] = (shape.generate(random) + "\n").getBytes(UTF_8);
+		
+		long[][] latencies = new long[connections][];
+		AtomicLong errors = new AtomicLong();
+		Thread[] clients = new Thread[connections];
+		Exception[] failures = new Exception[connections];
+		long[] starts = new long[connections];
+		long[] ends = new long[connections];
+		for (int c = 0 ; c < connections ; c++)
+		{
+			int client = c;
+			clients[c] = new Thread(() -> {
+				try (SocketChannel channel = SocketChannel.open(target))
+				{
+					Connection connection = new Connection(channel);
+					connection.command(":infix");
+					connection.command(":scale " + scale);
+					connection.send(lines , requests , pipeline , null); // warm-up
+					latencies[client] = new long[requests];
+					starts[client] = System.nanoTime();
+					errors.addAndGet(connection.send(lines , requests , pipeline , latencies[client]));
+					ends[client] = System.nanoTime();
+				} catch (Exception e)
+				{
+					failures[client] = e;
+				}
+			} , "load-" + c);
+		}
+		
+		for (Thread client : clients) client.start();
+		for (Thread client : clients) client.join();
+		for (Exception failure : failures) if (failure != null) throw failure;
+		long elapsed = Arrays.stream(ends).max().getAsLong() - Arrays.stream(starts).min().getAsLong();
+		
+		long[] all = new long[connections * requests];
+		for (int c = 0 ; c < connections ; c++) System.arraycopy(latencies[c] , 0 , all , c * requests , requests);
+		Arrays.sort(all);
+		
+		long total = all.length;
+		System.out.printf("%s, %d connection(s), pipeline %d, shape %s%n" , target , connections , pipeline , shape);
+		System.out.printf("requests: %d, %d error(s), in %.2f s%n" ,
+				total , errors.get() , elapsed / 1e9);
+		System.out.printf("latency: p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus%n" ,
+				percentile(all , 50) / 1e3 , percentile(all , 99) / 1e3 , percentile(all , 99.9) / 1e3 ,
+				all[all.length - 1] / 1e3);
+		System.out.printf("throughput: %.0f requests/s%n" , total / (elapsed / 1e9));
+	}
+	
+	private static long percentile(long[] sorted , double percentile)
+	{
+		int rank = (int) Math.ceil(sorted.length * percentile / 100);
+		return sorted[Math.max(0 , rank - 1)];
+	}
+	
+	/**
+	 * one client connection, reading replies line by line.
+	 */
+	private static final class Connection
+	{
+		private final SocketChannel channel;
+		private final ByteBuffer in = ByteBuffer.allocate(64 << 10);
+		private final ByteBuffer out = ByteBuffer.allocate(64 << 10);
+		private final StringBuilder reply = new StringBuilder();
+		
+		Connection(SocketChannel channel)
+		{
+			this.channel = channel;
+			in.flip();
+		}
+		
+		/**
+		 * sends a command, failing unless it is answered "ok".
+		 */
+		void command(String command) throws IOException
+		{
+			out.clear();
+			out.put((command + "\n").getBytes(UTF_8)).flip();
+			while (out.hasRemaining()) channel.write(out);
+			String answer = readLine();
+			if (!answer.equals("ok")) throw new IOException("Command " + command + " answered: " + answer);
+		}
+		
+		/**
+		 * sends $count requests, at most $pipeline of them unanswered at any time.
+		 *
+		 * @param latencies where the latency of each request is put, if not null.
+		 * @return number of error replies.
+		 */
+		long send(byte[][] lines , int count , int pipeline , long[] latencies) throws IOException
+		{
+			long errors = 0;
+			for (int done = 0 ; done < count ; )
+			{
+				int window = Math.min(pipeline , count - done);
+				out.clear();
+				long now = System.nanoTime();
+				for (int i = 0 ; i < window ; i++)
+				{
+					byte[] line = lines[(done + i) % lines.length];
+					if (out.remaining() < line.length) flush();
+					out.put(line);
+				}
+				flush();
+				
+				for (int i = 0 ; i < window ; i++)
+				{
+					String answer = readLine();
+					if (latencies != null) latencies[done + i] = System.nanoTime() - now;
+					if (answer.startsWith("error:")) errors++;
+				}
+				done += window;
+			}
+			return errors;
+		}
+		
+		private void flush() throws IOException
+		{
+			out.flip();
+			while (out.hasRemaining()) channel.write(out);
+			out.clear();
+		}
+		
+		private String readLine() throws IOException
+		{
+			reply.setLength(0);
+			while (true)
+			{
+				while (in.hasRemaining())
+				{
+					char ch = (char) in.get(); // only ever compared with ASCII
+					if (ch == '\n') return reply.toString();
+					reply.append(ch);
+				}
+				in.clear();
+				if (channel.read(in) < 0) throw new IOException("Connection closed by the server");
+				in.flip();
+			}
+		}
+	}
+}
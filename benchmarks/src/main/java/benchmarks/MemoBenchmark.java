@@ -0,0 +1,84 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import calculators.BatchEvaluator;
+import calculators.EvaluationResult;
+import calculators.InfixCalculator;
+import calculators.SubexpressionMemo;
+
+/**
+ * a batch of expressions built from a small pool of shared bracketed sub-terms,
+ * evaluated with and without a memo of subexpressions; the memo is cleared before every batch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5 , time = 1)
+@Measurement(iterations = 5 , time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MemoBenchmark
+{
+	/**
+	 * number of distinct sub-terms the expressions are built from.
+	 */
+	@Param({"16" , "256"})
+	public int subterms;
+	
+	private List<String> expressions;
+	private BatchEvaluator plain;
+	private BatchEvaluator memoised;
+	private SubexpressionMemo memo;
+	
+	@Setup
+	public void setup()
+	{
+		Random random = new Random(42);
+		String[] pool = new String[subterms];
+		for (int i = 0 ; i < subterms ; i++) pool[i] = Expressions.Shape.DIVISION.generate(random);
+		
+		expressions = new ArrayList<>(10_000);
+		for (int i = 0 ; i < 10_000 ; i++)
+			expressions.add("(" + pool[random.nextInt(subterms)] + ") * (" + pool[random.nextInt(subterms)] + ") + " + i);
+		
+		memo = new SubexpressionMemo(4096);
+		plain = new BatchEvaluator(new InfixCalculator() , 4 , BatchEvaluator.DEFAULT_CHUNK_SIZE);
+		memoised = new BatchEvaluator(new InfixCalculator() , 4 , BatchEvaluator.DEFAULT_CHUNK_SIZE , memo);
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		plain.close();
+		memoised.close();
+	}
+	
+	@Benchmark
+	public List<EvaluationResult> plain()
+	{
+		return plain.computeAll(expressions);
+	}
+	
+	@Benchmark
+	public List<EvaluationResult> memoised()
+	{
+		memo.clear();
+		return memoised.computeAll(expressions);
+	}
+}
@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import calculators.CompiledExpression;
+import calculators.InfixCalculator;
+
+/**
+ * a machine-generated formula repeating the same sub-terms, evaluated as parsed and as optimised.
+ */
+@BenchmarkMode({Mode.Throughput , Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5 , time = 1)
+@Measurement(iterations = 5 , time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OptimizerBenchmark
+{
+	private final Map<String , BigDecimal> bindings = Map.of("x" , new BigDecimal("3.25") , "y" , BigDecimal.valueOf(7));
+	
+	private CompiledExpression plan;
+	private CompiledExpression optimized;
+	
+	@Setup
+	public void setup()
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0 ; i < 32 ; i++)
+		{
+			if (i > 0) sb.append(" + ");
+			sb.append("(1.5 * x + 2) / (y * 1 + 0) * (").append(i % 4).append(" * 2.5 + 1)");
+		}
+		plan = new InfixCalculator().compile(sb.toString());
+		optimized = plan.optimize(4 , RoundingMode.HALF_UP);
+	}
+	
+	@Benchmark
+	public BigDecimal parsed()
+	{
+		return plan.evaluate(bindings , 4 , RoundingMode.HALF_UP);
+	}
+	
+	@Benchmark
+	public BigDecimal optimized()
+	{
+		return optimized.evaluate(bindings , 4 , RoundingMode.HALF_UP);
+	}
+	
+	@Benchmark
+	public CompiledExpression optimize()
+	{
+		return plan.optimize(4 , RoundingMode.HALF_UP);
+	}
+}
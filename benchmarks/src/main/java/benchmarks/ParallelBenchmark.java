@@ -0,0 +1,69 @@
+package benchmarks;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import calculators.InfixCalculator;
+import calculators.ParallelEvaluator;
+
+/**
+ * scaling of the parallel evaluation of a single expression of some megabytes with the number of workers,
+ * against its sequential evaluation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5 , time = 1)
+@Measurement(iterations = 5 , time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelBenchmark
+{
+	@Param({"1" , "2" , "4" , "8"})
+	public int parallelism;
+	
+	@Param({"65536"})
+	public int threshold;
+	
+	private final InfixCalculator infix = new InfixCalculator();
+	private String expression;
+	private ParallelEvaluator evaluator;
+	
+	@Setup
+	public void setup()
+	{
+		expression = Expressions.arithmetic(new Random(42) , 1 << 20);
+		evaluator = new ParallelEvaluator(infix , parallelism , threshold);
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		evaluator.close();
+	}
+	
+	@Benchmark
+	public BigDecimal sequential()
+	{
+		return infix.compute(expression);
+	}
+	
+	@Benchmark
+	public BigDecimal parallel()
+	{
+		return evaluator.compute(expression);
+	}
+}
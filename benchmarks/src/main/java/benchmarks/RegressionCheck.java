@@ -0,0 +1,347 @@
+package benchmarks;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import calculators.BatchEvaluator;
+import calculators.CalculatorConfig;
+import calculators.CalculatorMetrics;
+import calculators.CalculatorServer;
+import calculators.CompiledExpression;
+import calculators.ErrorCode;
+import calculators.EvaluationResult;
+import calculators.IllegalArithmeticExpressionSyntaxException;
+import calculators.InfixCalculator;
+import calculators.Operator;
+import calculators.OperatorRegistry;
+import calculators.PostfixCalculator;
+import calculators.SubexpressionMemo;
+
+/**
+ * checks of behaviour that once went wrong, each run on its own and reported as passed or failed;
+ * exits with status 1 if any failed.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar benchmarks.RegressionCheck [--only &lt;check&gt;]
+ * </pre>
+ */
+public class RegressionCheck
+{
+	/**
+	 * the greatest argument of an instruction, and so the furthest target of a jump,
+	 * as CompiledExpression.MAX_ARGUMENT.
+	 */
+	private static final int MAX_ARGUMENT = (1 << 24) - 1;
+	
+	/**
+	 * the evaluations after which a tiered plan is compiled, as PlanCompiler.THRESHOLD.
+	 */
+	private static final int THRESHOLD = 1_000;
+	
+	private interface Check
+	{
+		void run() throws Exception;
+	}
+	
+	public static void main(String[] args)
+	{
+		String only = args.length == 2 && args[0].equals("--only") ? args[1] : null;
+		
+		Map<String , Check> checks = new LinkedHashMap<>();
+		checks.put("planLengthLimit" , RegressionCheck::planLengthLimit);
+		checks.put("batchMetrics" , RegressionCheck::batchMetrics);
+		checks.put("serverLastLine" , RegressionCheck::serverLastLine);
+		checks.put("postfixStreamParity" , RegressionCheck::postfixStreamParity);
+		checks.put("tieringByText" , RegressionCheck::tieringByText);
+		checks.put("signedPower" , RegressionCheck::signedPower);
+		checks.put("batchItemErrors" , RegressionCheck::batchItemErrors);
+		
+		int failures = 0;
+		for (Map.Entry<String , Check> check : checks.entrySet())
+		{
+			if (only != null && !check.getKey().equals(only)) continue;
+			try
+			{
+				check.getValue().run();
+				System.out.printf("%-28s passed%n" , check.getKey());
+			} catch (Exception | AssertionError e)
+			{
+				System.out.printf("%-28s FAILED: %s%n" , check.getKey() , e);
+				failures++;
+			}
+		}
+		System.out.printf("%d check(s) failed%n" , failures);
+		if (failures > 0) System.exit(1);
+	}
+	
+	private static void expect(boolean condition , String message)
+	{
+		if (!condition) throw new AssertionError(message);
+	}
+	
+	private static void expectTooLong(EvaluationResult result)
+	{
+		expect(!result.isSuccess() && result.problem().code() == ErrorCode.TOO_LONG , "expected TOO_LONG, got " + result);
+	}
+	
+	/**
+	 * a plan whose last jump lands at instruction MAX_ARGUMENT evaluates as it should; one instruction more is
+	 * refused as too long, rather than wrapping the target around. a plan without jumps may be of any length.
+	 */
+	private static void planLengthLimit()
+	{
+		InfixCalculator infix = new InfixCalculator();
+		// 1, OR_ELSE, 1, TRUTH, OR_ELSE, then 2 * terms + 1 for the sum, and TRUTH, where the second OR_ELSE lands
+		int terms = (MAX_ARGUMENT - 7) / 2;
+		String atLimit = "1||1||" + "1+".repeat(terms) + "1";
+		expect(infix.compute(atLimit).compareTo(BigDecimal.ONE) == 0 , "wrong value at the limit");
+		expect(infix.tryCompute(atLimit).isSuccess() , "failed at the limit");
+		
+		String beyond = "1||1||" + "1+".repeat(terms + 1) + "1";
+		expectTooLong(infix.tryCompute(beyond));
+		try
+		{
+			infix.compute(beyond);
+			throw new AssertionError("compute accepted a jump beyond the limit");
+		} catch (IllegalArithmeticExpressionSyntaxException e)
+		{
+			expect(e.code() == ErrorCode.TOO_LONG , "expected TOO_LONG, got " + e.code());
+		}
+		expectTooLong(infix.tryCompute("1||" + "1+".repeat(9_000_000) + "1"));
+		
+		// 1, OR_ELSE, then 2 * operations + 1 for the sum, and TRUTH, where OR_ELSE lands
+		PostfixCalculator postfix = new PostfixCalculator();
+		int operations = (MAX_ARGUMENT - 4) / 2;
+		String sum = "1" + " 1 +".repeat(operations);
+		expect(postfix.compute("1 " + sum + " ||").compareTo(BigDecimal.ONE) == 0 , "wrong postfix value at the limit");
+		expectTooLong(postfix.tryCompute("1 " + sum + " 1 + ||"));
+		
+		// of more instructions than MAX_ARGUMENT, but no jumps
+		String flat = "1+".repeat(9_000_000) + "1";
+		expect(infix.compute(flat).intValueExact() == 9_000_001 , "wrong value of a long flat sum");
+		expect(infix.tryCompute(flat).isSuccess() , "failed on a long flat sum");
+		expect(postfix.compute("1" + " 1 +".repeat(9_000_000)).intValueExact() == 9_000_001 ,
+				"wrong postfix value of a long flat sum");
+	}
+	
+	/**
+	 * batch evaluation, which reports errors without throwing, is measured in the metrics of the calculator
+	 * as compute(String) is, with or without a memo, and in either notation.
+	 */
+	private static void batchMetrics()
+	{
+		// parsed and evaluated, parsed and evaluated, parsed and failed, failed to parse
+		List<String> infixBatch = List.of("1 + 2" , "(3 * 4) / 5" , "(1 + 1) / 0" , "2 + * 3");
+		List<String> postfixBatch = List.of("1 2 +" , "3 4 * 5 /" , "1 1 + 0 /" , "2 + 3");
+		
+		CalculatorMetrics metrics = new CalculatorMetrics();
+		InfixCalculator infix = new InfixCalculator(CalculatorConfig.DEFAULT.withMetrics(metrics));
+		infix.computeAll(infixBatch);
+		expectCounts(metrics , "infix");
+		
+		metrics.reset();
+		try (BatchEvaluator evaluator = new BatchEvaluator(infix , new SubexpressionMemo(16)))
+		{
+			evaluator.computeAll(infixBatch);
+		}
+		expectCounts(metrics , "infix with a memo");
+		
+		metrics.reset();
+		new PostfixCalculator(CalculatorConfig.DEFAULT.withMetrics(metrics)).computeAll(postfixBatch);
+		expectCounts(metrics , "postfix");
+	}
+	
+	private static void expectCounts(CalculatorMetrics metrics , String what)
+	{
+		expect(metrics.parses() == 3 && metrics.evaluations() == 2 && metrics.errors() == 2 ,
+				what + ": expected 3 parses, 2 evaluations and 2 errors, got " + metrics.parses() + ", "
+						+ metrics.evaluations() + " and " + metrics.errors());
+		expect(metrics.evaluationLatency().count() == 2 && metrics.errorLatency().count() == 2 ,
+				what + ": latencies not recorded");
+	}
+	
+	/**
+	 * the server answers a last line that ends at the end of the input rather than in a newline.
+	 */
+	private static void serverLastLine() throws Exception
+	{
+		InetSocketAddress any = new InetSocketAddress(InetAddress.getLoopbackAddress() , 0);
+		try (CalculatorServer server = CalculatorServer.start(any , new InfixCalculator());
+				SocketChannel channel = SocketChannel.open(server.address()))
+		{
+			channel.write(ByteBuffer.wrap("1 + 2\n3 * 4".getBytes(UTF_8)));
+			channel.shutdownOutput();
+			
+			ByteArrayOutputStream replies = new ByteArrayOutputStream();
+			ByteBuffer buffer = ByteBuffer.allocate(256);
+			while (channel.read(buffer) >= 0)
+			{
+				replies.write(buffer.array() , 0 , buffer.position());
+				buffer.clear();
+			}
+			String got = replies.toString(UTF_8);
+			expect(got.equals("3\n12\n") , "expected replies 3 and 12, got " + got.replace("\n" , "\\n"));
+		}
+	}
+	
+	/**
+	 * postfix evaluated as it is read gives what compute(String) gives, value or error, comparisons included,
+	 * and refuses && || and ? by name rather than as malformed numerals.
+	 */
+	private static void postfixStreamParity()
+	{
+		PostfixCalculator postfix = new PostfixCalculator();
+		List<String> expressions = new ArrayList<>(List.of("1 2 <" , "2 2 <=" , "3 2 >" , "1.5 2 >=" , "2 2.0 ==" ,
+				"1 2 !=" , "9223372036854775807 1 + 9223372036854775807 >" , "1 0 / 1 <" , "1 :"));
+		Random random = new Random(42);
+		for (int i = 0 ; i < 2000 ; i++) expressions.add(postfixTree(random , 1 + random.nextInt(6)));
+		for (String expression : expressions)
+		{
+			String expected = outcome(() -> postfix.compute(expression));
+			String got = outcome(() -> postfix.compute(new StringReader(expression)));
+			expect(got.equals(expected) , "'" + expression + "': expected " + expected + " when read, got " + got);
+		}
+		
+		for (String expression : List.of("1 0 &&" , "1 0 ||" , "1 2 3 ?"))
+		{
+			String got = outcome(() -> postfix.compute(new StringReader(expression)));
+			expect(got.contains("unsupported in streaming mode") , "'" + expression + "': expected a refusal, got " + got);
+		}
+	}
+	
+	/**
+	 * a random postfix expression of the arithmetic operators and comparisons, of at most $depth levels.
+	 */
+	private static String postfixTree(Random random , int depth)
+	{
+		String[] operands = {"0" , "1" , "2" , "-3" , "2.5" , "1e3" , "99999999999999999999" , "9223372036854775807"};
+		String[] operators = {"+" , "-" , "*" , "/" , "^" , "<" , "<=" , ">" , ">=" , "==" , "!="};
+		if (depth == 0 || random.nextInt(3) == 0) return operands[random.nextInt(operands.length)];
+		return postfixTree(random , depth - 1) + ' ' + postfixTree(random , depth - 1) + ' '
+				+ operators[random.nextInt(operators.length)];
+	}
+	
+	private interface Computation
+	{
+		BigDecimal compute() throws Exception;
+	}
+	
+	/**
+	 * the value computed, or the class and message of the exception thrown.
+	 */
+	private static String outcome(Computation computation)
+	{
+		try
+		{
+			return computation.compute().toString();
+		} catch (Exception e)
+		{
+			return e.getClass().getSimpleName() + ": " + e.getMessage();
+		}
+	}
+	
+	/**
+	 * under tiering, a formula computed again and again from its text, rather than compiled once, is compiled
+	 * once hot all the same, as the calculator keeps its plan; by compute(String), with bindings, and in postfix.
+	 */
+	private static void tieringByText() throws ReflectiveOperationException
+	{
+		CalculatorConfig tiered = CalculatorConfig.DEFAULT.withTiered(true);
+		InfixCalculator infix = new InfixCalculator(tiered);
+		for (int i = 0 ; i < THRESHOLD ; i++) infix.compute("(1 + 2) * 3 - 4 / 5");
+		expect(isCompiled(infix.compile("(1 + 2) * 3 - 4 / 5")) , "infix: not compiled by compute(String)");
+		expect(infix.compute("(1 + 2) * 3 - 4 / 5").compareTo(new BigDecimal("8.2")) == 0 , "infix: wrong value");
+		
+		Map<String , BigDecimal> bindings = Map.of("x" , BigDecimal.valueOf(6) , "y" , BigDecimal.ONE);
+		for (int i = 0 ; i < THRESHOLD ; i++) infix.compute("x * 2 + y" , bindings);
+		expect(isCompiled(infix.compile("x * 2 + y")) , "infix: not compiled by compute(String, Map)");
+		
+		PostfixCalculator postfix = new PostfixCalculator(tiered);
+		for (int i = 0 ; i < THRESHOLD ; i++) postfix.compute("1 2 + 3 *");
+		expect(isCompiled(postfix.compile("1 2 + 3 *")) , "postfix: not compiled by compute(String)");
+		
+		InfixCalculator untiered = new InfixCalculator();
+		for (int i = 0 ; i < THRESHOLD ; i++) untiered.compute("(1 + 2) * 3 - 4 / 5");
+		expect(!isCompiled(untiered.compile("(1 + 2) * 3 - 4 / 5")) , "compiled without tiering");
+	}
+	
+	/**
+	 * in infix, the minus sign of a numeral before ^ negates the power, as a minus operator would, wherever the
+	 * numeral stands; a numeral before an operator as tight as * and / keeps its sign, and so does one in brackets.
+	 */
+	private static void signedPower()
+	{
+		InfixCalculator infix = new InfixCalculator();
+		String[][] cases = {{"-2^2" , "0-2^2"} , {"2*-3^2" , "2*(0-3^2)"} , {"8 / -2^2" , "8 / (0-2^2)"} ,
+				{"-2^2/8" , "(0-2^2)/8"} , {"2^-3^2" , "2^(0-3^2)"} , {"-2^-2" , "0-2^-2"} , {"1+-2.5^2" , "1-2.5^2"} ,
+				{"(-2)^2" , "4"} , {"-2*3" , "-6"} , {"-7/2" , "-3.5"}};
+		for (String[] pair : cases)
+		{
+			String got = outcome(() -> infix.compute(pair[0]));
+			String expected = outcome(() -> infix.compute(pair[1]));
+			expect(new BigDecimal(got).compareTo(new BigDecimal(expected)) == 0 ,
+					"'" + pair[0] + "': expected " + expected + " as '" + pair[1] + "', got " + got);
+		}
+	}
+	
+	/**
+	 * a null expression in a batch, or an exception other than an arithmetic or syntax error thrown by a
+	 * configured operator, is the error of that expression alone; the others in the batch are still evaluated.
+	 */
+	private static void batchItemErrors()
+	{
+		List<String> batch = Arrays.asList("1+1" , null , "2" , "3 % 0" , "4 * 5");
+		CalculatorConfig config = CalculatorConfig.DEFAULT.withOperators(OperatorRegistry.STANDARD.with(
+				Operator.of('%' , 1 , Operator.Associativity.LEFT , (x , y , scale , mode) -> {
+					throw new IllegalStateException("% refused");
+				})));
+		InfixCalculator infix = new InfixCalculator(config);
+		expectItemErrors(infix.computeAll(batch) , "infix");
+		try (BatchEvaluator evaluator = new BatchEvaluator(infix , new SubexpressionMemo(16)))
+		{
+			expectItemErrors(evaluator.computeAll(batch) , "infix with a memo");
+		}
+		
+		List<String> postfixBatch = Arrays.asList("1 1 +" , null , "2" , "3 0 %" , "4 5 *");
+		expectItemErrors(new PostfixCalculator(config).computeAll(postfixBatch) , "postfix");
+	}
+	
+	private static void expectItemErrors(List<EvaluationResult> results , String what)
+	{
+		expect(results.size() == 5 , what + ": expected 5 outcomes, got " + results.size());
+		expectValue(results.get(0) , 2 , what);
+		expect(!results.get(1).isSuccess() , what + ": null expression gave " + results.get(1));
+		expectValue(results.get(2) , 2 , what);
+		expect(!results.get(3).isSuccess() && results.get(3).problem().code() == ErrorCode.OTHER ,
+				what + ": failing operator gave " + results.get(3));
+		expectValue(results.get(4) , 20 , what);
+	}
+	
+	private static void expectValue(EvaluationResult result , int value , String what)
+	{
+		expect(result.isSuccess() && result.value().intValue() == value ,
+				what + ": expected " + value + ", got " + result);
+	}
+	
+	/**
+	 * whether a plan holds compiled code; not part of the API, so read as it is.
+	 */
+	private static boolean isCompiled(CompiledExpression plan) throws ReflectiveOperationException
+	{
+		Field compiled = CompiledExpression.class.getDeclaredField("compiled");
+		compiled.setAccessible(true);
+		return compiled.get(plan) != null;
+	}
+}
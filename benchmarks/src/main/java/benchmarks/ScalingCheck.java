@@ -0,0 +1,222 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import calculators.InfixCalculator;
+import calculators.PostfixCalculator;
+import calculators.SubexpressionMemo;
+import calculators.leetcode.BasicCalculator;
+import calculators.leetcode.BasicCalculatorII;
+
+/**
+ * a regression check of complexity: every engine is run on generated inputs of doubling length, up to ten megabytes,
+ * and the growth of the bytes it allocates and of its time is fitted as length^k. an allocation growing with a k
+ * beyond 1 + tolerance, i.e. worse than linearly, or a StackOverflowError at any length, fails the check,
+ * with exit status 1. the growth of time is only reported, and marked where it seems worse than linear:
+ * fitted to runs of milliseconds, it is too noisy, from JIT compilation and collection, to fail on.
+ * <p>
+ * the inputs are those of Expressions: brackets nested as deep as the length allows, flat sums,
+ * sums of numerals too long for a long, division chains, and chains of && || and ?.
+ * numerals are kept short, as converting a single numeral of n digits to a BigInteger is itself
+ * of more than linear cost.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar benchmarks.ScalingCheck [--max-length 10485760] [--steps 5]
+ *     [--tolerance 0.3] [--seed 42] [--only &lt;engine or input&gt;]
+ * </pre>
+ * allocation is the least of a few runs, as counted by the JVM for the running thread, and time the median
+ * of at least REPEATS runs, after a collection, and of as many more as take MIN_TIME in all.
+ */
+public class ScalingCheck
+{
+	private static final int REPEATS = 5;
+	private static final long MIN_TIME = 100_000_000; // ns
+	
+	/**
+	 * an engine run on one kind of input.
+	 */
+	private record Case(String engine , String shape , IntFunction<String> input , Function<String , Object> run) {}
+	
+	/**
+	 * a kind of input, generated at about the given length.
+	 */
+	private record Input(String shape , IntFunction<String> generate) {}
+	
+	private static volatile Object sink;
+	
+	public static void main(String[] args)
+	{
+		int maxLength = 10 << 20;
+		int steps = 5;
+		double tolerance = 0.3;
+		long seed = 42;
+		String only = null;
+		for (int i = 0 ; i < args.length ; i++)
+		{
+			switch (args[i])
+			{
+				case "--max-length" -> maxLength = Integer.parseInt(args[++i]);
+				case "--steps" -> steps = Integer.parseInt(args[++i]);
+				case "--tolerance" -> tolerance = Double.parseDouble(args[++i]);
+				case "--seed" -> seed = Long.parseLong(args[++i]);
+				case "--only" -> only = args[++i];
+				default -> {
+					System.err.println("Unrecognised option: " + args[i]);
+					System.exit(2);
+				}
+			}
+		}
+		
+		int failures = 0;
+		for (Case c : cases(seed))
+		{
+			if (only != null && !c.engine().equals(only) && !c.shape().equals(only)) continue;
+			if (!check(c , maxLength , steps , tolerance)) failures++;
+		}
+		System.out.printf("%d case(s) allocated worse than linearly or failed%n" , failures);
+		if (failures > 0) System.exit(1);
+	}
+	
+	private static List<Case> cases(long seed)
+	{
+		InfixCalculator infix = new InfixCalculator();
+		PostfixCalculator postfix = new PostfixCalculator();
+		
+		// the generators take a count of terms or of levels; these are about the characters each takes
+		List<Input> inputs = List.of(
+				new Input("nested" , n -> Expressions.nested(new Random(seed) , n / 6)) ,
+				new Input("flatSum" , n -> Expressions.flatSum(new Random(seed) , n / 6)) ,
+				new Input("scientificSum" , n -> Expressions.scientificSum(new Random(seed) , n / 36)) ,
+				new Input("divisionChain" , n -> Expressions.divisionChain(new Random(seed) , n / 4))
+		);
+		
+		List<Case> cases = new ArrayList<>();
+		for (Input in : inputs)
+		{
+			IntFunction<String> translated = n -> infix.compile(in.generate().apply(n)).toString();
+			cases.add(new Case("infix" , in.shape() , in.generate() , infix::compute));
+			cases.add(new Case("infixValidate" , in.shape() , in.generate() , infix::validate));
+			cases.add(new Case("postfix" , in.shape() , translated , postfix::compute));
+			cases.add(new Case("postfixStream" , in.shape() , translated , expression -> {
+				try
+				{
+					return postfix.compute(new StringReader(expression));
+				} catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}));
+		}
+		// postfix && || and ? put jumps before operands compiled already
+		IntFunction<String> logical = n -> Expressions.logicalChain(new Random(seed) , n / 5);
+		cases.add(new Case("infix" , "logicalChain" , logical , infix::compute));
+		cases.add(new Case("postfix" , "logicalChain" , n -> infix.compile(logical.apply(n)).toString() , postfix::compute));
+		// a memo of its own for every run, so that every group is keyed and computed rather than found
+		cases.add(new Case("infixMemo" , "nested" , inputs.get(0).generate() , expression ->
+				new SubexpressionMemo(1 << 16).evaluate(infix.compile(expression) , infix.config().scale() ,
+						infix.config().roundingMode())));
+		cases.add(new Case("BasicCalculator" , "nested" , inputs.get(0).generate() , BasicCalculator::calculate));
+		cases.add(new Case("BasicCalculator" , "flatSum" , inputs.get(1).generate() , BasicCalculator::calculate));
+		cases.add(new Case("BasicCalculatorII" , "flatSum" , inputs.get(1).generate() , BasicCalculatorII::calculate));
+		cases.add(new Case("BasicCalculatorII" , "divisionChain" , inputs.get(3).generate() , BasicCalculatorII::calculate));
+		return cases;
+	}
+	
+	/**
+	 * measures a case at lengths doubling up to $maxLength, and prints a line of it.
+	 *
+	 * @return whether its allocation grew at most linearly, within $tolerance, and it never failed.
+	 */
+	private static boolean check(Case c , int maxLength , int steps , double tolerance)
+	{
+		double[] lengths = new double[steps];
+		double[] times = new double[steps];
+		double[] allocations = new double[steps];
+		StringBuilder line = new StringBuilder(String.format("%-18s %-14s" , c.engine() , c.shape()));
+		for (int i = 0 ; i < steps ; i++)
+		{
+			String input = c.input().apply(maxLength >> (steps - 1 - i));
+			lengths[i] = input.length();
+			try
+			{
+				if (i == 0) for (int j = 0 ; j < 5 ; j++) sink = c.run().apply(input); // warm-up
+				times[i] = time(c , input);
+				allocations[i] = allocated(c , input);
+			} catch (StackOverflowError | RuntimeException e)
+			{
+				System.out.printf("%s FAILED at length %d: %s%n" , line , input.length() , e);
+				return false;
+			}
+			line.append(String.format(" %6.1fms" , times[i] / 1e6));
+		}
+		
+		double timeGrowth = exponent(lengths , times);
+		double allocationGrowth = exponent(lengths , allocations);
+		boolean linear = allocationGrowth <= 1 + tolerance;
+		System.out.printf("%s  time ~n^%.2f, allocation ~n^%.2f (%.1f bytes/char)%s%s%n" , line , timeGrowth ,
+				allocationGrowth , allocations[steps - 1] / lengths[steps - 1] ,
+				timeGrowth <= 1 + tolerance ? "" : "  time worse than linear?" ,
+				linear ? "" : "  ALLOCATION WORSE THAN LINEAR");
+		return linear;
+	}
+	
+	private static double time(Case c , String input)
+	{
+		System.gc();
+		List<Long> times = new ArrayList<>();
+		long total = 0;
+		while (times.size() < REPEATS || total < MIN_TIME)
+		{
+			long start = System.nanoTime();
+			sink = c.run().apply(input);
+			long time = System.nanoTime() - start;
+			times.add(time);
+			total += time;
+		}
+		Collections.sort(times);
+		return times.get(times.size() / 2);
+	}
+	
+	/**
+	 * the least of a few runs, as what a run allocates may still change as it is compiled.
+	 */
+	private static double allocated(Case c , String input)
+	{
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long least = Long.MAX_VALUE;
+		for (int i = 0 ; i < 3 ; i++)
+		{
+			long before = threads.getCurrentThreadAllocatedBytes();
+			sink = c.run().apply(input);
+			least = Math.min(least , threads.getCurrentThreadAllocatedBytes() - before);
+		}
+		return least;
+	}
+	
+	/**
+	 * the k of the least-squares fit of $ys to a * $xs^k, i.e. the slope of log y against log x.
+	 */
+	private static double exponent(double[] xs , double[] ys)
+	{
+		int n = xs.length;
+		double sumX = 0 , sumY = 0 , sumXX = 0 , sumXY = 0;
+		for (int i = 0 ; i < n ; i++)
+		{
+			double x = Math.log(xs[i]);
+			double y = Math.log(Math.max(ys[i] , 1));
+			sumX += x;
+			sumY += y;
+			sumXX += x * x;
+			sumXY += x * y;
+		}
+		return (n * sumXY - sumX * sumY) / (n * sumXX - sumX * sumX);
+	}
+}
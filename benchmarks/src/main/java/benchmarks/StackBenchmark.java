@@ -0,0 +1,74 @@
+package benchmarks;
+
+import java.util.Stack;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stacks.ArrayStack;
+import stacks.IntArrayStack;
+
+/**
+ * java.util.Stack against ArrayStack, fixed and growable, and the primitive IntArrayStack.
+ * each operation pushes $size elements and pops them all again, summing them so that nothing is optimised away.
+ */
+@BenchmarkMode({Mode.Throughput , Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5 , time = 1)
+@Measurement(iterations = 5 , time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StackBenchmark
+{
+	@Param({"16" , "1024"})
+	public int size;
+	
+	@Benchmark
+	public long javaUtilStack()
+	{
+		Stack<Integer> stack = new Stack<>();
+		for (int i = 0 ; i < size ; i++) stack.push(i);
+		long sum = 0;
+		while (!stack.isEmpty()) sum += stack.pop();
+		return sum;
+	}
+	
+	@Benchmark
+	public long arrayStack()
+	{
+		ArrayStack<Integer> stack = new ArrayStack<>(size);
+		for (int i = 0 ; i < size ; i++) stack.push(i);
+		long sum = 0;
+		while (!stack.isEmpty()) sum += stack.pop();
+		return sum;
+	}
+	
+	@Benchmark
+	public long growableArrayStack()
+	{
+		ArrayStack<Integer> stack = new ArrayStack<>();
+		for (int i = 0 ; i < size ; i++) stack.push(i);
+		long sum = 0;
+		while (!stack.isEmpty()) sum += stack.pop();
+		return sum;
+	}
+	
+	@Benchmark
+	public long intArrayStack()
+	{
+		IntArrayStack stack = new IntArrayStack();
+		for (int i = 0 ; i < size ; i++) stack.push(i);
+		long sum = 0;
+		while (!stack.isEmpty()) sum += stack.pop();
+		return sum;
+	}
+}
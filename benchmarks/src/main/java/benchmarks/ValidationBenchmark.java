@@ -0,0 +1,79 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import calculators.InfixCalculator;
+
+/**
+ * a mix of well-formed and malformed input, rejected either by catching exceptions or by tryCompute and validate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5 , time = 1)
+@Measurement(iterations = 5 , time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidationBenchmark
+{
+	/**
+	 * the share of malformed expressions, in percent.
+	 */
+	@Param({"20" , "100"})
+	public int invalidPercent;
+	
+	private final InfixCalculator calculator = new InfixCalculator();
+	private String[] expressions;
+	
+	@Setup
+	public void setup()
+	{
+		Random random = new Random(42);
+		String[] malformed = {"1 + * 2" , "(1 + 2" , "1 + 2)" , "1.2.3 * 4" , "1 + 2 $ 3" , "" , "* 4" , "1 / 0"};
+		expressions = new String[1000];
+		for (int i = 0 ; i < expressions.length ; i++)
+			expressions[i] = random.nextInt(100) < invalidPercent
+					? malformed[random.nextInt(malformed.length)]
+					: Expressions.Shape.SHORT.generate(random);
+	}
+	
+	@Benchmark
+	public void computeCatching(Blackhole blackhole)
+	{
+		for (String expression : expressions)
+		{
+			try
+			{
+				blackhole.consume(calculator.compute(expression));
+			} catch (RuntimeException e)
+			{
+				blackhole.consume(e);
+			}
+		}
+	}
+	
+	@Benchmark
+	public void tryCompute(Blackhole blackhole)
+	{
+		for (String expression : expressions) blackhole.consume(calculator.tryCompute(expression));
+	}
+	
+	@Benchmark
+	public void validate(Blackhole blackhole)
+	{
+		for (String expression : expressions) blackhole.consume(calculator.validate(expression));
+	}
+}
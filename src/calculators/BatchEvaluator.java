@@ -0,0 +1,206 @@
+package calculators;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+
+/**
+ * evaluates batches of independent expressions in parallel on a ForkJoinPool.
+ * a batch is split in halves until a part is no longer than the chunk size, and each chunk is then
+ * evaluated sequentially by one worker. results are collected in the same order as the expressions,
+ * with an error in place of the result for any expression that fails.
+ * <p>
+ * the calculator is shared among the workers, which is safe as calculators are immutable.
+ * <p>
+ * given a SubexpressionMemo, the results of bracketed subexpressions are shared among all the expressions
+ * evaluated, so that a sub-term common to many of them is computed once; the memo then outlives the batch,
+ * and may be cleared between batches.
+ */
+public class BatchEvaluator implements AutoCloseable
+{
+	public static final int DEFAULT_CHUNK_SIZE = 256;
+	
+	private final Calculator calculator;
+	private final ForkJoinPool pool;
+	private final int chunkSize;
+	
+	/**
+	 * the memo of subexpressions, or null if none; only ever given with an InfixCalculator.
+	 */
+	private final SubexpressionMemo memo;
+	
+	/**
+	 * whether $pool was created by this evaluator, and hence to be shut down on closing.
+	 */
+	private final boolean ownPool;
+	
+	/**
+	 * initialise a batch evaluator on the common pool, with the default chunk size.
+	 */
+	public BatchEvaluator(Calculator calculator)
+	{
+		this(calculator , ForkJoinPool.commonPool() , DEFAULT_CHUNK_SIZE , null , false);
+	}
+	
+	/**
+	 * initialise a batch evaluator on a pool of its own.
+	 *
+	 * @param parallelism number of worker threads.
+	 * @param chunkSize   number of expressions evaluated by one worker at a time.
+	 */
+	public BatchEvaluator(Calculator calculator , int parallelism , int chunkSize)
+	{
+		this(calculator , new ForkJoinPool(parallelism) , chunkSize , null , true);
+	}
+	
+	/**
+	 * initialise a batch evaluator on a given pool, which will not be shut down on closing.
+	 *
+	 * @param chunkSize number of expressions evaluated by one worker at a time.
+	 */
+	public BatchEvaluator(Calculator calculator , ForkJoinPool pool , int chunkSize)
+	{
+		this(calculator , pool , chunkSize , null , false);
+	}
+	
+	/**
+	 * initialise a batch evaluator on the common pool, with the default chunk size,
+	 * sharing the results of subexpressions through a memo.
+	 *
+	 * @param memo the memo to share subexpressions through, or null for none.
+	 */
+	public BatchEvaluator(InfixCalculator calculator , SubexpressionMemo memo)
+	{
+		this(calculator , ForkJoinPool.commonPool() , DEFAULT_CHUNK_SIZE , memo , false);
+	}
+	
+	/**
+	 * initialise a batch evaluator on a pool of its own, sharing the results of subexpressions through a memo.
+	 *
+	 * @param parallelism number of worker threads.
+	 * @param chunkSize   number of expressions evaluated by one worker at a time.
+	 * @param memo        the memo to share subexpressions through, or null for none.
+	 */
+	public BatchEvaluator(InfixCalculator calculator , int parallelism , int chunkSize , SubexpressionMemo memo)
+	{
+		this(calculator , new ForkJoinPool(parallelism) , chunkSize , memo , true);
+	}
+	
+	private BatchEvaluator(
+			Calculator calculator , ForkJoinPool pool , int chunkSize , SubexpressionMemo memo , boolean ownPool
+	)
+	{
+		if (calculator == null || pool == null) throw new NullPointerException();
+		if (chunkSize <= 0) throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+		this.calculator = calculator;
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+		this.memo = memo;
+		this.ownPool = ownPool;
+	}
+	
+	/**
+	 * evaluates all expressions in parallel. an expression that fails in any way, or is null, fails alone:
+	 * its outcome is the error, and the rest of the batch is evaluated all the same.
+	 *
+	 * @return the outcomes, in the same order as $expressions.
+	 */
+	public List<EvaluationResult> computeAll(List<String> expressions)
+	{
+		String[] batch = expressions.toArray(new String[0]);
+		EvaluationResult[] results = new EvaluationResult[batch.length];
+		if (batch.length <= chunkSize) new Chunk(batch , results , 0 , batch.length).compute();
+		else pool.invoke(new Chunk(batch , results , 0 , batch.length));
+		return Arrays.asList(results);
+	}
+	
+	/**
+	 * evaluates all expressions in parallel; the stream is consumed before evaluation begins.
+	 *
+	 * @return the outcomes, in the encounter order of $expressions.
+	 */
+	public List<EvaluationResult> computeAll(Stream<String> expressions)
+	{
+		return computeAll(expressions.toList());
+	}
+	
+	/**
+	 * evaluates one expression, capturing any error, which is not thrown in the first place
+	 * if the calculator can help it, see Calculator.tryCompute; with a memo or without, the outcome is the same.
+	 * what is thrown all the same, e.g. by a configured operator, or for a null expression, is captured here,
+	 * as it would otherwise abort the whole batch.
+	 */
+	EvaluationResult evaluate(String expression)
+	{
+		try
+		{
+			if (memo == null) return calculator.tryCompute(expression);
+			return ((InfixCalculator) calculator).tryCompute(expression , memo);
+		} catch (RuntimeException e)
+		{
+			return EvaluationResult.failure(e);
+		}
+	}
+	
+	/**
+	 * the memo of subexpressions, or null if none was given.
+	 */
+	public SubexpressionMemo memo()
+	{
+		return memo;
+	}
+	
+	public int chunkSize()
+	{
+		return chunkSize;
+	}
+	
+	public int parallelism()
+	{
+		return pool.getParallelism();
+	}
+	
+	/**
+	 * shuts down the pool if it was created by this evaluator.
+	 */
+	@Override
+	public void close()
+	{
+		if (ownPool) pool.shutdown();
+	}
+	
+	/**
+	 * evaluates expressions in [from, to), splitting in halves while longer than $chunkSize.
+	 */
+	@SuppressWarnings("serial") // a task is never serialised, and could not be, with its evaluator
+	private class Chunk extends RecursiveAction
+	{
+		private final String[] batch;
+		private final EvaluationResult[] results;
+		private final int from;
+		private final int to;
+		
+		Chunk(String[] batch , EvaluationResult[] results , int from , int to)
+		{
+			this.batch = batch;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if (to - from <= chunkSize)
+			{
+				for (int i = from ; i < to ; i++) results[i] = evaluate(batch[i]);
+				return;
+			}
+			
+			int mid = (from + to) >>> 1;
+			invokeAll(new Chunk(batch , results , from , mid) , new Chunk(batch , results , mid , to));
+		}
+	}
+}
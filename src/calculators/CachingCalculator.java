@@ -0,0 +1,172 @@
+package calculators;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * an opt-in decorator remembering the results of recently computed expressions.
+ * results are keyed by the expression together with the configuration in effect,
+ * and the least recently used entries are evicted once the cache is full.
+ * when wrapping an InfixCalculator, compiled plans are cached as well; these do not depend on scale or rounding.
+ * failed computations are never cached.
+ * <p>
+ * a copy made by withConfig or withScale shares the caches and counters of this one;
+ * as the configuration is part of the key, results under the old scale can never be returned under the new one.
+ */
+public class CachingCalculator implements Calculator
+{
+	private final Calculator delegate;
+	private final LruCache<Key, BigDecimal> results;
+	private final LruCache<String, CompiledExpression> plans;
+	
+	private final LongAdder hits;
+	private final LongAdder misses;
+	
+	private record Key(String expression , CalculatorConfig config) {}
+	
+	/**
+	 * wraps a calculator with a cache of the specified capacity.
+	 *
+	 * @param delegate the calculator doing the actual computation.
+	 * @param capacity the greatest number of results kept; the same bound applies to compiled plans.
+	 */
+	public CachingCalculator(Calculator delegate , int capacity)
+	{
+		this(delegate , new LruCache<>(capacity) ,
+				delegate instanceof InfixCalculator ? new LruCache<>(capacity) : null ,
+				new LongAdder() , new LongAdder());
+	}
+	
+	private CachingCalculator(
+			Calculator delegate , LruCache<Key, BigDecimal> results , LruCache<String, CompiledExpression> plans ,
+			LongAdder hits , LongAdder misses
+	)
+	{
+		if (delegate == null) throw new NullPointerException();
+		this.delegate = delegate;
+		this.results = results;
+		this.plans = plans;
+		this.hits = hits;
+		this.misses = misses;
+	}
+	
+	public BigDecimal compute(String expression)
+	{
+		if (expression == null) throw new NullPointerException();
+		
+		Key key = new Key(expression , delegate.config());
+		BigDecimal res = results.get(key);
+		if (res != null)
+		{
+			hits.increment();
+			return res;
+		}
+		
+		misses.increment();
+		res = plans == null ? delegate.compute(expression) : computeWithPlan(expression);
+		results.put(key , res);
+		return res;
+	}
+	
+	/**
+	 * as compute, but with errors given as values; the underlying calculator is asked on a miss,
+	 * so that it may report errors without throwing. failures are not cached.
+	 */
+	@Override
+	public EvaluationResult tryCompute(String expression)
+	{
+		if (expression == null) throw new NullPointerException();
+		
+		Key key = new Key(expression , delegate.config());
+		BigDecimal res = results.get(key);
+		if (res != null)
+		{
+			hits.increment();
+			return EvaluationResult.success(res);
+		}
+		
+		misses.increment();
+		EvaluationResult result = delegate.tryCompute(expression);
+		if (result.isSuccess()) results.put(key , result.value());
+		return result;
+	}
+	
+	private BigDecimal computeWithPlan(String expression)
+	{
+		InfixCalculator infix = (InfixCalculator) delegate;
+		CompiledExpression plan = plans.get(expression);
+		if (plan == null)
+		{
+			plan = infix.compile(expression);
+			plans.put(expression , plan);
+		}
+		return infix.compute(plan);
+	}
+	
+	public CalculatorConfig config()
+	{
+		return delegate.config();
+	}
+	
+	/**
+	 * a copy wrapping the underlying calculator with another configuration, sharing this cache.
+	 * plans are only shared if the recognised operators are the same, as they decide what parses.
+	 */
+	public CachingCalculator withConfig(CalculatorConfig newConfig)
+	{
+		if (newConfig.equals(delegate.config())) return this;
+		
+		Calculator newDelegate = delegate.withConfig(newConfig);
+		LruCache<String, CompiledExpression> newPlans = plans;
+		if (plans != null && !newConfig.operators().equals(delegate.config().operators()))
+			newPlans = new LruCache<>(plans.capacity());
+		return new CachingCalculator(newDelegate , results , newPlans , hits , misses);
+	}
+	
+	@Override
+	public CachingCalculator withScale(int newScale)
+	{
+		return withConfig(delegate.config().withScale(newScale));
+	}
+	
+	/**
+	 * drops all cached results and plans.
+	 */
+	public void invalidate()
+	{
+		results.clear();
+		if (plans != null) plans.clear();
+	}
+	
+	/**
+	 * number of computations answered from the cache.
+	 */
+	public long hits()
+	{
+		return hits.sum();
+	}
+	
+	/**
+	 * number of computations delegated to the underlying calculator, including failed ones.
+	 */
+	public long misses()
+	{
+		return misses.sum();
+	}
+	
+	/**
+	 * number of results dropped to make room for newer ones.
+	 */
+	public long evictions()
+	{
+		return results.evictions();
+	}
+	
+	/**
+	 * number of results currently cached.
+	 */
+	public int size()
+	{
+		return results.size();
+	}
+}
@@ -1,12 +1,80 @@
 package calculators;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.stream.Stream;
 
+/**
+ * a calculator is immutable: its configuration is fixed at creation,
+ * so one instance can be shared among threads, and changing the scale gives a new calculator.
+ */
 public interface Calculator
 {
 	BigDecimal compute(String expression);
 	
-	int scale();
+	/**
+	 * evaluates a given expression, giving any error as a value rather than throwing it.
+	 * by default compute is called and its exception caught; calculators that can, report errors without
+	 * making an exception at all.
+	 *
+	 * @return the computed result, or the error that prevented it.
+	 */
+	default EvaluationResult tryCompute(String expression)
+	{
+		try
+		{
+			return EvaluationResult.success(compute(expression));
+		} catch (RuntimeException e)
+		{
+			return EvaluationResult.failure(e);
+		}
+	}
 	
-	void setScale(int newScale);
+	CalculatorConfig config();
+	
+	/**
+	 * a copy of this calculator with another configuration; this one is left unchanged.
+	 */
+	Calculator withConfig(CalculatorConfig newConfig);
+	
+	default int scale()
+	{
+		return config().scale();
+	}
+	
+	default RoundingMode roundingMode()
+	{
+		return config().roundingMode();
+	}
+	
+	/**
+	 * a copy of this calculator with another scale; this one is left unchanged.
+	 */
+	default Calculator withScale(int newScale)
+	{
+		return withConfig(config().withScale(newScale));
+	}
+	
+	/**
+	 * evaluates a batch of independent expressions in parallel on the common ForkJoinPool.
+	 * use a BatchEvaluator to configure parallelism and chunk size.
+	 * an expression that fails, or is null, only has an error for its outcome; the rest are evaluated.
+	 *
+	 * @return the outcomes, in the same order as $expressions.
+	 */
+	default List<EvaluationResult> computeAll(List<String> expressions)
+	{
+		return new BatchEvaluator(this).computeAll(expressions);
+	}
+	
+	/**
+	 * evaluates a stream of independent expressions in parallel on the common ForkJoinPool.
+	 *
+	 * @return the outcomes, in the encounter order of $expressions.
+	 */
+	default List<EvaluationResult> computeAll(Stream<String> expressions)
+	{
+		return new BatchEvaluator(this).computeAll(expressions);
+	}
 }
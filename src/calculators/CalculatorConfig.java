@@ -0,0 +1,154 @@
+package calculators;
+
+import java.math.RoundingMode;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * an immutable configuration of a calculator: the scale and rounding mode for division, and the recognised operators.
+ * calculators built from it hold no other state but, if tiered, a cache of plans, so one instance can be shared
+ * among any number of threads;
+ * the with* methods give a modified copy rather than changing this one.
+ * the metrics and diagnostics, if any, are the only things that change as expressions are computed;
+ * they must be thread safe, and are compared by identity.
+ *
+ * @param scale        the scale (i.e. number of d.p.) of division results; cannot be negative.
+ * @param roundingMode rounding mode for division operation.
+ * @param operators    the recognised binary operators, by default + - * / and ^.
+ * @param optimize     whether compiled expressions are optimised, see CompiledExpression.optimize(int, RoundingMode);
+ *                     worth it for long or repetitive expressions, but not for short ones.
+ * @param tiered       whether compiled expressions are evaluated by a tier of JVM bytecode once hot,
+ *                     see CompiledExpression; worth it for formulas evaluated a great many times, whether compiled
+ *                     once or computed again and again from their text, whose plans the calculators then keep.
+ * @param metrics      where computations are measured, or null for none.
+ * @param diagnostics  where warnings about expressions go, e.g. text ignored after a terminating =;
+ *                     null to drop them.
+ */
+public record CalculatorConfig(
+		int scale , RoundingMode roundingMode , OperatorRegistry operators , boolean optimize , boolean tiered ,
+		CalculatorMetrics metrics , Consumer<String> diagnostics
+)
+{
+	/**
+	 * the symbols of the standard operators.
+	 */
+	public static final Set<Character> ALL_OPERATORS = OperatorRegistry.STANDARD.symbols();
+	
+	/**
+	 * scale 4, rounding HALF_UP, all operators, no optimisation, no tiering, no metrics and no diagnostics.
+	 */
+	public static final CalculatorConfig DEFAULT = new CalculatorConfig(4 , RoundingMode.HALF_UP , OperatorRegistry.STANDARD ,
+			false , false , null , null);
+	
+	public CalculatorConfig
+	{
+		if (roundingMode == null || operators == null) throw new NullPointerException();
+		if (scale < 0) throw new IllegalArithmeticExpressionSyntaxException("Scale cannot be negative: " + scale);
+	}
+	
+	/**
+	 * a configuration of some of the standard operators, without tiering, metrics or diagnostics.
+	 *
+	 * @throws IllegalArgumentException if a symbol is not of a standard operator.
+	 */
+	public CalculatorConfig(int scale , RoundingMode roundingMode , Set<Character> operators , boolean optimize)
+	{
+		this(scale , roundingMode , OperatorRegistry.STANDARD.only(operators) , optimize , false , null , null);
+	}
+	
+	/**
+	 * the default configuration with the specified scale.
+	 */
+	public static CalculatorConfig of(int scale)
+	{
+		return DEFAULT.withScale(scale);
+	}
+	
+	public CalculatorConfig withScale(int newScale)
+	{
+		if (newScale == scale) return this;
+		return new CalculatorConfig(newScale , roundingMode , operators , optimize , tiered , metrics , diagnostics);
+	}
+	
+	public CalculatorConfig withRoundingMode(RoundingMode newRoundingMode)
+	{
+		return new CalculatorConfig(scale , newRoundingMode , operators , optimize , tiered , metrics , diagnostics);
+	}
+	
+	/**
+	 * a copy recognising only the standard operators of the given symbols.
+	 *
+	 * @throws IllegalArgumentException if a symbol is not of a standard operator.
+	 */
+	public CalculatorConfig withOperators(Set<Character> newOperators)
+	{
+		return withOperators(OperatorRegistry.STANDARD.only(newOperators));
+	}
+	
+	/**
+	 * a copy recognising the operators of $newOperators, which may include operators of its own.
+	 */
+	public CalculatorConfig withOperators(OperatorRegistry newOperators)
+	{
+		return new CalculatorConfig(scale , roundingMode , newOperators , optimize , tiered , metrics , diagnostics);
+	}
+	
+	public CalculatorConfig withOptimize(boolean newOptimize)
+	{
+		return new CalculatorConfig(scale , roundingMode , operators , newOptimize , tiered , metrics , diagnostics);
+	}
+	
+	public CalculatorConfig withTiered(boolean newTiered)
+	{
+		return new CalculatorConfig(scale , roundingMode , operators , optimize , newTiered , metrics , diagnostics);
+	}
+	
+	/**
+	 * a copy measuring computations in $newMetrics; null for no measuring.
+	 */
+	public CalculatorConfig withMetrics(CalculatorMetrics newMetrics)
+	{
+		return new CalculatorConfig(scale , roundingMode , operators , optimize , tiered , newMetrics , diagnostics);
+	}
+	
+	/**
+	 * a copy sending warnings to $newDiagnostics; null to drop them.
+	 */
+	public CalculatorConfig withDiagnostics(Consumer<String> newDiagnostics)
+	{
+		return new CalculatorConfig(scale , roundingMode , operators , optimize , tiered , metrics , newDiagnostics);
+	}
+	
+	/**
+	 * sends a warning to the diagnostics, if any.
+	 */
+	void warn(String message)
+	{
+		if (diagnostics != null) diagnostics.accept(message);
+	}
+	
+	/**
+	 * the plan to evaluate under this configuration: $plan itself, or an optimised or tiered one if so configured.
+	 */
+	CompiledExpression prepare(CompiledExpression plan)
+	{
+		if (optimize) plan = plan.optimize(scale , roundingMode);
+		return tiered ? plan.tiered() : plan;
+	}
+	
+	/**
+	 * identifies if a character is one of the recognised operators.
+	 */
+	public boolean isOperator(char c)
+	{
+		return operators.isOperator(c);
+	}
+	
+	/**
+	 * the recognised operator of a symbol, or null if there is none.
+	 */
+	public Operator operator(char c)
+	{
+		return operators.get(c);
+	}
+}
@@ -0,0 +1,215 @@
+package calculators;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * counters and latency histograms of the expressions computed by calculators configured with this instance,
+ * see CalculatorConfig.withMetrics(CalculatorMetrics).
+ * parsing and evaluation are measured apart, and a failure of either is counted and timed as an error instead.
+ * all updates are lock-free, so one instance can be shared among calculators and threads;
+ * without metrics configured, computing an expression is not measured at all.
+ * <p>
+ * only compute(String) and tryCompute(String) are measured, and so batches; precompiled plans, bindings and streams
+ * are not.
+ */
+public final class CalculatorMetrics
+{
+	private final LongAdder parses = new LongAdder();
+	private final LongAdder evaluations = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LatencyHistogram parseLatency = new LatencyHistogram();
+	private final LatencyHistogram evaluationLatency = new LatencyHistogram();
+	private final LatencyHistogram errorLatency = new LatencyHistogram();
+	
+	private final LongAccumulator maxStackDepth = new LongAccumulator(Math::max , 0);
+	private final LongAccumulator maxDigitGrowth = new LongAccumulator(Math::max , Long.MIN_VALUE);
+	private final LongAdder decimalsCreated = new LongAdder();
+	
+	/**
+	 * how a measured computation evaluates its plan.
+	 */
+	@FunctionalInterface
+	interface Evaluation
+	{
+		/**
+		 * @param metrics where to count the BigDecimals created, or null for none.
+		 * @param report  where to keep an error; if null, it is thrown.
+		 * @return the result, or null if an error was kept in $report.
+		 */
+		BigDecimal evaluate(CompiledExpression plan , CalculatorMetrics metrics , ErrorReport report);
+	}
+	
+	/**
+	 * computes an expression, parsing it with $compiler and evaluating the plan with $evaluation,
+	 * measuring both in $metrics if given and reporting $event if it is enabled and slow enough.
+	 * a failure is counted as an error whether it is thrown or kept in $report.
+	 *
+	 * @param compiler parses an expression into the plan to evaluate, keeping a syntax error in the report if given.
+	 * @param report   where to keep an error; if null, it is thrown.
+	 * @return the computed result, or null if an error was kept in $report.
+	 */
+	static BigDecimal measure(
+			CalculatorMetrics metrics , SlowEvaluationEvent event , Calculator calculator , String expression ,
+			BiFunction<String , ErrorReport , CompiledExpression> compiler , Evaluation evaluation , ErrorReport report
+	)
+	{
+		event.begin();
+		long start = System.nanoTime();
+		CompiledExpression plan = null;
+		BigDecimal res = null;
+		try
+		{
+			plan = compiler.apply(expression , report);
+			if (plan == null) return null;
+			long parsed = System.nanoTime();
+			if (metrics != null) metrics.parsed(plan , parsed - start);
+			
+			res = evaluation.evaluate(plan , metrics , report);
+			if (res != null && metrics != null) metrics.evaluated(plan , res , System.nanoTime() - parsed);
+			return res;
+		} finally
+		{
+			if (res == null) // failed, whether thrown or kept in $report
+			{
+				if (metrics != null) metrics.failed(System.nanoTime() - start);
+				event.failed = true;
+			}
+			event.end();
+			if (event.shouldCommit())
+			{
+				event.calculator = calculator.getClass().getSimpleName();
+				event.length = expression == null ? 0 : expression.length();
+				event.expression = expression == null || expression.length() <= SlowEvaluationEvent.MAX_EXPRESSION_LENGTH
+						? expression
+						: expression.substring(0 , SlowEvaluationEvent.MAX_EXPRESSION_LENGTH);
+				event.stackDepth = plan == null ? 0 : plan.maxDepth;
+				event.commit();
+			}
+		}
+	}
+	
+	private void parsed(CompiledExpression plan , long nanos)
+	{
+		parses.increment();
+		parseLatency.record(nanos);
+		maxStackDepth.accumulate(plan.maxDepth);
+	}
+	
+	private void evaluated(CompiledExpression plan , BigDecimal result , long nanos)
+	{
+		evaluations.increment();
+		evaluationLatency.record(nanos);
+		
+		int operandDigits = 0;
+		for (BigDecimal constant : plan.constants) operandDigits = Math.max(operandDigits , constant.precision());
+		maxDigitGrowth.accumulate(result.precision() - operandDigits);
+	}
+	
+	private void failed(long nanos)
+	{
+		errors.increment();
+		errorLatency.record(nanos);
+	}
+	
+	void decimalsCreated(int count)
+	{
+		decimalsCreated.add(count);
+	}
+	
+	/**
+	 * number of expressions parsed successfully.
+	 */
+	public long parses()
+	{
+		return parses.sum();
+	}
+	
+	/**
+	 * number of expressions evaluated successfully.
+	 */
+	public long evaluations()
+	{
+		return evaluations.sum();
+	}
+	
+	/**
+	 * number of expressions that failed, in parsing or in evaluation.
+	 */
+	public long errors()
+	{
+		return errors.sum();
+	}
+	
+	public LatencyHistogram parseLatency()
+	{
+		return parseLatency;
+	}
+	
+	public LatencyHistogram evaluationLatency()
+	{
+		return evaluationLatency;
+	}
+	
+	/**
+	 * time from the start of parsing to the failure, of the expressions that failed.
+	 */
+	public LatencyHistogram errorLatency()
+	{
+		return errorLatency;
+	}
+	
+	/**
+	 * the greatest number of operands any expression parsed held at once during evaluation.
+	 */
+	public long maxStackDepth()
+	{
+		return maxStackDepth.get();
+	}
+	
+	/**
+	 * the greatest number of digits any result had beyond the longest numeral of its expression,
+	 * e.g. 3 for 99 * 99 * 99; 0 if nothing has been evaluated.
+	 */
+	public long maxDigitGrowth()
+	{
+		long growth = maxDigitGrowth.get();
+		return growth == Long.MIN_VALUE ? 0 : growth;
+	}
+	
+	/**
+	 * number of BigDecimals created by evaluation, see CompiledExpression.evaluate;
+	 * the numerals of the expressions, and any created within BigDecimal arithmetic, are not counted.
+	 */
+	public long decimalsCreated()
+	{
+		return decimalsCreated.sum();
+	}
+	
+	/**
+	 * sets every counter and histogram back to zero.
+	 */
+	public void reset()
+	{
+		parses.reset();
+		evaluations.reset();
+		errors.reset();
+		parseLatency.reset();
+		evaluationLatency.reset();
+		errorLatency.reset();
+		maxStackDepth.reset();
+		maxDigitGrowth.reset();
+		decimalsCreated.reset();
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "parses=" + parses() + " evaluations=" + evaluations() + " errors=" + errors()
+				+ "\nparse: " + parseLatency + "\nevaluation: " + evaluationLatency + "\nerror: " + errorLatency
+				+ "\nmaxStackDepth=" + maxStackDepth() + " maxDigitGrowth=" + maxDigitGrowth()
+				+ " decimalsCreated=" + decimalsCreated();
+	}
+}
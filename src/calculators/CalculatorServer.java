@@ -0,0 +1,314 @@
+package calculators;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * serves a calculator over TCP or a Unix domain socket, with a thread per connection.
+ * <p>
+ * the protocol is line-based: every line sent is either an expression or a command, and is answered by exactly
+ * one line, in order, so a client may pipeline any number of requests before reading the replies.
+ * an expression is answered by its result, or by "error: " followed by the message, as by FileBatchEvaluator.
+ * the commands are those of ConsoleCalculator, and apply to the connection only:
+ * <ul>
+ *     <li>":scale" gives the current scale; ":scale &lt;num&gt;" sets it and gives "ok".</li>
+ *     <li>":infix" and ":postfix" switch the notation and give "ok".</li>
+ *     <li>":quit" closes the connection, without reply.</li>
+ * </ul>
+ * lines are UTF-8, and a trailing carriage return is ignored; the last may end at the end of the input
+ * rather than in a newline. a line longer than MAX_LINE_LENGTH bytes is answered by an error and otherwise discarded.
+ * <p>
+ * replies are written once all the requests read so far are answered, so pipelined requests cost a single
+ * write rather than one each.
+ */
+public final class CalculatorServer implements AutoCloseable
+{
+	public static final int MAX_LINE_LENGTH = 1 << 20;
+	private static final int BUFFER_SIZE = 16 << 10;
+	
+	private final Calculator calculator;
+	private final ServerSocketChannel server;
+	private final SocketAddress address;
+	private final ExecutorService workers;
+	private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+	private final Thread acceptor;
+	private volatile boolean closed = false;
+	
+	private CalculatorServer(Calculator calculator , ServerSocketChannel server) throws IOException
+	{
+		this.calculator = calculator;
+		this.server = server;
+		this.address = server.getLocalAddress();
+		
+		AtomicInteger count = new AtomicInteger();
+		this.workers = Executors.newCachedThreadPool(task -> {
+			Thread thread = new Thread(task , "calculator-connection-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.acceptor = new Thread(this::accept , "calculator-acceptor");
+		this.acceptor.setDaemon(true);
+	}
+	
+	/**
+	 * binds a server to $address and starts accepting connections.
+	 *
+	 * @param address     an InetSocketAddress, of port 0 for any free port, or a UnixDomainSocketAddress,
+	 *                    whose file must not exist yet.
+	 * @param calculator  how every connection computes, until it changes scale or notation.
+	 */
+	public static CalculatorServer start(SocketAddress address , Calculator calculator) throws IOException
+	{
+		if (calculator == null) throw new NullPointerException();
+		ServerSocketChannel server = address instanceof UnixDomainSocketAddress
+				? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+				: ServerSocketChannel.open();
+		try
+		{
+			server.bind(address);
+		} catch (IOException e)
+		{
+			server.close();
+			throw e;
+		}
+		
+		CalculatorServer res = new CalculatorServer(calculator , server);
+		res.acceptor.start();
+		return res;
+	}
+	
+	/**
+	 * parses an address given on the command line: "unix:&lt;path&gt;" for a Unix domain socket,
+	 * otherwise "&lt;host&gt;:&lt;port&gt;", or just the port for the loopback address.
+	 */
+	public static SocketAddress address(String address)
+	{
+		if (address.startsWith("unix:")) return UnixDomainSocketAddress.of(address.substring(5));
+		
+		int colon = address.lastIndexOf(':');
+		if (colon < 0) return new InetSocketAddress(InetAddress.getLoopbackAddress() , Integer.parseInt(address));
+		return new InetSocketAddress(address.substring(0 , colon) , Integer.parseInt(address.substring(colon + 1)));
+	}
+	
+	/**
+	 * the address bound, with the actual port if port 0 was asked for.
+	 */
+	public SocketAddress address()
+	{
+		return address;
+	}
+	
+	/**
+	 * blocks until the server is closed.
+	 */
+	public void await() throws InterruptedException
+	{
+		acceptor.join();
+	}
+	
+	private void accept()
+	{
+		while (!closed)
+		{
+			try
+			{
+				SocketChannel channel = server.accept();
+				connections.add(channel);
+				try
+				{
+					workers.execute(() -> serve(channel));
+				} catch (RejectedExecutionException e) // closed meanwhile
+				{
+					connections.remove(channel);
+					channel.close();
+				}
+			} catch (ClosedChannelException e)
+			{
+				return;
+			} catch (IOException e)
+			{
+				// e.g. out of file descriptors; the connection is lost, but the server carries on
+			}
+		}
+	}
+	
+	/**
+	 * answers the requests of one connection until it is closed by either side.
+	 */
+	private void serve(SocketChannel channel)
+	{
+		Session session = new Session(calculator);
+		ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+		Reply out = new Reply();
+		byte[] line = new byte[256];
+		int length = 0;
+		boolean overlong = false;
+		
+		try (channel)
+		{
+			while (channel.read(in) >= 0)
+			{
+				in.flip();
+				while (in.hasRemaining())
+				{
+					byte b = in.get();
+					if (b != '\n')
+					{
+						if (length == MAX_LINE_LENGTH) overlong = true;
+						else
+						{
+							if (length == line.length) line = Arrays.copyOf(line , Math.min(length * 2 , MAX_LINE_LENGTH));
+							line[length++] = b;
+						}
+						continue;
+					}
+					
+					String reply = reply(session , line , length , overlong);
+					length = 0;
+					overlong = false;
+					if (line.length > BUFFER_SIZE) line = new byte[256]; // do not hold on to an overlong line
+					
+					if (reply == null) // quit
+					{
+						out.flush(channel);
+						return;
+					}
+					out.append(reply);
+					if (out.length >= BUFFER_SIZE) out.flush(channel);
+				}
+				in.clear();
+				out.flush(channel);
+			}
+			
+			// the last line may end at the end of the input rather than in a newline, as for BufferedReader.readLine
+			if (length > 0 || overlong)
+			{
+				String reply = reply(session , line , length , overlong);
+				if (reply != null) out.append(reply);
+				out.flush(channel);
+			}
+		} catch (IOException e)
+		{
+			// the client went away; nothing is left to answer
+		} finally
+		{
+			connections.remove(channel);
+		}
+	}
+	
+	/**
+	 * the reply to a line, the first $length bytes of $line, or to one longer than MAX_LINE_LENGTH if $overlong;
+	 * null to close the connection.
+	 */
+	private static String reply(Session session , byte[] line , int length , boolean overlong)
+	{
+		if (overlong) return "error: Line longer than " + MAX_LINE_LENGTH + " bytes";
+		if (length > 0 && line[length - 1] == '\r') length--;
+		return session.handle(new String(line , 0 , length , UTF_8));
+	}
+	
+	/**
+	 * the state of a connection: its calculator, changed by commands.
+	 */
+	private static final class Session
+	{
+		private Calculator calculator;
+		
+		Session(Calculator calculator)
+		{
+			this.calculator = calculator;
+		}
+		
+		/**
+		 * @return the reply to a line, or null to close the connection.
+		 */
+		String handle(String line)
+		{
+			String trimmed = line.trim();
+			if (!trimmed.startsWith(":")) return calculator.tryCompute(trimmed).toString();
+			
+			if (trimmed.equals(":scale")) return Integer.toString(calculator.scale());
+			if (trimmed.matches(":scale\\s+[0-9]+"))
+			{
+				try
+				{
+					calculator = calculator.withScale(Integer.parseInt(trimmed.substring(6).trim()));
+					return "ok";
+				} catch (IllegalArgumentException e)
+				{
+					return "error: " + e.getMessage();
+				}
+			}
+			if (trimmed.equals(":infix"))
+			{
+				calculator = new InfixCalculator(calculator.config());
+				return "ok";
+			}
+			if (trimmed.equals(":postfix"))
+			{
+				calculator = new PostfixCalculator(calculator.config());
+				return "ok";
+			}
+			if (trimmed.equals(":q") || trimmed.equals(":quit")) return null;
+			return "error: Unrecognised command: " + trimmed.substring(1);
+		}
+	}
+	
+	/**
+	 * the replies not written yet.
+	 */
+	private static final class Reply
+	{
+		private byte[] bytes = new byte[BUFFER_SIZE];
+		private int length = 0;
+		
+		void append(String reply)
+		{
+			byte[] encoded = reply.getBytes(UTF_8);
+			if (length + encoded.length + 1 > bytes.length)
+				bytes = Arrays.copyOf(bytes , Math.max(bytes.length * 2 , length + encoded.length + 1));
+			System.arraycopy(encoded , 0 , bytes , length , encoded.length);
+			length += encoded.length;
+			bytes[length++] = '\n';
+		}
+		
+		void flush(SocketChannel channel) throws IOException
+		{
+			ByteBuffer buffer = ByteBuffer.wrap(bytes , 0 , length);
+			while (buffer.hasRemaining()) channel.write(buffer);
+			length = 0;
+			if (bytes.length > BUFFER_SIZE) bytes = new byte[BUFFER_SIZE];
+		}
+	}
+	
+	/**
+	 * stops accepting, closes every connection and, for a Unix domain socket, deletes its file.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		closed = true;
+		server.close();
+		workers.shutdown();
+		for (SocketChannel channel : connections) channel.close();
+		if (address instanceof UnixDomainSocketAddress unix) Files.deleteIfExists(unix.getPath());
+	}
+}
@@ -0,0 +1,366 @@
+package calculators;
+
+import static calculators.CompiledExpression.ADD;
+import static calculators.CompiledExpression.AND_THEN;
+import static calculators.CompiledExpression.APPLY;
+import static calculators.CompiledExpression.DIVIDE;
+import static calculators.CompiledExpression.EQUAL;
+import static calculators.CompiledExpression.GREATER;
+import static calculators.CompiledExpression.GREATER_EQUAL;
+import static calculators.CompiledExpression.JUMP;
+import static calculators.CompiledExpression.JUMP_IF_FALSE;
+import static calculators.CompiledExpression.LESS;
+import static calculators.CompiledExpression.LESS_EQUAL;
+import static calculators.CompiledExpression.LOAD;
+import static calculators.CompiledExpression.LOAD_TEMP;
+import static calculators.CompiledExpression.MULTIPLY;
+import static calculators.CompiledExpression.NOT_EQUAL;
+import static calculators.CompiledExpression.OR_ELSE;
+import static calculators.CompiledExpression.POWER;
+import static calculators.CompiledExpression.PUSH_DECIMAL;
+import static calculators.CompiledExpression.PUSH_LONG;
+import static calculators.CompiledExpression.STORE;
+import static calculators.CompiledExpression.SUBTRACT;
+import static calculators.CompiledExpression.TRUTH;
+import static calculators.CompiledExpression.argument;
+import static calculators.CompiledExpression.opcode;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * evaluates a compiled expression over columns of values, a block of rows at a time.
+ * every stack slot of the plan becomes an array of one value per row in the block,
+ * so that each instruction is a single loop over the block; the loops over primitives are simple enough
+ * for the JIT compiler to unroll and vectorise.
+ * <p>
+ * a plan with && || or ?: takes a different path in every row, so it is evaluated one row at a time instead.
+ */
+final class ColumnKernels
+{
+	/**
+	 * number of rows evaluated at a time; small enough for the slots of a plan to stay in cache.
+	 */
+	static final int BLOCK_SIZE = 1024;
+	
+	private ColumnKernels() {}
+	
+	static double[] evaluateDoubles(CompiledExpression plan , Map<String , double[]> columns)
+	{
+		double[][] bound = new double[plan.variables.length][];
+		int rows = bind(plan , columns , bound);
+		double[] constants = new double[plan.constants.length];
+		for (int i = 0 ; i < constants.length ; i++) constants[i] = plan.constants[i].doubleValue();
+		
+		double[] results = new double[rows];
+		if (plan.branching)
+		{
+			double[] stack = new double[plan.maxDepth];
+			double[] temps = new double[plan.temps];
+			for (int row = 0 ; row < rows ; row++) results[row] = evaluateDoubleRow(plan , constants , bound , row , stack , temps);
+			return results;
+		}
+		
+		double[][] slots = new double[plan.maxDepth][BLOCK_SIZE];
+		double[][] temps = new double[plan.temps][BLOCK_SIZE];
+		for (int from = 0 ; from < rows ; from += BLOCK_SIZE)
+		{
+			int n = Math.min(BLOCK_SIZE , rows - from);
+			int top = -1;
+			for (int instruction : plan.code)
+			{
+				int opcode = opcode(instruction);
+				if (opcode == PUSH_LONG || opcode == PUSH_DECIMAL)
+					Arrays.fill(slots[++top] , 0 , n , constants[argument(instruction)]);
+				else if (opcode == LOAD) System.arraycopy(bound[argument(instruction)] , from , slots[++top] , 0 , n);
+				else if (opcode == STORE) System.arraycopy(slots[top] , 0 , temps[argument(instruction)] , 0 , n);
+				else if (opcode == LOAD_TEMP) System.arraycopy(temps[argument(instruction)] , 0 , slots[++top] , 0 , n);
+				else
+				{
+					double[] a = slots[top - 1];
+					double[] b = slots[top--];
+					switch (opcode)
+					{
+						case ADD -> { for (int i = 0 ; i < n ; i++) a[i] += b[i]; }
+						case SUBTRACT -> { for (int i = 0 ; i < n ; i++) a[i] -= b[i]; }
+						case MULTIPLY -> { for (int i = 0 ; i < n ; i++) a[i] *= b[i]; }
+						case DIVIDE -> { for (int i = 0 ; i < n ; i++) a[i] /= b[i]; }
+						case POWER -> { for (int i = 0 ; i < n ; i++) a[i] = Math.pow(a[i] , b[i]); }
+						case LESS -> { for (int i = 0 ; i < n ; i++) a[i] = a[i] < b[i] ? 1 : 0; }
+						case LESS_EQUAL -> { for (int i = 0 ; i < n ; i++) a[i] = a[i] <= b[i] ? 1 : 0; }
+						case GREATER -> { for (int i = 0 ; i < n ; i++) a[i] = a[i] > b[i] ? 1 : 0; }
+						case GREATER_EQUAL -> { for (int i = 0 ; i < n ; i++) a[i] = a[i] >= b[i] ? 1 : 0; }
+						case EQUAL -> { for (int i = 0 ; i < n ; i++) a[i] = a[i] == b[i] ? 1 : 0; }
+						case NOT_EQUAL -> { for (int i = 0 ; i < n ; i++) a[i] = a[i] != b[i] ? 1 : 0; }
+						case APPLY -> throw noDoubleArithmetic(plan , instruction);
+						default -> throw unknown(opcode);
+					}
+				}
+			}
+			System.arraycopy(slots[0] , 0 , results , from , n);
+		}
+		return results;
+	}
+	
+	static BigDecimal[] evaluateLongs(
+			CompiledExpression plan , Map<String , long[]> columns , int scale , RoundingMode roundingMode
+	)
+	{
+		long[][] bound = new long[plan.variables.length][];
+		int rows = bind(plan , columns , bound);
+		BigDecimal[] results = new BigDecimal[rows];
+		
+		// only +, - and * of integers, and comparisons, stay integers; anything else is computed in BigDecimal
+		// row by row, as are jumps
+		boolean integral = !plan.branching;
+		for (int instruction : plan.code)
+		{
+			int opcode = opcode(instruction);
+			integral &= opcode != DIVIDE && opcode != PUSH_DECIMAL && opcode != POWER && opcode != APPLY;
+		}
+		if (!integral)
+		{
+			for (int row = 0 ; row < rows ; row++) results[row] = evaluateRow(plan , bound , row , scale , roundingMode);
+			return results;
+		}
+		
+		long[][] slots = new long[plan.maxDepth][BLOCK_SIZE];
+		long[][] temps = new long[plan.temps][BLOCK_SIZE];
+		long[] overflow = new long[BLOCK_SIZE]; // 1 for each row that overflowed in any instruction
+		for (int from = 0 ; from < rows ; from += BLOCK_SIZE)
+		{
+			int n = Math.min(BLOCK_SIZE , rows - from);
+			Arrays.fill(overflow , 0 , n , 0);
+			int top = -1;
+			for (int instruction : plan.code)
+			{
+				int opcode = opcode(instruction);
+				if (opcode == PUSH_LONG) Arrays.fill(slots[++top] , 0 , n , plan.integers[argument(instruction)]);
+				else if (opcode == LOAD) System.arraycopy(bound[argument(instruction)] , from , slots[++top] , 0 , n);
+				else if (opcode == STORE) System.arraycopy(slots[top] , 0 , temps[argument(instruction)] , 0 , n);
+				else if (opcode == LOAD_TEMP) System.arraycopy(temps[argument(instruction)] , 0 , slots[++top] , 0 , n);
+				else
+				{
+					long[] a = slots[top - 1];
+					long[] b = slots[top--];
+					switch (opcode)
+					{
+						case ADD -> {
+							for (int i = 0 ; i < n ; i++)
+							{
+								long x = a[i] , y = b[i] , r = x + y;
+								overflow[i] |= ((x ^ r) & (y ^ r)) >>> 63;
+								a[i] = r;
+							}
+						}
+						case SUBTRACT -> {
+							for (int i = 0 ; i < n ; i++)
+							{
+								long x = a[i] , y = b[i] , r = x - y;
+								overflow[i] |= ((x ^ y) & (x ^ r)) >>> 63;
+								a[i] = r;
+							}
+						}
+						case MULTIPLY -> {
+							for (int i = 0 ; i < n ; i++)
+							{
+								long x = a[i] , y = b[i] , r = x * y;
+								long high = Math.multiplyHigh(x , y) ^ (r >> 63); // 0 unless the product needs more bits
+								overflow[i] |= (high | -high) >>> 63;
+								a[i] = r;
+							}
+						}
+						case LESS -> { for (int i = 0 ; i < n ; i++) a[i] = a[i] < b[i] ? 1 : 0; }
+						case LESS_EQUAL -> { for (int i = 0 ; i < n ; i++) a[i] = a[i] <= b[i] ? 1 : 0; }
+						case GREATER -> { for (int i = 0 ; i < n ; i++) a[i] = a[i] > b[i] ? 1 : 0; }
+						case GREATER_EQUAL -> { for (int i = 0 ; i < n ; i++) a[i] = a[i] >= b[i] ? 1 : 0; }
+						case EQUAL -> { for (int i = 0 ; i < n ; i++) a[i] = a[i] == b[i] ? 1 : 0; }
+						case NOT_EQUAL -> { for (int i = 0 ; i < n ; i++) a[i] = a[i] != b[i] ? 1 : 0; }
+						default -> throw unknown(opcode);
+					}
+				}
+			}
+			
+			long[] res = slots[0];
+			for (int i = 0 ; i < n ; i++)
+				results[from + i] = overflow[i] == 0
+						? BigDecimal.valueOf(res[i])
+						: evaluateRow(plan , bound , from + i , scale , roundingMode);
+		}
+		return results;
+	}
+	
+	static BigDecimal[] evaluateDecimals(
+			CompiledExpression plan , Map<String , BigDecimal[]> columns , int scale , RoundingMode roundingMode
+	)
+	{
+		BigDecimal[][] bound = new BigDecimal[plan.variables.length][];
+		int rows = bind(plan , columns , bound);
+		
+		BigDecimal[] results = new BigDecimal[rows];
+		if (plan.branching)
+		{
+			BigDecimal[] values = new BigDecimal[bound.length];
+			for (int row = 0 ; row < rows ; row++)
+			{
+				for (int v = 0 ; v < bound.length ; v++)
+				{
+					values[v] = bound[v][row];
+					if (values[v] == null) throw new NullPointerException("Null value in row " + row);
+				}
+				results[row] = plan.evaluate(values , scale , roundingMode);
+			}
+			return results;
+		}
+		
+		BigDecimal[][] slots = new BigDecimal[plan.maxDepth][BLOCK_SIZE];
+		BigDecimal[][] temps = new BigDecimal[plan.temps][BLOCK_SIZE];
+		for (int from = 0 ; from < rows ; from += BLOCK_SIZE)
+		{
+			int n = Math.min(BLOCK_SIZE , rows - from);
+			int top = -1;
+			for (int instruction : plan.code)
+			{
+				int opcode = opcode(instruction);
+				if (opcode == PUSH_LONG || opcode == PUSH_DECIMAL)
+					Arrays.fill(slots[++top] , 0 , n , plan.constants[argument(instruction)]);
+				else if (opcode == LOAD)
+				{
+					BigDecimal[] column = bound[argument(instruction)];
+					BigDecimal[] slot = slots[++top];
+					for (int i = 0 ; i < n ; i++)
+					{
+						slot[i] = column[from + i];
+						if (slot[i] == null) throw new NullPointerException("Null value in row " + (from + i));
+					}
+				}
+				else if (opcode == STORE) System.arraycopy(slots[top] , 0 , temps[argument(instruction)] , 0 , n);
+				else if (opcode == LOAD_TEMP) System.arraycopy(temps[argument(instruction)] , 0 , slots[++top] , 0 , n);
+				else
+				{
+					BigDecimal[] a = slots[top - 1];
+					BigDecimal[] b = slots[top--];
+					for (int i = 0 ; i < n ; i++)
+						a[i] = plan.operate(a[i] , instruction , b[i] , scale , roundingMode);
+				}
+			}
+			System.arraycopy(slots[0] , 0 , results , from , n);
+		}
+		return results;
+	}
+	
+	/**
+	 * evaluates a single row of double columns, following the jumps of the plan.
+	 */
+	private static double evaluateDoubleRow(
+			CompiledExpression plan , double[] constants , double[][] bound , int row , double[] stack , double[] temps
+	)
+	{
+		int[] code = plan.code;
+		int top = -1;
+		for (int pc = 0 ; pc < code.length ; pc++)
+		{
+			int instruction = code[pc];
+			int target = argument(instruction) - 1; // as $pc is incremented before the next instruction
+			switch (opcode(instruction))
+			{
+				case PUSH_LONG , PUSH_DECIMAL -> stack[++top] = constants[argument(instruction)];
+				case LOAD -> stack[++top] = bound[argument(instruction)][row];
+				case STORE -> temps[argument(instruction)] = stack[top];
+				case LOAD_TEMP -> stack[++top] = temps[argument(instruction)];
+				case JUMP -> pc = target;
+				case JUMP_IF_FALSE -> {
+					if (stack[top--] == 0) pc = target;
+				}
+				case AND_THEN -> {
+					if (stack[top] != 0) top--;
+					else
+					{
+						stack[top] = 0; // not -0.0
+						pc = target;
+					}
+				}
+				case OR_ELSE -> {
+					if (stack[top] == 0) top--;
+					else
+					{
+						stack[top] = 1;
+						pc = target;
+					}
+				}
+				case TRUTH -> stack[top] = stack[top] != 0 ? 1 : 0;
+				default -> {
+					double b = stack[top--];
+					double a = stack[top];
+					stack[top] = switch (opcode(instruction))
+							{
+								case ADD -> a + b;
+								case SUBTRACT -> a - b;
+								case MULTIPLY -> a * b;
+								case DIVIDE -> a / b;
+								case POWER -> Math.pow(a , b);
+								case LESS -> a < b ? 1 : 0;
+								case LESS_EQUAL -> a <= b ? 1 : 0;
+								case GREATER -> a > b ? 1 : 0;
+								case GREATER_EQUAL -> a >= b ? 1 : 0;
+								case EQUAL -> a == b ? 1 : 0;
+								case NOT_EQUAL -> a != b ? 1 : 0;
+								case APPLY -> throw noDoubleArithmetic(plan , instruction);
+								default -> throw unknown(opcode(instruction));
+							};
+				}
+			}
+		}
+		return stack[0];
+	}
+	
+	/**
+	 * evaluates a single row of long columns in BigDecimal.
+	 */
+	private static BigDecimal evaluateRow(
+			CompiledExpression plan , long[][] bound , int row , int scale , RoundingMode roundingMode
+	)
+	{
+		BigDecimal[] values = new BigDecimal[bound.length];
+		for (int v = 0 ; v < bound.length ; v++) values[v] = BigDecimal.valueOf(bound[v][row]);
+		return plan.evaluate(values , scale , roundingMode);
+	}
+	
+	/**
+	 * looks up the column of every variable of the plan into $bound, indexed as the variables of the plan.
+	 *
+	 * @return the number of rows: the common length of the columns bound,
+	 * or of any column given if the plan has no variables.
+	 */
+	private static int bind(CompiledExpression plan , Map<String , ?> columns , Object[] bound)
+	{
+		int rows = -1;
+		for (int v = 0 ; v < plan.variables.length ; v++)
+		{
+			Object column = columns.get(plan.variables[v]);
+			if (column == null) throw CompiledExpression.unbound(plan.variables[v]);
+			
+			int length = Array.getLength(column);
+			if (rows == -1) rows = length;
+			else if (length != rows) throw new IllegalArgumentException(
+					"Column '" + plan.variables[v] + "' has " + length + " rows where " + rows + " are expected");
+			bound[v] = column;
+		}
+		
+		if (rows == -1) rows = columns.isEmpty() ? 0 : Array.getLength(columns.values().iterator().next());
+		return rows;
+	}
+	
+	private static UnsupportedOperationException noDoubleArithmetic(CompiledExpression plan , int instruction)
+	{
+		return new UnsupportedOperationException("Operator '" + plan.operatorOf(instruction) + "' has no double arithmetic");
+	}
+	
+	private static IllegalStateException unknown(int opcode)
+	{
+		return new IllegalStateException("Internal error: unknown opcode " + opcode);
+	}
+}
@@ -0,0 +1,1258 @@
+package calculators;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import stacks.ArrayStack;
+import stacks.IntArrayStack;
+
+/**
+ * an immutable, reusable plan of an arithmetic expression, flattened into reverse polish notation.
+ * obtained from InfixCalculator.compile(String) or PostfixCalculator.compile(String[]);
+ * evaluating it involves no lexing, checking or priority resolving,
+ * so the same formula can be evaluated any number of times at the cost of the arithmetic alone.
+ * <p>
+ * the plan is a compact program of int instructions, each an opcode in the low byte and an argument above it,
+ * over a pool of constants that are parsed once at compile time.
+ * <p>
+ * numerals of up to 18 digits are kept as primitive longs, unscaled, alongside their scale, and evaluated in exact
+ * fixed-point long arithmetic for as long as possible, see FixedPoint; the evaluation is promoted to BigDecimal
+ * on overflow or on a longer numeral, which always yields the same result, scale included,
+ * as evaluating in BigDecimal from the start.
+ * <p>
+ * comparisons give 1 or 0; && and || and the conditional c ? a : b compile to forward jumps, so that an operand
+ * they do not need, such as the branch not taken, is skipped rather than evaluated.
+ * <p>
+ * a plan may refer to variables by name; their values are bound on evaluation, either one row at a time
+ * or a whole column at a time, in which case every operation runs as a tight loop over a block of rows.
+ * <p>
+ * a tiered plan, as made under CalculatorConfig.withTiered(true), counts its evaluations, and once it has been
+ * evaluated PlanCompiler.THRESHOLD times, is compiled to JVM bytecode; see PlanCompiler.
+ * the count is the only state of a plan that changes, and only decides when it is compiled.
+ * <p>
+ * a plan compiled from infix also records which ranges of instructions compute a bracketed subexpression,
+ * so that their results can be shared among the expressions of a batch through a SubexpressionMemo.
+ */
+public final class CompiledExpression
+{
+	/**
+	 * pushes an integer constant; the argument indexes $integers, and $constants alike.
+	 */
+	static final int PUSH_LONG = 0;
+	
+	/**
+	 * pushes a constant that is not an integer fitting in a long; the argument indexes $constants,
+	 * and $integers and $scales alike.
+	 */
+	static final int PUSH_DECIMAL = 1;
+	
+	/**
+	 * pushes the value of a variable; the argument indexes $variables.
+	 */
+	static final int LOAD = 2;
+	
+	static final int ADD = 3;
+	static final int SUBTRACT = 4;
+	static final int MULTIPLY = 5;
+	static final int DIVIDE = 6;
+	
+	/**
+	 * copies the value on top of the stack, leaving it there, into the temporary indexed by the argument;
+	 * used for a subexpression that occurs more than once, so that it is evaluated once.
+	 */
+	static final int STORE = 7;
+	
+	/**
+	 * pushes the value of the temporary indexed by the argument.
+	 */
+	static final int LOAD_TEMP = 8;
+	
+	static final int POWER = 9;
+	
+	/**
+	 * applies an operator other than the standard ones; the argument indexes $operators.
+	 */
+	static final int APPLY = 10;
+	
+	/*
+	 * comparisons: pop two values and push 1 if the comparison holds, 0 otherwise, both of scale 0.
+	 * values are compared numerically, so 1.0 == 1.
+	 */
+	static final int LESS = 11;
+	static final int LESS_EQUAL = 12;
+	static final int GREATER = 13;
+	static final int GREATER_EQUAL = 14;
+	static final int EQUAL = 15;
+	static final int NOT_EQUAL = 16;
+	
+	/*
+	 * jumps, for the operators that do not evaluate all their operands; the argument is the index of the
+	 * instruction to go on with, which is always further on. a value is true if it is not zero.
+	 * c ? a : b is c JUMP_IF_FALSE a JUMP b, and a && b is a AND_THEN b TRUTH, as is a || b with OR_ELSE.
+	 */
+	
+	static final int JUMP = 17;
+	
+	/**
+	 * pops a value, and jumps if it is false.
+	 */
+	static final int JUMP_IF_FALSE = 18;
+	
+	/**
+	 * jumps if the value on top is false, leaving it as 0; otherwise pops it.
+	 */
+	static final int AND_THEN = 19;
+	
+	/**
+	 * jumps if the value on top is true, leaving it as 1; otherwise pops it.
+	 */
+	static final int OR_ELSE = 20;
+	
+	/**
+	 * replaces the value on top by 1 if it is true, and 0 otherwise.
+	 */
+	static final int TRUTH = 21;
+	
+	static final int OPCODE_MASK = 0xFF;
+	static final int ARGUMENT_SHIFT = 8;
+	
+	/**
+	 * the greatest argument of an instruction: the furthest target of a jump, and the last index of a constant,
+	 * variable, operator or temporary. a plan without jumps may be of any length.
+	 */
+	static final int MAX_ARGUMENT = (1 << (32 - ARGUMENT_SHIFT)) - 1;
+	
+	/**
+	 * the flattened program, in postfix order.
+	 */
+	final int[] code;
+	
+	/**
+	 * the constant pool; each distinct numeral of the expression appears once.
+	 */
+	final BigDecimal[] constants;
+	
+	/**
+	 * the unscaled values of the constants as longs, at the same indices as in $constants;
+	 * only meaningful where $scales is not NOT_FIXED. for a constant referenced by PUSH_LONG, the constant itself.
+	 */
+	final long[] integers;
+	
+	/**
+	 * the scales of the constants, at the same indices as in $constants;
+	 * NOT_FIXED for those whose unscaled value does not fit in a long.
+	 */
+	final int[] scales;
+	
+	static final int NOT_FIXED = Integer.MIN_VALUE;
+	
+	/**
+	 * the distinct variable names, in order of first appearance.
+	 */
+	final String[] variables;
+	
+	/**
+	 * the distinct operators applied by APPLY, in order of first appearance.
+	 */
+	final Operator[] operators;
+	
+	/**
+	 * whether the program has jumps, so that some instructions may be skipped rather than run straight through.
+	 */
+	final boolean branching;
+	
+	/**
+	 * the greatest number of operands ever held in the stack during evaluation.
+	 */
+	final int maxDepth;
+	
+	/**
+	 * the number of temporaries used by STORE and LOAD_TEMP.
+	 */
+	final int temps;
+	
+	/**
+	 * for a plan whose divisions were folded for $boundScale and $boundRoundingMode, the plan it was optimised from,
+	 * which is evaluated instead under any other scale or rounding mode; otherwise null.
+	 */
+	private final CompiledExpression fallback;
+	private final int boundScale;
+	private final RoundingMode boundRoundingMode;
+	
+	/**
+	 * the bracketed subexpressions, each computed by the instructions in [$groupStarts[i], $groupEnds[i]);
+	 * ordered by start, an enclosing group before those it encloses.
+	 * only groups of more than one instruction are recorded, and a range is recorded once however many brackets
+	 * enclose it. empty for plans not compiled from infix, optimised plans included.
+	 */
+	final int[] groupStarts;
+	final int[] groupEnds;
+	
+	/**
+	 * whether this plan counts its evaluations, to be compiled once hot.
+	 */
+	final boolean tiered;
+	
+	/**
+	 * for a tiered plan, the evaluations since it was made or its compiled code was dropped;
+	 * counted without synchronisation, as a lost count only delays compiling.
+	 */
+	int evaluations = 0;
+	
+	/**
+	 * for a tiered plan, its compiled code, if compiled and not dropped since.
+	 */
+	volatile PlanCompiler.Code compiled;
+	
+	private CompiledExpression(
+			int[] code , BigDecimal[] constants , long[] integers , int[] scales , String[] variables ,
+			Operator[] operators , int maxDepth , int temps ,
+			int[] groupStarts , int[] groupEnds ,
+			CompiledExpression fallback , int boundScale , RoundingMode boundRoundingMode
+	)
+	{
+		this.code = code;
+		this.constants = constants;
+		this.integers = integers;
+		this.scales = scales;
+		this.variables = variables;
+		this.operators = operators;
+		this.branching = Arrays.stream(code).anyMatch(CompiledExpression::isJump);
+		this.maxDepth = maxDepth;
+		this.temps = temps;
+		this.groupStarts = groupStarts;
+		this.groupEnds = groupEnds;
+		this.fallback = fallback;
+		this.boundScale = boundScale;
+		this.boundRoundingMode = boundRoundingMode;
+		this.tiered = false;
+	}
+	
+	/**
+	 * a tiered copy of $plan.
+	 */
+	private CompiledExpression(CompiledExpression plan)
+	{
+		this.code = plan.code;
+		this.constants = plan.constants;
+		this.integers = plan.integers;
+		this.scales = plan.scales;
+		this.variables = plan.variables;
+		this.operators = plan.operators;
+		this.branching = plan.branching;
+		this.maxDepth = plan.maxDepth;
+		this.temps = plan.temps;
+		this.groupStarts = plan.groupStarts;
+		this.groupEnds = plan.groupEnds;
+		this.fallback = plan.fallback == null ? null : plan.fallback.tiered();
+		this.boundScale = plan.boundScale;
+		this.boundRoundingMode = plan.boundRoundingMode;
+		this.tiered = true;
+	}
+	
+	static int opcode(int instruction)
+	{
+		return instruction & OPCODE_MASK;
+	}
+	
+	static int argument(int instruction)
+	{
+		return instruction >>> ARGUMENT_SHIFT;
+	}
+	
+	static int instruction(int opcode , int argument)
+	{
+		return opcode | argument << ARGUMENT_SHIFT;
+	}
+	
+	/**
+	 * the operator of a binary operation instruction.
+	 */
+	Operator operatorOf(int instruction)
+	{
+		return switch (opcode(instruction))
+				{
+					case ADD -> Operator.ADD;
+					case SUBTRACT -> Operator.SUBTRACT;
+					case MULTIPLY -> Operator.MULTIPLY;
+					case DIVIDE -> Operator.DIVIDE;
+					case POWER -> Operator.POWER;
+					case APPLY -> operators[argument(instruction)];
+					case LESS -> Operator.LESS;
+					case LESS_EQUAL -> Operator.LESS_EQUAL;
+					case GREATER -> Operator.GREATER;
+					case GREATER_EQUAL -> Operator.GREATER_EQUAL;
+					case EQUAL -> Operator.EQUAL;
+					case NOT_EQUAL -> Operator.NOT_EQUAL;
+					case AND_THEN -> Operator.AND;
+					case OR_ELSE -> Operator.OR;
+					default -> throw new IllegalStateException("Internal error: unknown opcode " + opcode(instruction));
+				};
+	}
+	
+	/**
+	 * the names of the variables this plan refers to, in order of first appearance.
+	 */
+	public List<String> variables()
+	{
+		return List.of(variables);
+	}
+	
+	/**
+	 * an optimised plan giving exactly the same results as this one under any scale and rounding mode.
+	 * constant subexpressions without division are folded, x * 1 is reduced to x, x + 0 and x - 0 to x
+	 * where x is known not to have a negative scale, and structurally identical subexpressions are evaluated once.
+	 */
+	public CompiledExpression optimize()
+	{
+		return new Optimizer(unbound() , false , 0 , null).optimize();
+	}
+	
+	/**
+	 * an optimised plan, as by optimize(), that also folds constant divisions for the given scale and rounding mode.
+	 * evaluated under any other scale or rounding mode, it falls back to this plan, so its results are always
+	 * the same as this plan's.
+	 */
+	public CompiledExpression optimize(int scale , RoundingMode roundingMode)
+	{
+		if (roundingMode == null) throw new NullPointerException();
+		return new Optimizer(unbound() , true , scale , roundingMode).optimize();
+	}
+	
+	/**
+	 * a tiered copy of this plan, which is compiled once hot; this plan itself if it is tiered already,
+	 * or if PlanCompiler would not compile it anyway.
+	 */
+	CompiledExpression tiered()
+	{
+		return tiered || !PlanCompiler.isCompilable(this) ? this : new CompiledExpression(this);
+	}
+	
+	/**
+	 * the plan to evaluate under the given scale and rounding mode; this one, unless it was bound to others.
+	 */
+	CompiledExpression planFor(int scale , RoundingMode roundingMode)
+	{
+		return fallback == null || scale == boundScale && roundingMode == boundRoundingMode ? this : fallback;
+	}
+	
+	/**
+	 * the plan to evaluate in double arithmetic, where divisions are not subject to scale.
+	 */
+	CompiledExpression unbound()
+	{
+		return fallback == null ? this : fallback;
+	}
+	
+	/**
+	 * evaluates this plan, which must not refer to any variable.
+	 *
+	 * @param scale        scale for division results.
+	 * @param roundingMode rounding mode for division operation.
+	 * @return the computed result as BigDecimal.
+	 * @throws IllegalArgumentException if the plan refers to a variable.
+	 */
+	public BigDecimal evaluate(int scale , RoundingMode roundingMode)
+	{
+		return evaluate(scale , roundingMode , null);
+	}
+	
+	/**
+	 * evaluates this plan, which must not refer to any variable, counting the BigDecimals created in $metrics.
+	 *
+	 * @param metrics where to count, or null for none.
+	 */
+	BigDecimal evaluate(int scale , RoundingMode roundingMode , CalculatorMetrics metrics)
+	{
+		if (variables.length > 0) throw unbound(variables[0]);
+		return evaluate(new BigDecimal[0] , scale , roundingMode , metrics , null);
+	}
+	
+	/**
+	 * evaluates this plan, which must not refer to any variable, keeping any error in $report rather than throwing it.
+	 * division by zero is checked for before dividing; any rarer arithmetic failure, such as a scale overflow,
+	 * is still thrown by BigDecimal, and caught.
+	 *
+	 * @param metrics where to count the BigDecimals created, or null for none.
+	 * @return the computed result, or null if the evaluation failed.
+	 */
+	BigDecimal tryEvaluate(int scale , RoundingMode roundingMode , CalculatorMetrics metrics , ErrorReport report)
+	{
+		if (variables.length > 0)
+			return ErrorReport.fail(report , ErrorCode.UNBOUND_VARIABLE , -1 , unbound(variables[0]).getMessage());
+		try
+		{
+			return evaluate(new BigDecimal[0] , scale , roundingMode , metrics , report);
+		} catch (ArithmeticException e)
+		{
+			return ErrorReport.fail(report , ErrorCode.ARITHMETIC , -1 , String.valueOf(e.getMessage()));
+		}
+	}
+	
+	/**
+	 * evaluates this plan with the variables bound to the given values.
+	 * bindings for variables that the plan does not refer to are ignored.
+	 *
+	 * @param scale        scale for division results.
+	 * @param roundingMode rounding mode for division operation.
+	 * @return the computed result as BigDecimal.
+	 * @throws IllegalArgumentException if a variable is not bound.
+	 */
+	public BigDecimal evaluate(Map<String , BigDecimal> bindings , int scale , RoundingMode roundingMode)
+	{
+		BigDecimal[] values = new BigDecimal[variables.length];
+		for (int i = 0 ; i < variables.length ; i++)
+		{
+			values[i] = bindings.get(variables[i]);
+			if (values[i] == null) throw unbound(variables[i]);
+		}
+		return evaluate(values , scale , roundingMode);
+	}
+	
+	/**
+	 * evaluates this plan over columns of doubles, one row per index, in IEEE 754 double arithmetic.
+	 * much faster than the exact evaluation, but neither exact nor subject to scale:
+	 * the results are rounded as doubles are, and division by zero gives an infinity or NaN; ^ is Math.pow,
+	 * and comparisons are those of doubles.
+	 *
+	 * @param columns the values of every variable, as arrays of equal length.
+	 * @return the result of each row.
+	 * @throws IllegalArgumentException if a variable is not bound, or the columns differ in length.
+	 * @throws UnsupportedOperationException if the plan applies an operator other than the standard ones.
+	 */
+	public double[] evaluateDoubles(Map<String , double[]> columns)
+	{
+		return ColumnKernels.evaluateDoubles(unbound() , columns);
+	}
+	
+	/**
+	 * evaluates this plan over columns of longs, one row per index.
+	 * the results are exactly those of evaluating each row on its own;
+	 * rows are computed in long arithmetic, and only those that overflow are computed again in BigDecimal.
+	 *
+	 * @param columns the values of every variable, as arrays of equal length.
+	 * @return the result of each row.
+	 * @throws IllegalArgumentException if a variable is not bound, or the columns differ in length.
+	 */
+	public BigDecimal[] evaluateLongs(Map<String , long[]> columns , int scale , RoundingMode roundingMode)
+	{
+		return ColumnKernels.evaluateLongs(planFor(scale , roundingMode) , columns , scale , roundingMode);
+	}
+	
+	/**
+	 * evaluates this plan over columns of BigDecimals, one row per index.
+	 * the results are exactly those of evaluating each row on its own.
+	 *
+	 * @param columns the values of every variable, as arrays of equal length.
+	 * @return the result of each row.
+	 * @throws IllegalArgumentException if a variable is not bound, or the columns differ in length.
+	 */
+	public BigDecimal[] evaluateDecimals(Map<String , BigDecimal[]> columns , int scale , RoundingMode roundingMode)
+	{
+		return ColumnKernels.evaluateDecimals(planFor(scale , roundingMode) , columns , scale , roundingMode);
+	}
+	
+	static IllegalArgumentException unbound(String variable)
+	{
+		return new IllegalArgumentException("Unbound variable '" + variable + "'");
+	}
+	
+	/**
+	 * evaluates this plan with $values[i] bound to $variables[i].
+	 */
+	BigDecimal evaluate(BigDecimal[] values , int scale , RoundingMode roundingMode)
+	{
+		return evaluate(values , scale , roundingMode , null , null);
+	}
+	
+	/**
+	 * evaluates this plan with $values[i] bound to $variables[i], counting the BigDecimals created in $metrics:
+	 * one for a result computed in long arithmetic, and otherwise one for every value promoted
+	 * and every operation performed in BigDecimal. the count costs nothing without $metrics.
+	 * a division by zero is kept in $report if given, and thrown otherwise.
+	 */
+	BigDecimal evaluate(
+			BigDecimal[] values , int scale , RoundingMode roundingMode , CalculatorMetrics metrics , ErrorReport report
+	)
+	{
+		CompiledExpression plan = planFor(scale , roundingMode);
+		if (plan != this) return plan.evaluate(values , scale , roundingMode , metrics , report);
+		
+		if (tiered)
+		{
+			PlanCompiler.Code compiled = this.compiled;
+			if (compiled == null)
+			{
+				if (++evaluations == PlanCompiler.THRESHOLD) PlanCompiler.compile(this);
+			}
+			else
+			{
+				// where the compiled code gives up, the interpreter does it all again, and promotes as usual
+				BigDecimal res = compiled.evaluate(values , scale , roundingMode);
+				if (res != null)
+				{
+					if (metrics != null) metrics.decimalsCreated(1);
+					return res;
+				}
+			}
+		}
+		
+		long[] longStack = new long[maxDepth];
+		int[] scaleStack = new int[maxDepth];
+		long[] longTemps = new long[temps];
+		int[] tempScales = new int[temps];
+		int top = -1;
+		int pc = 0;
+		
+		// on anything that does not fit, $pc is left at that instruction, whose operands are untouched;
+		// a division by zero or a rounding that is not allowed is also left for BigDecimal to report
+		run:
+		for ( ; pc < code.length ; pc++)
+		{
+			int instruction = code[pc];
+			switch (opcode(instruction))
+			{
+				case PUSH_LONG -> {
+					longStack[++top] = integers[argument(instruction)];
+					scaleStack[top] = 0;
+				}
+				case PUSH_DECIMAL -> {
+					int argument = argument(instruction);
+					if (scales[argument] == NOT_FIXED) break run;
+					longStack[++top] = integers[argument];
+					scaleStack[top] = scales[argument];
+				}
+				case LOAD -> {
+					BigDecimal value = values[argument(instruction)];
+					long unscaled = FixedPoint.unscaled(value);
+					if (unscaled == FixedPoint.OVERFLOW) break run;
+					longStack[++top] = unscaled;
+					scaleStack[top] = value.scale();
+				}
+				case ADD -> {
+					long sum = FixedPoint.add(longStack[top - 1] , scaleStack[top - 1] , longStack[top] , scaleStack[top]);
+					if (sum == FixedPoint.OVERFLOW) break run;
+					longStack[--top] = sum;
+					scaleStack[top] = Math.max(scaleStack[top] , scaleStack[top + 1]);
+				}
+				case SUBTRACT -> {
+					long difference = FixedPoint.subtract(longStack[top - 1] , scaleStack[top - 1] , longStack[top] , scaleStack[top]);
+					if (difference == FixedPoint.OVERFLOW) break run;
+					longStack[--top] = difference;
+					scaleStack[top] = Math.max(scaleStack[top] , scaleStack[top + 1]);
+				}
+				case MULTIPLY -> {
+					long product = FixedPoint.multiply(longStack[top - 1] , longStack[top]);
+					int productScale = FixedPoint.productScale(scaleStack[top - 1] , scaleStack[top]);
+					if (product == FixedPoint.OVERFLOW || productScale == NOT_FIXED) break run;
+					longStack[--top] = product;
+					scaleStack[top] = productScale;
+				}
+				case DIVIDE -> {
+					long quotient = FixedPoint.divide(longStack[top - 1] , scaleStack[top - 1] ,
+							longStack[top] , scaleStack[top] , scale , roundingMode);
+					if (quotient == FixedPoint.OVERFLOW) break run;
+					longStack[--top] = quotient;
+					scaleStack[top] = scale;
+				}
+				case POWER -> {
+					int powerScale = FixedPoint.powerScale(scaleStack[top - 1] , longStack[top] , scaleStack[top]);
+					if (powerScale == NOT_FIXED) break run;
+					long power = FixedPoint.power(longStack[top - 1] , longStack[top]);
+					if (power == FixedPoint.OVERFLOW) break run;
+					longStack[--top] = power;
+					scaleStack[top] = powerScale;
+				}
+				case APPLY -> {
+					break run;
+				}
+				case LESS , LESS_EQUAL , GREATER , GREATER_EQUAL , EQUAL , NOT_EQUAL -> {
+					int comparison = FixedPoint.compare(longStack[top - 1] , scaleStack[top - 1] , longStack[top] , scaleStack[top]);
+					longStack[--top] = holds(opcode(instruction) , comparison) ? 1 : 0;
+					scaleStack[top] = 0;
+				}
+				case JUMP -> pc = argument(instruction) - 1; // as $pc is incremented before the next instruction
+				case JUMP_IF_FALSE -> {
+					if (longStack[top--] == 0) pc = argument(instruction) - 1;
+				}
+				case AND_THEN -> {
+					if (longStack[top] != 0) top--;
+					else
+					{
+						scaleStack[top] = 0;
+						pc = argument(instruction) - 1;
+					}
+				}
+				case OR_ELSE -> {
+					if (longStack[top] == 0) top--;
+					else
+					{
+						longStack[top] = 1;
+						scaleStack[top] = 0;
+						pc = argument(instruction) - 1;
+					}
+				}
+				case TRUTH -> {
+					longStack[top] = longStack[top] != 0 ? 1 : 0;
+					scaleStack[top] = 0;
+				}
+				case STORE -> {
+					longTemps[argument(instruction)] = longStack[top];
+					tempScales[argument(instruction)] = scaleStack[top];
+				}
+				case LOAD_TEMP -> {
+					longStack[++top] = longTemps[argument(instruction)];
+					scaleStack[top] = tempScales[argument(instruction)];
+				}
+			}
+		}
+		
+		if (pc == code.length)
+		{
+			assert top == 0 : "Internal error";
+			if (metrics != null) metrics.decimalsCreated(1);
+			return BigDecimal.valueOf(longStack[0] , scaleStack[0]);
+		}
+		
+		if (metrics != null)
+		{
+			int operations = 0;
+			for (int i = pc ; i < code.length ; i++) if (isOperation(code[i])) operations++;
+			metrics.decimalsCreated(top + 1 + temps + operations);
+		}
+		
+		// promote whatever has been computed so far, and carry on in BigDecimal
+		ArrayStack<BigDecimal> numStack = new ArrayStack<>(maxDepth);
+		for (int i = 0 ; i <= top ; i++) numStack.push(BigDecimal.valueOf(longStack[i] , scaleStack[i]));
+		BigDecimal[] decimalTemps = new BigDecimal[temps]; // those not stored yet are never loaded
+		for (int i = 0 ; i < temps ; i++) decimalTemps[i] = BigDecimal.valueOf(longTemps[i] , tempScales[i]);
+		return evaluateDecimal(numStack , decimalTemps , values , pc , scale , roundingMode , report);
+	}
+	
+	/**
+	 * whether a value is an integer that certainly fits in a long; precision() does not allocate, unlike unscaledValue().
+	 */
+	static boolean isLong(BigDecimal value)
+	{
+		return value.scale() == 0 && value.precision() <= Lexer.MAX_LONG_DIGITS;
+	}
+	
+	/**
+	 * evaluates the rest of the plan in BigDecimal, starting from instruction $pc.
+	 *
+	 * @return the result, or null if a division by zero was kept in $report.
+	 */
+	private BigDecimal evaluateDecimal(
+			ArrayStack<BigDecimal> numStack , BigDecimal[] temps , BigDecimal[] values , int pc ,
+			int scale , RoundingMode roundingMode , ErrorReport report
+	)
+	{
+		for ( ; pc < code.length ; pc++)
+		{
+			int instruction = code[pc];
+			switch (opcode(instruction))
+			{
+				case PUSH_LONG , PUSH_DECIMAL -> numStack.push(constants[argument(instruction)]);
+				case LOAD -> numStack.push(values[argument(instruction)]);
+				case STORE -> temps[argument(instruction)] = numStack.peek();
+				case LOAD_TEMP -> numStack.push(temps[argument(instruction)]);
+				case JUMP , JUMP_IF_FALSE , AND_THEN , OR_ELSE , TRUTH -> pc = branch(numStack , instruction , pc);
+				default -> {
+					BigDecimal op2 = numStack.pop();
+					BigDecimal op1 = numStack.pop();
+					if (report != null && opcode(instruction) == DIVIDE && op2.signum() == 0)
+						return ErrorReport.fail(report , ErrorCode.DIVISION_BY_ZERO , -1 ,
+								op1.signum() == 0 ? "Division undefined" : "Division by zero");
+					numStack.push(operate(op1 , instruction , op2 , scale , roundingMode));
+				}
+			}
+		}
+		
+		assert numStack.size() == 1 : "Internal error";
+		return numStack.pop();
+	}
+	
+	/**
+	 * performs a jump instruction, or TRUTH, on a stack of BigDecimals.
+	 *
+	 * @return the index of the instruction before the one to go on with, as $pc is incremented after.
+	 */
+	static int branch(ArrayStack<BigDecimal> numStack , int instruction , int pc)
+	{
+		int target = argument(instruction) - 1;
+		switch (opcode(instruction))
+		{
+			case JUMP -> pc = target;
+			case JUMP_IF_FALSE -> {
+				if (numStack.pop().signum() == 0) pc = target;
+			}
+			case AND_THEN -> {
+				if (numStack.pop().signum() == 0)
+				{
+					numStack.push(BigDecimal.ZERO);
+					pc = target;
+				}
+			}
+			case OR_ELSE -> {
+				if (numStack.pop().signum() != 0)
+				{
+					numStack.push(BigDecimal.ONE);
+					pc = target;
+				}
+			}
+			case TRUTH -> numStack.push(truth(numStack.pop().signum() != 0));
+			default -> throw new IllegalStateException("Internal error: not a jump " + opcode(instruction));
+		}
+		return pc;
+	}
+	
+	/**
+	 * performs a calculation given two operands and the opcode of a standard operator or a comparison.
+	 */
+	static BigDecimal apply(BigDecimal num1 , int opcode , BigDecimal num2 , int scale , RoundingMode roundingMode)
+	{
+		return switch (opcode)
+				{
+					case ADD -> num1.add(num2);
+					case SUBTRACT -> num1.subtract(num2);
+					case MULTIPLY -> num1.multiply(num2);
+					case DIVIDE -> num1.divide(num2 , scale , roundingMode);
+					case POWER -> Operator.power(num1 , num2 , scale , roundingMode);
+					case LESS , LESS_EQUAL , GREATER , GREATER_EQUAL , EQUAL , NOT_EQUAL ->
+							truth(holds(opcode , num1.compareTo(num2)));
+					default -> throw new IllegalStateException("Internal error: unknown opcode " + opcode);
+				};
+	}
+	
+	/**
+	 * whether the comparison of an opcode holds of two values that compare as $comparison, as by compareTo.
+	 */
+	static boolean holds(int opcode , int comparison)
+	{
+		return switch (opcode)
+				{
+					case LESS -> comparison < 0;
+					case LESS_EQUAL -> comparison <= 0;
+					case GREATER -> comparison > 0;
+					case GREATER_EQUAL -> comparison >= 0;
+					case EQUAL -> comparison == 0;
+					case NOT_EQUAL -> comparison != 0;
+					default -> throw new IllegalStateException("Internal error: not a comparison " + opcode);
+				};
+	}
+	
+	private static BigDecimal truth(boolean value)
+	{
+		return value ? BigDecimal.ONE : BigDecimal.ZERO;
+	}
+	
+	static boolean isComparison(int opcode)
+	{
+		return opcode >= LESS && opcode <= NOT_EQUAL;
+	}
+	
+	static boolean isJump(int instruction)
+	{
+		int opcode = opcode(instruction);
+		return opcode >= JUMP && opcode <= OR_ELSE;
+	}
+	
+	/**
+	 * performs the calculation of an operation instruction of this plan, of any operator.
+	 */
+	BigDecimal operate(BigDecimal num1 , int instruction , BigDecimal num2 , int scale , RoundingMode roundingMode)
+	{
+		return opcode(instruction) == APPLY
+				? operators[argument(instruction)].apply(num1 , num2 , scale , roundingMode)
+				: apply(num1 , opcode(instruction) , num2 , scale , roundingMode);
+	}
+	
+	/**
+	 * whether an instruction is a binary operation, which pops two values and pushes one.
+	 */
+	static boolean isOperation(int instruction)
+	{
+		int opcode = opcode(instruction);
+		return opcode >= ADD && opcode <= DIVIDE || opcode == POWER || opcode == APPLY;
+	}
+	
+	/**
+	 * the expression in postfix notation, numerals, variables and operators separated by a space.
+	 * PostfixCalculator accepts it as is; a subexpression that is evaluated once but used more than once
+	 * is written out at every use, and c ? a : b is written c a b ?.
+	 */
+	@Override
+	public String toString()
+	{
+		if (temps == 0 && !branching)
+		{
+			StringBuilder sb = new StringBuilder();
+			for (int instruction : code)
+			{
+				if (sb.length() > 0) sb.append(' ');
+				appendInstruction(sb , instruction);
+			}
+			return sb.toString();
+		}
+		
+		// rebuild the text of every subexpression, so that temporaries can be expanded;
+		// && || and ?: are written out where their last operand ends, the target of their jump.
+		// the text of an operation is kept as an array of its parts, and only written out at the end,
+		// as concatenating it there and then would copy the text of its left operand again at every level
+		ArrayStack<Object> textStack = new ArrayStack<>(); // holds the conditions and left operands jumped over, too
+		Object[] tempTexts = new Object[temps];
+		IntArrayStack pendingTargets = new IntArrayStack(); // innermost on top, so the first to be reached
+		IntArrayStack pendingOpcodes = new IntArrayStack();
+		for (int pc = 0 ; pc <= code.length ; pc++)
+		{
+			while (!pendingTargets.isEmpty() && pendingTargets.peek() == pc)
+			{
+				pendingTargets.pop();
+				Object op2 = textStack.pop();
+				Object op1 = textStack.pop();
+				textStack.push(switch (pendingOpcodes.pop())
+						{
+							case JUMP -> new Object[] {textStack.pop() , op1 , op2 , "?"};
+							case AND_THEN -> new Object[] {op1 , op2 , "&&"};
+							default -> new Object[] {op1 , op2 , "||"};
+						});
+			}
+			if (pc == code.length) break;
+			
+			int instruction = code[pc];
+			switch (opcode(instruction))
+			{
+				case JUMP , AND_THEN , OR_ELSE -> {
+					pendingTargets.push(argument(instruction));
+					pendingOpcodes.push(opcode(instruction));
+				}
+				case JUMP_IF_FALSE , TRUTH -> {}
+				case STORE -> tempTexts[argument(instruction)] = textStack.peek();
+				case LOAD_TEMP -> textStack.push(tempTexts[argument(instruction)]);
+				case PUSH_LONG , PUSH_DECIMAL , LOAD ->
+						textStack.push(appendInstruction(new StringBuilder() , instruction).toString());
+				default -> {
+					Object op2 = textStack.pop();
+					Object op1 = textStack.pop();
+					textStack.push(new Object[] {op1 , op2 , operatorOf(instruction)});
+				}
+			}
+		}
+		
+		StringBuilder sb = new StringBuilder();
+		ArrayStack<Object> parts = new ArrayStack<>();
+		parts.push(textStack.pop());
+		while (!parts.isEmpty())
+		{
+			Object part = parts.pop();
+			if (part instanceof Object[] operation)
+			{
+				for (int i = operation.length - 1 ; i >= 0 ; i--) parts.push(operation[i]);
+				continue;
+			}
+			if (sb.length() > 0) sb.append(' ');
+			sb.append(part);
+		}
+		return sb.toString();
+	}
+	
+	private StringBuilder appendInstruction(StringBuilder sb , int instruction)
+	{
+		return switch (opcode(instruction))
+				{
+					case PUSH_LONG , PUSH_DECIMAL -> sb.append(constants[argument(instruction)]);
+					case LOAD -> sb.append(variables[argument(instruction)]);
+					default -> sb.append(operatorOf(instruction));
+				};
+	}
+	
+	/**
+	 * accumulates instructions in postfix order; used by the calculators while parsing.
+	 */
+	static final class Builder
+	{
+		private int[] code = new int[16];
+		private BigDecimal[] constants = new BigDecimal[8];
+		private long[] integers = new long[8];
+		private int[] scales = new int[8];
+		private final Map<BigDecimal , Integer> constantIndices = new HashMap<>();
+		private final Map<String , Integer> variables = new HashMap<>();
+		private final List<Operator> operators = new ArrayList<>();
+		private int codeLength = 0;
+		private int constantCount = 0;
+		private int depth = 0;
+		private int maxDepth = 0;
+		private int temps = 0;
+		private int[] groupStarts = new int[4];
+		private int[] groupEnds = new int[4];
+		private int groupCount = 0;
+		private int[] deferredPositions = new int[4];
+		private int[] deferredJumps = new int[4];
+		private int[] deferredTargets = new int[4];
+		private int deferredCount = 0;
+		private int furthestTarget = 0;
+		
+		Builder() {}
+		
+		/**
+		 * a builder whose variables are indexed as in $variables, even if the first uses come in another order.
+		 */
+		Builder(String[] variables)
+		{
+			for (String name : variables) this.variables.put(name , this.variables.size());
+		}
+		
+		/**
+		 * emits an operand given as a numeral in decimal or scientific notation.
+		 * integers of up to 18 digits are parsed straight into a long, and other short numerals straight
+		 * into a BigDecimal; anything else goes through the BigDecimal constructor, which deals with malformed numerals.
+		 */
+		void numeral(String numeral)
+		{
+			numeral(numeral , 0 , numeral.length());
+		}
+		
+		/**
+		 * emits an operand given as the numeral in [start, end) of $s.
+		 */
+		void numeral(CharSequence s , int start , int end)
+		{
+			if (Lexer.isInteger(s , start , end))
+			{
+				operand(Lexer.parseLong(s , start , end));
+				return;
+			}
+			
+			BigDecimal num = Lexer.parseDecimal(s , start , end);
+			operand(num != null ? num : new BigDecimal(s.subSequence(start , end).toString()));
+		}
+		
+		/**
+		 * emits a constant operand; equal constants, of the same scale, share a slot in the pool.
+		 */
+		void operand(BigDecimal num)
+		{
+			Integer index = constantIndices.get(num);
+			if (index == null)
+			{
+				if (constantCount == constants.length)
+				{
+					constants = Arrays.copyOf(constants , constantCount * 2);
+					integers = Arrays.copyOf(integers , constantCount * 2);
+					scales = Arrays.copyOf(scales , constantCount * 2);
+				}
+				constants[constantCount] = num;
+				if (num.precision() <= Lexer.MAX_LONG_DIGITS)
+				{
+					integers[constantCount] = isLong(num) ? num.longValueExact() : num.unscaledValue().longValue();
+					scales[constantCount] = num.scale();
+				}
+				else scales[constantCount] = NOT_FIXED;
+				constantIndices.put(num , index = constantCount++);
+			}
+			push(instruction(isLong(num) ? PUSH_LONG : PUSH_DECIMAL , index));
+		}
+		
+		void operand(long num)
+		{
+			operand(BigDecimal.valueOf(num));
+		}
+		
+		/**
+		 * emits the load of a variable; the same name always refers to the same variable.
+		 */
+		void variable(String name)
+		{
+			Integer index = variables.get(name);
+			if (index == null) variables.put(name , index = variables.size());
+			push(instruction(LOAD , index));
+		}
+		
+		/**
+		 * emits a binary operation of any operator; one that is not standard is applied through the plan's table.
+		 */
+		void operator(Operator operator)
+		{
+			if (operator.opcode != APPLY)
+			{
+				operation(operator.opcode);
+				return;
+			}
+			
+			int index = operators.indexOf(operator); // operators are compared by identity, and few
+			if (index < 0)
+			{
+				index = operators.size();
+				operators.add(operator);
+			}
+			assert depth >= 2 : "Internal error";
+			emit(instruction(APPLY , index));
+			depth--;
+		}
+		
+		/**
+		 * emits a binary operation of a standard operator, given by its opcode.
+		 */
+		void operation(int opcode)
+		{
+			assert depth >= 2 : "Internal error";
+			emit(instruction(opcode , 0));
+			depth--;
+		}
+		
+		/**
+		 * emits a jump of the given opcode, whose target is set by land(int) once known.
+		 * the code that follows a jump is reached with one value fewer than before it: JUMP_IF_FALSE, AND_THEN
+		 * and OR_ELSE pop the value they test where they do not jump, and after a JUMP comes the other branch of
+		 * a conditional, which starts without the value of the first.
+		 *
+		 * @return the index of the jump.
+		 */
+		int jump(int opcode)
+		{
+			assert depth >= 1 : "Internal error";
+			emit(instruction(opcode , 0));
+			depth--;
+			return codeLength - 1;
+		}
+		
+		/**
+		 * sets the target of a jump emitted by jump(int) to the next instruction.
+		 */
+		void land(int jump)
+		{
+			code[jump] = instruction(opcode(code[jump]) , codeLength);
+			furthestTarget = Math.max(furthestTarget , codeLength);
+		}
+		
+		/**
+		 * emits TRUTH, which turns the value on top into 1 or 0.
+		 */
+		void truth()
+		{
+			assert depth >= 1 : "Internal error";
+			emit(instruction(TRUTH , 0));
+		}
+		
+		/**
+		 * makes the last two operands, the second starting at instruction $rightStart, the operands of && or ||,
+		 * given by AND_THEN or OR_ELSE; for postfix, where the jump only comes to be known after its operands.
+		 * the jump is inserted before the right operand on building, see defer.
+		 */
+		void logical(int opcode , int rightStart)
+		{
+			assert depth >= 2 : "Internal error";
+			emit(instruction(TRUTH , 0));
+			defer(rightStart , opcode , codeLength , false);
+			depth--;
+		}
+		
+		/**
+		 * makes the last three operands, the second and third starting at instructions $thenStart and $elseStart,
+		 * a conditional; for postfix, where the jumps only come to be known after the operands.
+		 * the jumps are inserted before the second and third operands on building, see defer.
+		 */
+		void conditional(int thenStart , int elseStart)
+		{
+			assert depth >= 3 : "Internal error";
+			defer(thenStart , JUMP_IF_FALSE , elseStart , true); // to the third operand itself, past the JUMP before it
+			defer(elseStart , JUMP , codeLength , false);
+			depth -= 2;
+		}
+		
+		/**
+		 * keeps a jump aside, to be inserted before the instruction at $position once all are known, by insertJumps.
+		 * positions and targets are indices among the instructions emitted, without the jumps kept aside; a jump
+		 * lands on the jumps inserted before its $target, if any, unless $past them.
+		 * inserting every jump at once, rather than each as soon as known, keeps the building of a plan linear
+		 * however many operands are skipped over.
+		 */
+		private void defer(int position , int opcode , int target , boolean past)
+		{
+			assert groupCount == 0 : "Internal error"; // only used for postfix, which has no groups
+			if (deferredCount == deferredPositions.length)
+			{
+				deferredPositions = Arrays.copyOf(deferredPositions , deferredCount * 2);
+				deferredJumps = Arrays.copyOf(deferredJumps , deferredCount * 2);
+				deferredTargets = Arrays.copyOf(deferredTargets , deferredCount * 2);
+			}
+			deferredPositions[deferredCount] = position;
+			deferredJumps[deferredCount] = opcode;
+			deferredTargets[deferredCount++] = past ? -1 - target : target;
+		}
+		
+		/**
+		 * inserts the jumps kept aside by defer into the code, in one pass, and moves the targets of all jumps along.
+		 * of the jumps inserted before the same instruction, the last deferred comes first.
+		 */
+		private void insertJumps()
+		{
+			// before[i]: the number of jumps inserted before the instruction at i, i.e. at positions up to i - 1
+			int[] before = new int[codeLength + 2];
+			for (int j = 0 ; j < deferredCount ; j++) before[deferredPositions[j] + 1]++;
+			for (int i = 1 ; i < before.length ; i++) before[i] += before[i - 1];
+			
+			int[] inserted = new int[codeLength + deferredCount];
+			for (int pc = 0 ; pc < codeLength ; pc++)
+			{
+				int instruction = code[pc];
+				if (isJump(instruction))
+				{
+					int target = argument(instruction) + before[argument(instruction)];
+					instruction = instruction(opcode(instruction) , target);
+					furthestTarget = Math.max(furthestTarget , target);
+				}
+				inserted[pc + before[pc + 1]] = instruction;
+			}
+			
+			int[] next = new int[codeLength + 1]; // the number of jumps placed so far before each instruction
+			for (int j = deferredCount - 1 ; j >= 0 ; j--)
+			{
+				int position = deferredPositions[j];
+				int target = deferredTargets[j];
+				target = target >= 0 ? target + before[target] : -1 - target + before[-target];
+				furthestTarget = Math.max(furthestTarget , target);
+				inserted[position + before[position] + next[position]++] = instruction(deferredJumps[j] , target);
+			}
+			
+			code = inserted;
+			codeLength = inserted.length;
+			deferredCount = 0;
+		}
+		
+		/**
+		 * whether an argument of the instructions emitted is beyond MAX_ARGUMENT, and so has overflowed:
+		 * the target of a jump, or the index of a constant, variable, operator or temporary.
+		 * such a builder cannot build. called once everything is emitted, as it inserts the jumps kept aside first,
+		 * whose targets are only known then.
+		 */
+		boolean isTooLong()
+		{
+			if (deferredCount > 0) insertJumps();
+			// the indices run up to the count - 1
+			return furthestTarget > MAX_ARGUMENT || constantCount > MAX_ARGUMENT + 1
+					|| variables.size() > MAX_ARGUMENT + 1 || operators.size() > MAX_ARGUMENT + 1
+					|| temps > MAX_ARGUMENT + 1;
+		}
+		
+		/**
+		 * reports that an expression is too long for a plan.
+		 *
+		 * @return null, for the caller to give up with.
+		 */
+		static CompiledExpression tooLong(ErrorReport report)
+		{
+			return ErrorReport.fail(report , ErrorCode.TOO_LONG , -1 , "Expression too long: a jump beyond instruction "
+					+ MAX_ARGUMENT + ", or more than " + (MAX_ARGUMENT + 1) + " numerals, variables or temporaries");
+		}
+		
+		/**
+		 * the number of instructions emitted so far, i.e. the index of the next one;
+		 * the jumps kept aside by defer are not counted until built.
+		 */
+		int length()
+		{
+			return codeLength;
+		}
+		
+		/**
+		 * emits a copy of the value on top of the stack into a new temporary.
+		 *
+		 * @return the index of the temporary.
+		 */
+		int store()
+		{
+			assert depth >= 1 : "Internal error";
+			emit(instruction(STORE , temps));
+			return temps++;
+		}
+		
+		void loadTemp(int temp)
+		{
+			push(instruction(LOAD_TEMP , temp));
+		}
+		
+		int depth()
+		{
+			return depth;
+		}
+		
+		/**
+		 * marks the start of a bracketed subexpression at the next instruction.
+		 *
+		 * @return the group, to be closed once the subexpression is complete.
+		 */
+		int openGroup()
+		{
+			if (groupCount == groupStarts.length)
+			{
+				groupStarts = Arrays.copyOf(groupStarts , groupCount * 2);
+				groupEnds = Arrays.copyOf(groupEnds , groupCount * 2);
+			}
+			groupStarts[groupCount] = codeLength;
+			groupEnds[groupCount] = -1;
+			return groupCount++;
+		}
+		
+		/**
+		 * marks the end of a bracketed subexpression after the last instruction emitted.
+		 */
+		void closeGroup(int group)
+		{
+			groupEnds[group] = codeLength;
+		}
+		
+		CompiledExpression build()
+		{
+			return build(null , 0 , null);
+		}
+		
+		/**
+		 * builds a plan that is only valid for the given scale and rounding mode, and falls back to $fallback otherwise.
+		 */
+		CompiledExpression build(CompiledExpression fallback , int boundScale , RoundingMode boundRoundingMode)
+		{
+			assert depth == 1 : "Internal error";
+			if (isTooLong()) return tooLong(null); // and the jumps kept aside are inserted
+			String[] names = new String[variables.size()];
+			variables.forEach((name , index) -> names[index] = name);
+			
+			// groups are opened in order of start, so those of the same range are adjacent
+			int[] starts = new int[groupCount];
+			int[] ends = new int[groupCount];
+			int groups = 0;
+			for (int g = 0 ; g < groupCount ; g++)
+			{
+				if (groupEnds[g] - groupStarts[g] <= 1) continue; // a lone operand, nothing to share
+				if (groups > 0 && starts[groups - 1] == groupStarts[g] && ends[groups - 1] == groupEnds[g]) continue;
+				starts[groups] = groupStarts[g];
+				ends[groups++] = groupEnds[g];
+			}
+			
+			return new CompiledExpression(Arrays.copyOf(code , codeLength) , Arrays.copyOf(constants , constantCount) ,
+					Arrays.copyOf(integers , constantCount) , Arrays.copyOf(scales , constantCount) , names ,
+					operators.toArray(new Operator[0]) ,
+					maxDepth , temps ,
+					Arrays.copyOf(starts , groups) , Arrays.copyOf(ends , groups) ,
+					fallback , boundScale , boundRoundingMode);
+		}
+		
+		private void push(int instruction)
+		{
+			emit(instruction);
+			depth++;
+			maxDepth = Math.max(maxDepth , depth);
+		}
+		
+		private void emit(int instruction)
+		{
+			if (codeLength == code.length) code = Arrays.copyOf(code , codeLength * 2);
+			code[codeLength++] = instruction;
+		}
+	}
+}
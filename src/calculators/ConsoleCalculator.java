@@ -1,23 +1,39 @@
 package calculators;
 
 import java.io.Console;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Path;
 
 /**
  * a console utility for evaluating arithmetic expressions.
+ * <p>
+ * run with "--batch &lt;input&gt; &lt;output&gt;" to evaluate a file of one expression per line instead,
+ * optionally followed by "--infix", "--scale &lt;num&gt;" and "--threads &lt;num&gt;".
+ * run with "--serve &lt;address&gt;" to serve the calculator over a socket instead, see CalculatorServer,
+ * optionally followed by "--infix" and "--scale &lt;num&gt;"; the address is e.g. "8080", "0.0.0.0:8080"
+ * or "unix:/tmp/calculator.sock".
  */
 public class ConsoleCalculator
 {
 	private static final String GREEN = "\u001B[32m";
+	private static final String RED_BG = "\u001B[41m";
 	private static final String RESET = "\u001B[0m";
 	
 	public static Console console = System.console();
 	public static int defaultScale = 4;
-	private static Calculator c = new PostfixCalculator(defaultScale);
+	
+	/**
+	 * warnings about expressions are printed in between the results.
+	 */
+	private static final CalculatorConfig config = CalculatorConfig.of(defaultScale)
+			.withDiagnostics(message -> System.out.println(RED_BG + "Warning:" + RESET + " " + message));
+	
+	private static Calculator c = new PostfixCalculator(config);
 	
 	private static void chmod(Class<? extends Calculator> mode) throws ReflectiveOperationException
 	{
-		c = mode.getConstructor(int.class).newInstance(defaultScale);
+		c = mode.getConstructor(CalculatorConfig.class).newInstance(config);
 		String currMode = mode.equals(InfixCalculator.class) ? "infix" : "postfix";
 		String nextMode = currMode.equals("infix") ? "postfix" : "infix";
 		
@@ -25,8 +41,96 @@ public class ConsoleCalculator
 		console.printf("Type \":%s\" to switch to %s mode%s\n\n" , nextMode , nextMode , RESET);
 	}
 	
-	public static void main(String[] args)
+	/**
+	 * evaluates a file in batch mode; see FileBatchEvaluator.
+	 */
+	private static void batch(String[] args) throws IOException
+	{
+		if (args.length < 3)
+		{
+			System.err.println("Usage: --batch <input> <output> [--infix] [--scale <num>] [--threads <num>]");
+			System.exit(2);
+		}
+		
+		boolean infix = false;
+		int scale = defaultScale;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 3 ; i < args.length ; i++)
+		{
+			switch (args[i])
+			{
+				case "--infix" -> infix = true;
+				case "--postfix" -> infix = false;
+				case "--scale" -> scale = Integer.parseInt(args[++i]);
+				case "--threads" -> threads = Integer.parseInt(args[++i]);
+				default -> {
+					System.err.println("Unrecognised option: " + args[i]);
+					System.exit(2);
+				}
+			}
+		}
+		
+		Calculator calculator = infix ? new InfixCalculator(scale) : new PostfixCalculator(scale);
+		FileBatchEvaluator evaluator = new FileBatchEvaluator(calculator , threads , FileBatchEvaluator.DEFAULT_WINDOW_SIZE);
+		long lines = evaluator.evaluate(Path.of(args[1]) , Path.of(args[2]));
+		System.err.printf("%d expression(s) evaluated\n" , lines);
+	}
+	
+	/**
+	 * serves the calculator until killed; see CalculatorServer.
+	 */
+	private static void serve(String[] args) throws IOException , InterruptedException
 	{
+		if (args.length < 2)
+		{
+			System.err.println("Usage: --serve <address> [--infix] [--scale <num>]");
+			System.exit(2);
+		}
+		
+		boolean infix = false;
+		int scale = defaultScale;
+		for (int i = 2 ; i < args.length ; i++)
+		{
+			switch (args[i])
+			{
+				case "--infix" -> infix = true;
+				case "--postfix" -> infix = false;
+				case "--scale" -> scale = Integer.parseInt(args[++i]);
+				default -> {
+					System.err.println("Unrecognised option: " + args[i]);
+					System.exit(2);
+				}
+			}
+		}
+		
+		Calculator calculator = infix ? new InfixCalculator(scale) : new PostfixCalculator(scale);
+		CalculatorServer server = CalculatorServer.start(CalculatorServer.address(args[1]) , calculator);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try
+			{
+				server.close();
+			} catch (IOException e)
+			{
+				// exiting anyway
+			}
+		}));
+		System.err.printf("Serving on %s\n" , server.address());
+		server.await();
+	}
+	
+	public static void main(String[] args) throws IOException , InterruptedException
+	{
+		if (args.length > 0 && args[0].equals("--batch"))
+		{
+			batch(args);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("--serve"))
+		{
+			serve(args);
+			return;
+		}
+		
 		if (console == null) System.exit(1);
 		
 		console.printf("Calculator initialised with default scale %d\n" , defaultScale);
@@ -60,7 +164,7 @@ public class ConsoleCalculator
 						
 						int newScale = Integer.parseInt(numSb.toString());
 						
-						c.setScale(newScale);
+						c = c.withScale(newScale);
 						// console.printf("New calculator initialised with capacity %d\n\n" , newScale);
 						console.printf("\n");
 					}
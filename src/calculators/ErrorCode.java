@@ -0,0 +1,87 @@
+package calculators;
+
+/**
+ * what went wrong with an expression, as reported by tryCompute and validate without throwing.
+ */
+public enum ErrorCode
+{
+	EMPTY_EXPRESSION ,
+	ILLEGAL_START ,
+	ILLEGAL_END ,
+	
+	/**
+	 * an operator or bracket where a numeral or variable is expected.
+	 */
+	EXPECTING_OPERAND ,
+	
+	/**
+	 * a numeral that is not in decimal or scientific notation, e.g. 1.2.3 or 1e, or whose exponent is out of range.
+	 */
+	MALFORMED_NUMERAL ,
+	
+	UNRECOGNISED_SYMBOL ,
+	EMPTY_BRACKETS ,
+	MISSING_LEFT_BRACKET ,
+	MISSING_RIGHT_BRACKET ,
+	
+	/**
+	 * a postfix operator with fewer than two operands before it.
+	 */
+	MISSING_OPERAND ,
+	
+	/**
+	 * postfix operands left over at the end.
+	 */
+	MISSING_OPERATOR ,
+	
+	/**
+	 * a ? without its :, or a : without its ?.
+	 */
+	INCOMPLETE_CONDITIONAL ,
+	
+	/**
+	 * an expression whose plan would jump further, or hold more constants, variables or temporaries, than the
+	 * arguments of its instructions can give, see CompiledExpression.MAX_ARGUMENT.
+	 */
+	TOO_LONG ,
+	
+	/**
+	 * any other syntax error.
+	 */
+	SYNTAX ,
+	
+	UNBOUND_VARIABLE ,
+	DIVISION_BY_ZERO ,
+	
+	/**
+	 * any other arithmetic failure, e.g. a scale out of the range of an int.
+	 */
+	ARITHMETIC ,
+	
+	/**
+	 * any other failure.
+	 */
+	OTHER;
+	
+	/**
+	 * whether the expression is malformed, rather than failing on evaluation.
+	 */
+	public boolean isSyntax()
+	{
+		return ordinal() <= SYNTAX.ordinal();
+	}
+	
+	/**
+	 * the exception that compute throws for this error.
+	 */
+	RuntimeException exception(int position , String message)
+	{
+		if (isSyntax()) return new IllegalArithmeticExpressionSyntaxException(this , position , message);
+		return switch (this)
+				{
+					case UNBOUND_VARIABLE -> new IllegalArgumentException(message);
+					case DIVISION_BY_ZERO , ARITHMETIC -> new ArithmeticException(message);
+					default -> new RuntimeException(message);
+				};
+	}
+}
@@ -0,0 +1,25 @@
+package calculators;
+
+/**
+ * where a parse or evaluation that must not throw keeps its error.
+ * the same code serves both ways: given no report, an error is thrown as usual.
+ */
+final class ErrorReport
+{
+	/**
+	 * the error met, or null if none.
+	 */
+	ExpressionError error;
+	
+	/**
+	 * reports an error: thrown as an exception if there is no report to keep it, and kept in the report otherwise.
+	 *
+	 * @return null, for the caller to give up with.
+	 */
+	static <T> T fail(ErrorReport report , ErrorCode code , int position , String message)
+	{
+		if (report == null) throw code.exception(position , message);
+		report.error = new ExpressionError(code , position , message);
+		return null;
+	}
+}
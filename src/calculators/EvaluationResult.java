@@ -0,0 +1,90 @@
+package calculators;
+
+import java.math.BigDecimal;
+
+/**
+ * the outcome of evaluating one expression: either the computed result, or the error that prevented it.
+ * an error reported without throwing, e.g. by tryCompute, is kept as a value; an exception is only made
+ * if asked for.
+ */
+public final class EvaluationResult
+{
+	private final BigDecimal value;
+	private final ExpressionError problem;
+	
+	/**
+	 * the exception caught, if the error was thrown; otherwise null.
+	 */
+	private final RuntimeException exception;
+	
+	private EvaluationResult(BigDecimal value , ExpressionError problem , RuntimeException exception)
+	{
+		this.value = value;
+		this.problem = problem;
+		this.exception = exception;
+	}
+	
+	public static EvaluationResult success(BigDecimal value)
+	{
+		if (value == null) throw new NullPointerException();
+		return new EvaluationResult(value , null , null);
+	}
+	
+	public static EvaluationResult failure(RuntimeException error)
+	{
+		if (error == null) throw new NullPointerException();
+		return new EvaluationResult(null , ExpressionError.of(error) , error);
+	}
+	
+	public static EvaluationResult failure(ExpressionError problem)
+	{
+		if (problem == null) throw new NullPointerException();
+		return new EvaluationResult(null , problem , null);
+	}
+	
+	public boolean isSuccess()
+	{
+		return problem == null;
+	}
+	
+	/**
+	 * the computed result, or null if the evaluation failed.
+	 */
+	public BigDecimal value()
+	{
+		return value;
+	}
+	
+	/**
+	 * the error that prevented the evaluation, with its code and position, or null if it succeeded.
+	 */
+	public ExpressionError problem()
+	{
+		return problem;
+	}
+	
+	/**
+	 * the error that prevented the evaluation as an exception, or null if it succeeded.
+	 * unless the error was thrown in the first place, a new exception is made on every call.
+	 */
+	public RuntimeException error()
+	{
+		if (problem == null) return null;
+		return exception != null ? exception : problem.toException();
+	}
+	
+	/**
+	 * the computed result; throws the error if the evaluation failed.
+	 */
+	public BigDecimal get()
+	{
+		if (problem != null) throw error();
+		return value;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return isSuccess() ? value.toString() : "error: " + problem.message();
+	}
+}
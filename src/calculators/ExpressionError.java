@@ -0,0 +1,43 @@
+package calculators;
+
+/**
+ * an error found in an expression, as a value rather than an exception.
+ *
+ * @param code     what went wrong.
+ * @param position offset in the expression where it went wrong, or -1 if it is not tied to one,
+ *                 e.g. a division by zero.
+ * @param message  the message of the exception compute would throw.
+ */
+public record ExpressionError(ErrorCode code , int position , String message)
+{
+	public ExpressionError
+	{
+		if (code == null || message == null) throw new NullPointerException();
+	}
+	
+	/**
+	 * the error an exception stands for.
+	 */
+	static ExpressionError of(RuntimeException e)
+	{
+		// the message may be omitted by the JVM for an implicit exception thrown repeatedly
+		String message = e.getMessage() != null ? e.getMessage() : e.toString();
+		if (e instanceof IllegalArithmeticExpressionSyntaxException syntax)
+			return new ExpressionError(syntax.code() , syntax.position() , message);
+		return new ExpressionError(e instanceof ArithmeticException ? ErrorCode.ARITHMETIC : ErrorCode.OTHER , -1 , message);
+	}
+	
+	/**
+	 * the exception compute throws for this error.
+	 */
+	public RuntimeException toException()
+	{
+		return code.exception(position , message);
+	}
+	
+	@Override
+	public String toString()
+	{
+		return code + (position >= 0 ? " at " + position : "") + ": " + message;
+	}
+}
@@ -0,0 +1,196 @@
+package calculators;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * evaluates a file of one expression per line, writing one result per line to another file.
+ * the input is memory-mapped a window at a time; each window is cut at newline boundaries into chunks,
+ * which are evaluated in parallel and then written out in order. memory use is therefore bounded
+ * by the window size, regardless of the size of the file.
+ * <p>
+ * a failed expression gives a line "error: " followed by the message, so that output lines always
+ * correspond to input lines. a trailing carriage return on a line is ignored.
+ */
+public class FileBatchEvaluator
+{
+	public static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+	
+	private final Calculator calculator;
+	private final int parallelism;
+	private final int windowSize;
+	
+	/**
+	 * initialise a file evaluator with as many workers as processors, and the default window size.
+	 */
+	public FileBatchEvaluator(Calculator calculator)
+	{
+		this(calculator , Runtime.getRuntime().availableProcessors() , DEFAULT_WINDOW_SIZE);
+	}
+	
+	/**
+	 * @param parallelism number of worker threads.
+	 * @param windowSize  number of bytes mapped at a time; grown temporarily for a line that is longer.
+	 */
+	public FileBatchEvaluator(Calculator calculator , int parallelism , int windowSize)
+	{
+		if (calculator == null) throw new NullPointerException();
+		if (parallelism <= 0) throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+		if (windowSize <= 0) throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+		this.calculator = calculator;
+		this.parallelism = parallelism;
+		this.windowSize = windowSize;
+	}
+	
+	/**
+	 * evaluates every line of $input, writing the results to $output, which is created or truncated.
+	 *
+	 * @return number of lines evaluated.
+	 */
+	public long evaluate(Path input , Path output) throws IOException
+	{
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try (FileChannel in = FileChannel.open(input , StandardOpenOption.READ);
+		     FileChannel out = FileChannel.open(output , StandardOpenOption.WRITE ,
+				     StandardOpenOption.CREATE , StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			long size = in.size();
+			long lines = 0;
+			
+			for (long position = 0 ; position < size ; )
+			{
+				// map a window that ends with a complete line, growing it for an overlong line
+				long length = Math.min(windowSize , size - position);
+				MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY , position , length);
+				int end = lastLineEnd(window , (int)length , position + length == size);
+				while (end < 0)
+				{
+					length = Math.min(Math.min(length * 2 , Integer.MAX_VALUE) , size - position);
+					if (length == Integer.MAX_VALUE) throw new IOException("Line too long at byte " + position);
+					window = in.map(FileChannel.MapMode.READ_ONLY , position , length);
+					end = lastLineEnd(window , (int)length , position + length == size);
+				}
+				
+				lines += evaluateWindow(window , end , pool , out);
+				position += end;
+			}
+			return lines;
+		} finally
+		{
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * finds where the last complete line in the window ends.
+	 *
+	 * @param last whether the window reaches the end of file, where a line may end without a newline.
+	 * @return the offset after the last newline, or -1 if there is none.
+	 */
+	private static int lastLineEnd(ByteBuffer window , int length , boolean last)
+	{
+		if (last) return length;
+		for (int i = length - 1 ; i >= 0 ; i--) if (window.get(i) == '\n') return i + 1;
+		return -1;
+	}
+	
+	/**
+	 * evaluates the lines in [0, end) of the window in parallel chunks, writing the results in order.
+	 *
+	 * @return number of lines evaluated.
+	 */
+	private long evaluateWindow(ByteBuffer window , int end , ForkJoinPool pool , FileChannel out)
+			throws IOException
+	{
+		// cut into a few chunks per worker, each ending right after a newline
+		int chunkCount = parallelism * 4;
+		int[] bounds = new int[chunkCount + 1];
+		int chunks = 0;
+		for (int from = 0 ; from < end ; chunks++)
+		{
+			int to = Math.min(from + (end + chunkCount - 1) / chunkCount , end);
+			while (to < end && window.get(to - 1) != '\n') to++;
+			bounds[chunks + 1] = to;
+			from = to;
+		}
+		
+		List<ForkJoinTask<Output>> tasks = new ArrayList<>(chunks);
+		for (int i = 0 ; i < chunks ; i++)
+		{
+			ByteBuffer chunk = window.slice(bounds[i] , bounds[i + 1] - bounds[i]);
+			tasks.add(pool.submit(() -> evaluateChunk(chunk)));
+		}
+		
+		long lines = 0;
+		for (ForkJoinTask<Output> task : tasks)
+		{
+			Output output = task.join();
+			ByteBuffer buffer = ByteBuffer.wrap(output.bytes , 0 , output.length);
+			while (buffer.hasRemaining()) out.write(buffer);
+			lines += output.lines;
+		}
+		return lines;
+	}
+	
+	/**
+	 * evaluates every line of a chunk sequentially.
+	 */
+	private Output evaluateChunk(ByteBuffer chunk)
+	{
+		Output output = new Output(chunk.limit());
+		byte[] line = new byte[128];
+		
+		for (int from = 0 ; from < chunk.limit() ; )
+		{
+			int to = from;
+			while (to < chunk.limit() && chunk.get(to) != '\n') to++;
+			int next = to + 1;
+			if (to > from && chunk.get(to - 1) == '\r') to--;
+			
+			if (line.length < to - from) line = new byte[Math.max(to - from , line.length * 2)];
+			chunk.get(from , line , 0 , to - from);
+			String expression = new String(line , 0 , to - from , UTF_8);
+			
+			output.appendLine(calculator.tryCompute(expression).toString());
+			from = next;
+		}
+		return output;
+	}
+	
+	/**
+	 * the encoded result lines of one chunk.
+	 */
+	private static final class Output
+	{
+		byte[] bytes;
+		int length = 0;
+		long lines = 0;
+		
+		Output(int initialCapacity)
+		{
+			bytes = new byte[Math.max(initialCapacity , 16)];
+		}
+		
+		void appendLine(String line)
+		{
+			byte[] encoded = line.getBytes(UTF_8);
+			if (length + encoded.length + 1 > bytes.length)
+				bytes = Arrays.copyOf(bytes , Math.max(bytes.length * 2 , length + encoded.length + 1));
+			System.arraycopy(encoded , 0 , bytes , length , encoded.length);
+			length += encoded.length;
+			bytes[length++] = '\n';
+			lines++;
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package calculators;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * decimal arithmetic on a value held as an unscaled long and a scale, i.e. unscaled * 10^-scale,
+ * the way BigDecimal holds a value of up to 18 digits without a BigInteger.
+ * every method gives exactly the unscaled value BigDecimal would, or OVERFLOW where that does not fit in a long,
+ * so that the caller can redo the operation in BigDecimal. nothing is thrown, as an evaluation that keeps
+ * overflowing would otherwise pay for an exception, and a deoptimisation of the intrinsic Math.*Exact, every time.
+ * <p>
+ * OVERFLOW is Long.MIN_VALUE, which has 19 digits, so it is never an operand, and a result of exactly that
+ * is simply taken as an overflow.
+ */
+final class FixedPoint
+{
+	private FixedPoint() {}
+	
+	static final long OVERFLOW = Long.MIN_VALUE;
+	
+	/**
+	 * 10^i for every i whose power fits in a long.
+	 */
+	private static final long[] POWERS_OF_TEN = new long[19];
+	
+	static
+	{
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1 ; i < POWERS_OF_TEN.length ; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+	}
+	
+	/**
+	 * $unscaled * 10^$digits, for $digits &gt;= 0.
+	 */
+	static long scaleUp(long unscaled , long digits)
+	{
+		if (digits == 0) return unscaled;
+		if (digits >= POWERS_OF_TEN.length) return unscaled == 0 ? 0 : OVERFLOW;
+		return multiply(unscaled , POWERS_OF_TEN[(int)digits]);
+	}
+	
+	/**
+	 * the unscaled value of the sum of two values, whose scale is the greater of theirs.
+	 */
+	static long add(long unscaled1 , int scale1 , long unscaled2 , int scale2)
+	{
+		if (scale1 != scale2)
+		{
+			if (scale1 < scale2) unscaled1 = scaleUp(unscaled1 , (long)scale2 - scale1);
+			else unscaled2 = scaleUp(unscaled2 , (long)scale1 - scale2);
+			if (unscaled1 == OVERFLOW || unscaled2 == OVERFLOW) return OVERFLOW;
+		}
+		long sum = unscaled1 + unscaled2;
+		return ((unscaled1 ^ sum) & (unscaled2 ^ sum)) < 0 ? OVERFLOW : sum; // both operands differ in sign from the sum
+	}
+	
+	/**
+	 * the unscaled value of the difference of two values, whose scale is the greater of theirs.
+	 */
+	static long subtract(long unscaled1 , int scale1 , long unscaled2 , int scale2)
+	{
+		if (scale1 != scale2)
+		{
+			if (scale1 < scale2) unscaled1 = scaleUp(unscaled1 , (long)scale2 - scale1);
+			else unscaled2 = scaleUp(unscaled2 , (long)scale1 - scale2);
+			if (unscaled1 == OVERFLOW || unscaled2 == OVERFLOW) return OVERFLOW;
+		}
+		long difference = unscaled1 - unscaled2;
+		return ((unscaled1 ^ unscaled2) & (unscaled1 ^ difference)) < 0 ? OVERFLOW : difference;
+	}
+	
+	/**
+	 * the unscaled value of a product, whose scale is the sum of the scales, see productScale.
+	 */
+	static long multiply(long unscaled1 , long unscaled2)
+	{
+		long high = Math.multiplyHigh(unscaled1 , unscaled2);
+		long low = unscaled1 * unscaled2;
+		return high == (low >> 63) ? low : OVERFLOW;
+	}
+	
+	/**
+	 * the unscaled value of $unscaled to the power of $exponent &gt;= 0, by squaring;
+	 * its scale is $exponent times that of the base.
+	 */
+	static long power(long unscaled , long exponent)
+	{
+		long res = 1;
+		long square = unscaled;
+		while (true)
+		{
+			if ((exponent & 1) != 0 && (res = multiply(res , square)) == OVERFLOW) return OVERFLOW;
+			exponent >>>= 1;
+			if (exponent == 0) return res;
+			// the square is needed for a remaining bit, so if it overflows, so would the power
+			if ((square = multiply(square , square)) == OVERFLOW) return OVERFLOW;
+		}
+	}
+	
+	/**
+	 * the scale of a power of a value of $scale, or NOT_FIXED if the power is not to be computed by power(long, long):
+	 * the exponent, $exponent * 10^-$exponentScale, is not an integer from 0 to Operator.MAX_EXPONENT,
+	 * or the scale is out of the range of int.
+	 */
+	static int powerScale(int scale , long exponent , int exponentScale)
+	{
+		// only a non-negative integer exponent gives an exact power
+		if (exponentScale != 0 || exponent < 0 || exponent > Operator.MAX_EXPONENT) return CompiledExpression.NOT_FIXED;
+		long powerScale = scale * exponent;
+		return powerScale == (int)powerScale ? (int)powerScale : CompiledExpression.NOT_FIXED;
+	}
+	
+	/**
+	 * the unscaled value of $value as a long, or OVERFLOW if it has more digits than fit or a scale of NOT_FIXED.
+	 */
+	static long unscaled(BigDecimal value)
+	{
+		if (value.precision() > Lexer.MAX_LONG_DIGITS || value.scale() == CompiledExpression.NOT_FIXED) return OVERFLOW;
+		return value.scale() == 0 ? value.longValueExact() : value.unscaledValue().longValue();
+	}
+	
+	/**
+	 * the scale of a product, or NOT_FIXED if it is out of the range of int, where BigDecimal fails.
+	 */
+	static int productScale(int scale1 , int scale2)
+	{
+		long scale = (long)scale1 + scale2;
+		return scale == (int)scale && scale != CompiledExpression.NOT_FIXED ? (int)scale : CompiledExpression.NOT_FIXED;
+	}
+	
+	/**
+	 * compares two values, as by BigDecimal.compareTo.
+	 */
+	static int compare(long unscaled1 , int scale1 , long unscaled2 , int scale2)
+	{
+		// a value scaled up beyond a long is greater in magnitude than any other long, so its sign decides
+		if (scale1 < scale2)
+		{
+			long scaled = scaleUp(unscaled1 , (long)scale2 - scale1);
+			if (scaled == OVERFLOW) return Long.signum(unscaled1);
+			unscaled1 = scaled;
+		}
+		else if (scale1 > scale2)
+		{
+			long scaled = scaleUp(unscaled2 , (long)scale1 - scale2);
+			if (scaled == OVERFLOW) return -Long.signum(unscaled2);
+			unscaled2 = scaled;
+		}
+		return Long.compare(unscaled1 , unscaled2);
+	}
+	
+	/**
+	 * the unscaled value of the quotient of two values at $scale, as by BigDecimal.divide(BigDecimal, int, RoundingMode).
+	 * a division by zero, or one that needs rounding under RoundingMode.UNNECESSARY, also gives OVERFLOW,
+	 * and is left for BigDecimal to report.
+	 */
+	static long divide(long unscaled1 , int scale1 , long unscaled2 , int scale2 , int scale , RoundingMode roundingMode)
+	{
+		// unscaled1 * 10^-scale1 / (unscaled2 * 10^-scale2) = (unscaled1 * 10^shift / unscaled2) * 10^-scale
+		long shift = (long)scale - scale1 + scale2;
+		long dividend = shift >= 0 ? scaleUp(unscaled1 , shift) : unscaled1;
+		long divisor = shift >= 0 ? unscaled2 : scaleUp(unscaled2 , -shift);
+		if (dividend == OVERFLOW || divisor == OVERFLOW || divisor == 0) return OVERFLOW;
+		
+		long quotient = dividend / divisor;
+		long remainder = dividend % divisor;
+		if (remainder == 0) return quotient;
+		if (roundingMode == RoundingMode.UNNECESSARY) return OVERFLOW;
+		
+		// the exact quotient lies strictly between $quotient and the next integer away from zero
+		int sign = (dividend < 0) == (divisor < 0) ? 1 : -1;
+		long absRemainder = Math.abs(remainder);
+		int half = Long.compare(absRemainder , Math.abs(divisor) - absRemainder); // the fraction against 1/2
+		boolean away = switch (roundingMode)
+				{
+					case UP -> true;
+					case DOWN -> false;
+					case CEILING -> sign > 0;
+					case FLOOR -> sign < 0;
+					case HALF_UP -> half >= 0;
+					case HALF_DOWN -> half > 0;
+					case HALF_EVEN -> half > 0 || half == 0 && (quotient & 1) != 0;
+					case UNNECESSARY -> throw new AssertionError();
+				};
+		return away ? quotient + sign : quotient;
+	}
+}
@@ -5,8 +5,33 @@ package calculators;
  */
 public class IllegalArithmeticExpressionSyntaxException extends IllegalArgumentException
 {
+	private static final long serialVersionUID = 1L;
+	
+	private final ErrorCode code;
+	private final int position;
+	
 	public IllegalArithmeticExpressionSyntaxException(String message)
+	{
+		this(ErrorCode.SYNTAX , -1 , message);
+	}
+	
+	public IllegalArithmeticExpressionSyntaxException(ErrorCode code , int position , String message)
 	{
 		super(message);
+		this.code = code;
+		this.position = position;
+	}
+	
+	public ErrorCode code()
+	{
+		return code;
+	}
+	
+	/**
+	 * offset in the expression where it went wrong, or -1 if not known.
+	 */
+	public int position()
+	{
+		return position;
 	}
-}
\ No newline at end of file
+}
@@ -4,46 +4,40 @@ import static java.lang.Character.isDigit;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.function.BinaryOperator;
 
-import stacks.ArrayStack;
+import stacks.CharArrayStack;
+import stacks.IntArrayStack;
 
+/**
+ * evaluates infix expressions.
+ * holds no state other than its immutable configuration and, if tiered, a cache of plans,
+ * so it can be shared among threads.
+ */
 public class InfixCalculator implements Calculator
 {
 	/**
-	 * rounding mode for division operation.
+	 * the scale, rounding mode and operators in effect.
 	 */
-	public RoundingMode divisionRoundingMode = RoundingMode.HALF_UP;
+	private final CalculatorConfig config;
 	
 	/**
-	 * the scale (i.e. number of d.p.) when representing a decimal numeral.
-	 * protected with setter to avoid being negative.
-	 * by default 4.
+	 * under tiering, the plans of the expressions computed lately, by their text, so that an expression computed
+	 * again and again as text rather than compiled once still counts its evaluations, and is compiled once hot;
+	 * null if not tiered. only plans that would be compiled are kept, and those are short.
+	 * an expression whose plan is found here is not parsed again, so a warning about it is only given once.
 	 */
-	private int scale = 4;
+	private final PlanCache tieredPlans;
 	
 	/**
-	 * an unmodifiable map of character of binary operator to corresponding binary BigDecimal function.
+	 * initialise an infix calculator with specified configuration.
 	 */
-	public final Map<Character, BinaryOperator<BigDecimal>> operations = Map.of(
-			'+' , BigDecimal::add ,
-			'-' , BigDecimal::subtract ,
-			'*' , BigDecimal::multiply ,
-			'/' , (num1 , num2) -> num1.divide(num2 , this.scale , this.divisionRoundingMode)
-			// '^' , (num1 , num2) -> {
-			// 	if (!num2.toPlainString().matches("\\d+(\\.0*)?")) throw new IllegalArgumentException("For now, the exponent can only be a positive integer");
-			// 	return num1.pow(num2.intValue());
-			// }
-	);
-	
-	/**
-	 * a set of recognised operators, basically `operations.keySet()`.
-	 * to be initialised in constructor as that's where $operations is initialised.
-	 */
-	public final Set<Character> operators = operations.keySet();
+	public InfixCalculator(CalculatorConfig config)
+	{
+		if (config == null) throw new NullPointerException();
+		this.config = config;
+		this.tieredPlans = config.tiered() ? new PlanCache(PlanCompiler.CACHED_PLANS) : null;
+	}
 	
 	/**
 	 * initialise an infix calculator with specified scale.
@@ -53,7 +47,7 @@ public class InfixCalculator implements Calculator
 	@SuppressWarnings("unused")
 	public InfixCalculator(int scale)
 	{
-		this.scale = scale;
+		this(CalculatorConfig.of(scale));
 	}
 	
 	/**
@@ -65,278 +59,502 @@ public class InfixCalculator implements Calculator
 	@SuppressWarnings("unused")
 	public InfixCalculator(int scale , RoundingMode roundingMode)
 	{
-		this.scale = scale;
-		this.divisionRoundingMode = roundingMode;
+		this(CalculatorConfig.of(scale).withRoundingMode(roundingMode));
 	}
 	
 	/**
 	 * initialise infix calculator with scale 4.
 	 */
 	@SuppressWarnings("unused")
-	public InfixCalculator() {}
+	public InfixCalculator()
+	{
+		this(CalculatorConfig.DEFAULT);
+	}
 	
 	/**
 	 * performs a primary syntax check around the expression
-	 * returns nothing but throws exceptions for any abnormalities
+	 * returns whether it passed; any abnormality is reported to $report, or thrown if none given
 	 */
-	private void primaryCheck(String expression)
+	private boolean primaryCheck(String expression , ErrorReport report)
 	{
 		if (expression == null) throw new NullPointerException();
 		
-		expression = expression.trim();
-		if (expression.length() == 0) throw new IllegalArithmeticExpressionSyntaxException("Empty expression");
-		
-		// allowed first char: <num> . - + (
-		// allowed last char: <num> . = )
-		List<Character> permittedStart = List.of('.' , '-' , '+' , '(');
-		List<Character> permittedEnd = List.of('.' , '=' , ')');
+		// same bounds as trim(), without copying
+		int start = 0;
+		int end = expression.length();
+		while (start < end && expression.charAt(start) <= ' ') start++;
+		while (start < end && expression.charAt(end - 1) <= ' ') end--;
+		if (start == end)
+		{
+			ErrorReport.fail(report , ErrorCode.EMPTY_EXPRESSION , start , "Empty expression");
+			return false;
+		}
 		
-		char firstChar = expression.charAt(0);
-		char lastChar = expression.charAt(expression.length() - 1);
+		// allowed first char: <num> . - + ( <variable>
+		// allowed last char: <num> . = ) <variable>
+		char firstChar = expression.charAt(start);
+		char lastChar = expression.charAt(end - 1);
 		
-		if (!(isDigit(firstChar) || permittedStart.contains(firstChar)))
-			throw new IllegalArithmeticExpressionSyntaxException("Illegal start of expression: '" + firstChar + "'");
+		if (!(isDigit(firstChar) || firstChar == '.' || firstChar == '-' || firstChar == '+' || firstChar == '('
+				|| Lexer.isIdentifierStart(firstChar)))
+		{
+			ErrorReport.fail(report , ErrorCode.ILLEGAL_START , start ,
+					"Illegal start of expression: '" + firstChar + "'");
+			return false;
+		}
 		
-		if (!(isDigit(lastChar) || permittedEnd.contains(lastChar)))
-			throw new IllegalArithmeticExpressionSyntaxException("Illegal ending of expression: '" + lastChar + "'");
+		if (!(isDigit(lastChar) || lastChar == '.' || lastChar == '=' || lastChar == ')'
+				|| Lexer.isIdentifierPart(lastChar)))
+		{
+			ErrorReport.fail(report , ErrorCode.ILLEGAL_END , end - 1 ,
+					"Illegal ending of expression: '" + lastChar + "'");
+			return false;
+		}
+		return true;
+	}
+	
+	public CalculatorConfig config()
+	{
+		return config;
 	}
 	
 	/**
-	 * getter for $scale.
+	 * a copy of this calculator with another configuration; this one is left unchanged.
 	 */
-	public int scale()
+	public InfixCalculator withConfig(CalculatorConfig newConfig)
+	{
+		return newConfig.equals(config) ? this : new InfixCalculator(newConfig);
+	}
+	
+	@Override
+	public InfixCalculator withScale(int newScale)
 	{
-		return scale;
+		return withConfig(config.withScale(newScale));
 	}
 	
 	/**
-	 * setter for $scale that prohibits negative input.
+	 * scientifically evaluates a given expression.
+	 * accepts numerals in decimal and scientific notation.
+	 * measured in the metrics of the configuration, if any, and reported as a SlowEvaluationEvent if enabled.
+	 *
+	 * @return the computed result as BigDecimal.
+	 * @throws IllegalArgumentException if the expression refers to a variable.
 	 */
-	public void setScale(int scale)
+	public /*strictfp*/ BigDecimal compute(String expression)
 	{
-		if (scale < 0) throw new IllegalArithmeticExpressionSyntaxException("Scale cannot be negative: " + scale);
-		this.scale = scale;
+		SlowEvaluationEvent event = new SlowEvaluationEvent();
+		if (config.metrics() == null && !event.isEnabled()) return compute(compile(expression));
+		return CalculatorMetrics.measure(config.metrics() , event , this , expression , this::prepare , this::evaluate ,
+				null);
 	}
 	
 	/**
-	 * designed to be returning a **RELATIVE** priority comparing to the other operators.
-	 * should only be used to compare priorities of two operators, NOT an absolute priority rank.
+	 * evaluates a given expression as compute(String) does, split into runs of terms evaluated in parallel
+	 * on the common ForkJoinPool if it is long enough; use a ParallelEvaluator to configure parallelism and threshold.
 	 *
-	 * @param operator the operator to have relative priority checked
-	 * @return relative priority in int among other operators
-	 * TODO: use Comparator<Character>?
+	 * @return the computed result, exactly as compute(String) gives.
 	 */
-	private int priorityOf(char operator)
+	public BigDecimal computeParallel(String expression)
 	{
-		// maybe use properties file at some time?
-		// need to make sure all operators in this.operators are included
-		if (!this.operators.contains(operator))
-			throw new IllegalArgumentException(operator + " is not a recognised operator among " + this.operators);
-		
-		return switch (operator)
-				{
-					case '+' , '-' -> 0;
-					case '*' , '/' -> 1;
-					default -> throw new IllegalStateException(
-							"Internal error: priority of operator '" + operator + "' is not specified in method $priorityOf");
-				};
+		return new ParallelEvaluator(this).compute(expression);
 	}
 	
 	/**
-	 * performs a calculation given two operands and an operator.
+	 * evaluates a given expression with its variables bound to the given values.
+	 *
+	 * @return the computed result as BigDecimal.
+	 * @throws IllegalArgumentException if a variable is not bound.
 	 */
-	private BigDecimal calc(BigDecimal num1 , char operator , BigDecimal num2)
+	public BigDecimal compute(String expression , Map<String , BigDecimal> bindings)
 	{
-		if (!operators.contains(operator))
-			throw new IllegalArgumentException(operator + " is not a recognised operator among " + this.operators);
-		
-		return operations.get(operator).apply(num1 , num2);
+		return compute(compile(expression) , bindings);
 	}
 	
 	/**
-	 * identifies if a character is an operator by checking if it is in $operators.
+	 * evaluates a compiled expression with the scale and rounding mode of this calculator.
+	 *
+	 * @return the computed result as BigDecimal.
 	 */
-	private boolean isOperator(char c)
+	public BigDecimal compute(CompiledExpression plan)
 	{
-		return operators.contains(c);
+		return plan.evaluate(config.scale() , config.roundingMode());
 	}
 	
 	/**
-	 * scientifically evaluates a given expression.
-	 * accepts numerals in decimal and scientific notation.
+	 * evaluates a compiled expression with its variables bound to the given values,
+	 * with the scale and rounding mode of this calculator.
 	 *
 	 * @return the computed result as BigDecimal.
 	 */
-	public /*strictfp*/ BigDecimal compute(String expression)
+	public BigDecimal compute(CompiledExpression plan , Map<String , BigDecimal> bindings)
+	{
+		return plan.evaluate(bindings , config.scale() , config.roundingMode());
+	}
+	
+	/**
+	 * evaluates a given expression without throwing for a malformed expression or a division by zero:
+	 * the error is given as a value instead, with its code and position, at about the cost of a parse.
+	 * a warning, such as for text after a terminating =, goes to the diagnostics of the configuration.
+	 * the plan is prepared and measured as by compute(String), a failure being counted as an error.
+	 *
+	 * @return the computed result, or the error that prevented it.
+	 */
+	public EvaluationResult tryCompute(String expression)
+	{
+		return tryCompute(expression , this::tryEvaluate);
+	}
+	
+	/**
+	 * evaluates a given expression as tryCompute(String) does, taking the results of bracketed subexpressions
+	 * from $memo where there, and putting them there otherwise; see SubexpressionMemo.
+	 */
+	EvaluationResult tryCompute(String expression , SubexpressionMemo memo)
+	{
+		return tryCompute(expression , (plan , metrics , report) -> {
+			try
+			{
+				return memo.evaluate(plan , config.scale() , config.roundingMode());
+			} catch (RuntimeException e)
+			{
+				return tryEvaluate(plan , metrics , report); // fails again, with the error tryCompute(String) gives
+			}
+		});
+	}
+	
+	private EvaluationResult tryCompute(String expression , CalculatorMetrics.Evaluation evaluation)
+	{
+		ErrorReport report = new ErrorReport();
+		SlowEvaluationEvent event = new SlowEvaluationEvent();
+		BigDecimal res;
+		if (config.metrics() == null && !event.isEnabled())
+		{
+			CompiledExpression plan = prepare(expression , report);
+			res = plan == null ? null : evaluation.evaluate(plan , null , report);
+		}
+		else res = CalculatorMetrics.measure(config.metrics() , event , this , expression , this::prepare , evaluation ,
+				report);
+		return res != null ? EvaluationResult.success(res) : EvaluationResult.failure(report.error);
+	}
+	
+	private BigDecimal evaluate(CompiledExpression plan , CalculatorMetrics metrics , ErrorReport report)
+	{
+		return plan.evaluate(config.scale() , config.roundingMode() , metrics);
+	}
+	
+	private BigDecimal tryEvaluate(CompiledExpression plan , CalculatorMetrics metrics , ErrorReport report)
+	{
+		return plan.tryEvaluate(config.scale() , config.roundingMode() , metrics , report);
+	}
+	
+	/**
+	 * checks the syntax of a given expression, without evaluating it or throwing.
+	 *
+	 * @return the first syntax error, or null if the expression is well-formed.
+	 */
+	public ExpressionError validate(String expression)
+	{
+		ErrorReport report = new ErrorReport();
+		return parse(expression , report) == null ? report.error : null;
+	}
+	
+	/**
+	 * translates a given expression into postfix notation, as accepted by PostfixCalculator.
+	 * numerals are normalised on the way, e.g. .5 becomes 0.5.
+	 *
+	 * @return the expression in postfix notation.
+	 */
+	public String toPostfix(String expression)
+	{
+		return compile(expression).toString();
+	}
+	
+	/**
+	 * parses a given expression once into a reusable plan, which can then be evaluated any number of times.
+	 * accepts numerals in decimal and scientific notation, and variables, which are bound on evaluation.
+	 * besides the configured operators, the comparisons &lt; &lt;= &gt; &gt;= == != give 1 or 0, and && || and the
+	 * conditional c ? a : b take any value but 0 as true; these bind looser than arithmetic, in that order,
+	 * and only evaluate the operands they need, so e.g. the branch of a conditional not taken is never computed.
+	 * the plan does not depend on scale or rounding mode; these are only applied on evaluation.
+	 * if the configuration asks for optimisation, the plan is optimised for the scale and rounding mode in effect,
+	 * and still gives the same results under any other.
+	 *
+	 * @return the compiled expression.
+	 */
+	public CompiledExpression compile(String expression)
+	{
+		return prepare(expression , null);
+	}
+	
+	/**
+	 * parses a given expression into a plan, prepared as the configuration asks; see compile(String).
+	 *
+	 * @param report where to keep a syntax error; if null, it is thrown.
+	 * @return the plan, or null if a syntax error was kept in $report.
+	 */
+	private CompiledExpression prepare(String expression , ErrorReport report)
+	{
+		CompiledExpression plan = tieredPlans == null ? null : tieredPlans.get(expression);
+		if (plan != null) return plan;
+		
+		plan = parse(expression , report);
+		if (plan == null) return null;
+		plan = config.prepare(plan);
+		if (plan.tiered) tieredPlans.put(expression , plan);
+		return plan;
+	}
+	
+	/**
+	 * parses a given expression into a plan, as it is, without optimisation.
+	 *
+	 * @param report where to keep a syntax error; if null, it is thrown.
+	 * @return the plan, or null if a syntax error was kept in $report.
+	 */
+	private CompiledExpression parse(String expression , ErrorReport report)
 	{
 		// primarily filter illegal syntax at ^$
-		primaryCheck(expression);
+		if (!primaryCheck(expression , report)) return null;
 		
 		// expression = expression.trim(); // don't trim, or positions given in the exception will be incorrect
 		
-		// create two stacks
-		ArrayStack<BigDecimal> numStack = new ArrayStack<>(expression.length());
-		ArrayStack<Character> operatorStack = new ArrayStack<>(expression.length());
+		// operands and finished operations go straight into the plan in postfix order.
+		// a left bracket is kept in $operatorStack as a marker, with its position in $bracketStack
+		// and its group in the plan in $groupStack, so that nesting of any depth is handled in this single pass
+		// without recursion.
+		// && || and ?: emit their jump as soon as their left operand is complete, and every such operator in
+		// $operatorStack has the jump in $jumpStack, whose target is set once the operator is finished;
+		// a ? also has its position in $conditionStack, and is a marker like a left bracket until its : is met.
+		CompiledExpression.Builder plan = new CompiledExpression.Builder();
+		CharArrayStack operatorStack = new CharArrayStack();
+		IntArrayStack bracketStack = new IntArrayStack();
+		IntArrayStack groupStack = new IntArrayStack();
+		IntArrayStack jumpStack = new IntArrayStack();
+		IntArrayStack conditionStack = new IntArrayStack();
+		Lexer lexer = new Lexer(expression);
 		
 		// traverse and scan
 		boolean nextIsNum = true;       // used to distinguish + - as unary or binary operator
 		boolean equalsFlag = false;     // used to terminate the loop when encounter = sign
-		for (int i = 0 ; i < expression.length() && !equalsFlag ; )
+		while (!equalsFlag)
 		{
-			char ch = expression.charAt(i);
+			int token = lexer.next(nextIsNum); // blank characters are skipped
+			int i = lexer.start();
+			if (token == Lexer.END) break;
 			
 			if (nextIsNum)
 			{
-				if (String.valueOf(ch).matches("\\s"))
+				// meeting parenthesis while expecting a numeral means grouped calc.
+				// mark it in the stack; operators within will not reach beyond the mark.
+				if (token == Lexer.LEFT_BRACKET)
 				{
-					i++;
+					operatorStack.push('(');
+					bracketStack.push(i);
+					groupStack.push(plan.openGroup());
 					continue;
 				}
 				
-				// meeting parenthesis while expecting a numeral means grouped calc.
-				// evaluate the bracketed content, then push to $numStack.
-				// not planning to develop a method to do this as index is moved in the same time
-				if (ch == '(')
+				// should I allow brackets with no content, ()? not for now
+				if (token == Lexer.RIGHT_BRACKET && !operatorStack.isEmpty() && operatorStack.peek() == '(')
+					return ErrorReport.fail(report , ErrorCode.EMPTY_BRACKETS , bracketStack.peek() ,
+							"Empty brackets at position " + bracketStack.peek());
+				
+				if (token == Lexer.IDENTIFIER)
 				{
-					int leftBracketIndex = i;
-					// take substring until find the corresponding ')'
-					// should I allow brackets with no content, ()? not for now
-					for (int bracketLv = 1 ; bracketLv > 0 ; )
-					{
-						i++;
-						if (i == expression.length()) throw new IllegalArithmeticExpressionSyntaxException(
-								"A right bracket is missing for the left bracket at position " + leftBracketIndex);
-						
-						ch = expression.charAt(i);
-						
-						if (ch == '(') bracketLv++;
-						else if (ch == ')') bracketLv--;
-					}
-					
-					int rightBracketIndex = i;
-					String bracketedExpr = expression.substring(leftBracketIndex + 1 , rightBracketIndex);
-					if (bracketedExpr.length() == 0) throw new IllegalArithmeticExpressionSyntaxException(
-							"Empty brackets at position " + leftBracketIndex);
-					BigDecimal bracketRes = compute(bracketedExpr);
-					
-					numStack.push(bracketRes);
+					plan.variable(lexer.text());
 					nextIsNum = false;
-					i++; // $i was at position of ')', now go to next char
 					continue;
 				}
 				
-				if (!(isDigit(ch) || ch == '.' || ch == '-' || ch == '+'))
-					throw new IllegalArithmeticExpressionSyntaxException("Expecting a numeral at " + i);
-				
-				StringBuilder numSb = new StringBuilder();
-				boolean eFlag = false;
+				if (token != Lexer.NUMERAL)
+					return ErrorReport.fail(report , ErrorCode.EXPECTING_OPERAND , i , "Expecting a numeral at " + i);
 				
-				// parse this numeral while moving $i to next appropriate position
-				do
+				// syntax problems such as multiple . or e in a numeral are caught before reaching BigDecimal
+				if (!lexer.isInteger() && !lexer.isNumeral()) return ErrorReport.fail(report ,
+						ErrorCode.MALFORMED_NUMERAL , i , "Malformed numeral '" + lexer.text() + "' at position " + i);
+				if (expression.charAt(i) == '-' && isNegation(expression , lexer))
 				{
-					if (ch == 'e' || ch == 'E') eFlag = true;
-					numSb.append(ch); // go to next char
-					i++;
-					if (i < expression.length()) ch = expression.charAt(i);
-					else break;
-					
-					// if in e mode, allow this "next char" to be a sign
-					if (eFlag)
-					{
-						if (ch == '-' || ch == '+')
-						{
-							numSb.append(ch);
-							i++;
-							if (i < expression.length()) ch = expression.charAt(i);
-							else break;
-						}
-						eFlag = false;
-					}
-				} while (isDigit(ch) || ch == '.' || ch == 'e' || ch == 'E');
-				// syntax problems such as multiple . or e in a numeral will be dealt by BigDecimal constructor
-				
-				BigDecimal thisNum = new BigDecimal(numSb.toString());
-				numStack.push(thisNum);
+					// -2 ^ 2 is -1 * (2 ^ 2), as 0 - 2 ^ 2 is; the * is finished as NEGATE would be
+					plan.operand(-1);
+					operatorStack.push(Operator.NEGATE.symbol());
+					plan.numeral(expression , i + 1 , lexer.end());
+				}
+				else if (lexer.isInteger()) plan.operand(lexer.longValue());
+				else plan.operand(lexer.decimalValue());
 				nextIsNum = false;
-				// no need i++; $i is already at next position
+				continue;
 			}
-			else if (isOperator(ch))
+			
+			char ch = lexer.symbol();
+			switch (token)
 			{
-				if (operatorStack.isEmpty()) operatorStack.push(ch);
-				else if (priorityOf(ch) > priorityOf(operatorStack.peek())) operatorStack.push(ch);
-				else // finish all operations with higher priority
-				{
-					finishAllPriorOperations(numStack , operatorStack , ch);
-				}
-				nextIsNum = true;
-				i++;
-			}
-			else if (String.valueOf(ch).matches("\\s")) i++; // space or tab
-			else switch (ch) // other special characters
-				{
-					case '=' -> {
-						// if there are still characters after = sign, give warning
-						if (i != expression.length() - 1)
-						{
-							String RESET = "\u001B[0m";
-							String RED_BG = "\u001B[41m";
-							String msg = RED_BG + "Warning:" + RESET + " the part after the terminating = sign was ignored";
-							System.out.println(msg);
-							// originally thrown as an exception, now warning only
-						}
-						equalsFlag = true;
-					}
-					case '(' -> {
-						// meeting it while expecting an operator means multiply the content within.
-						// try to push * operation.
-						if (operatorStack.isEmpty()) operatorStack.push('*');
-						else if (priorityOf('*') > priorityOf(operatorStack.peek())) operatorStack.push('*');
-						else // finish all operations with higher priority
+				case Lexer.EQUALS -> {
+					// within brackets, = only terminates the bracketed content; skip to the corresponding ')'
+					int end = expression.length();
+					if (!bracketStack.isEmpty()) for (int j = i + 1 , bracketLv = 1 ; j < expression.length() ; j++)
+					{
+						char c = expression.charAt(j);
+						if (c == '(') bracketLv++;
+						else if (c == ')' && --bracketLv == 0)
 						{
-							finishAllPriorOperations(numStack , operatorStack , '*');
+							end = j;
+							break;
 						}
-						
-						nextIsNum = true; // we then expect a numeral as to evaluate the bracket content.
-						// do not i++ or the bracket cannot be detected
 					}
-					case ')' -> throw new IllegalArithmeticExpressionSyntaxException(
+					
+					// if there are still characters after = sign, give warning
+					// originally thrown as an exception, now warning only
+					if (i != end - 1)
+						config.warn("The part after the terminating = sign at position " + i + " was ignored");
+					
+					if (end == expression.length()) equalsFlag = true;
+					else lexer.seek(end); // the ')' will then be dealt as usual
+				}
+				case Lexer.LEFT_BRACKET -> {
+					// meeting it while expecting an operator means multiply the content within.
+					// push * operation after finishing those prior to it, then mark the bracket.
+					Operator multiply = config.operator('*');
+					if (multiply == null) return ErrorReport.fail(report , ErrorCode.UNRECOGNISED_SYMBOL , i ,
+							"Multiplication by the bracket at position " + i + " needs the operator '*'");
+					finishAllPriorOperations(plan , operatorStack , jumpStack , multiply);
+					
+					operatorStack.push('(');
+					bracketStack.push(i);
+					groupStack.push(plan.openGroup());
+					nextIsNum = true; // we then expect a numeral as the bracket content.
+				}
+				case Lexer.RIGHT_BRACKET -> {
+					// finish all operations back to the corresponding '(', which then encloses one numeral
+					while (!operatorStack.isEmpty() && operatorStack.peek() != '(' && operatorStack.peek() != '?')
+						finishOperation(plan , operatorStack , jumpStack);
+					if (operatorStack.isEmpty()) return ErrorReport.fail(report , ErrorCode.MISSING_LEFT_BRACKET , i ,
 							"A left bracket is missing for the right bracket at position " + i);
-					default -> throw new IllegalArithmeticExpressionSyntaxException(
+					if (operatorStack.peek() == '?') return incompleteConditional(report , conditionStack.peek());
+					
+					operatorStack.pop();
+					bracketStack.pop();
+					plan.closeGroup(groupStack.pop());
+					// still expecting an operator after the bracketed numeral
+				}
+				default -> {
+					Operator operator = Operator.builtIn(expression , i , lexer.end());
+					if (operator == null) operator = config.operator(ch);
+					if (operator == null) return ErrorReport.fail(report , ErrorCode.UNRECOGNISED_SYMBOL , i ,
 							"Unrecognised symbol '" + ch + "' at position " + i);
+					
+					if (operator == Operator.ELSE)
+					{
+						// the second operand of the conditional is complete; jump over the third from here
+						while (!operatorStack.isEmpty() && operatorStack.peek() != '(' && operatorStack.peek() != '?')
+							finishOperation(plan , operatorStack , jumpStack);
+						if (operatorStack.isEmpty() || operatorStack.peek() != '?')
+							return ErrorReport.fail(report , ErrorCode.INCOMPLETE_CONDITIONAL , i ,
+									"No ? for the : at position " + i);
+						operatorStack.pop();
+						conditionStack.pop();
+						int otherwise = plan.jump(CompiledExpression.JUMP);
+						plan.land(jumpStack.pop()); // the condition being false goes on to the third operand
+						operatorStack.push(':');
+						jumpStack.push(otherwise);
+					}
+					else
+					{
+						finishAllPriorOperations(plan , operatorStack , jumpStack , operator);
+						if (operator == Operator.AND || operator == Operator.OR || operator == Operator.CONDITIONAL)
+							jumpStack.push(plan.jump(operator.opcode));
+						if (operator == Operator.CONDITIONAL) conditionStack.push(i);
+					}
+					nextIsNum = true;
 				}
+			}
 		}
 		
-		// scan finished; calc all nums in the stack from top to bottom
-		while (numStack.size() > 1)
+		// the outermost unclosed bracket is reported
+		if (!bracketStack.isEmpty())
 		{
-			BigDecimal op2 = numStack.pop();
-			BigDecimal op1 = numStack.pop();
-			char operator = operatorStack.pop();
-			
-			// note: op2 come in prior to op1
-			numStack.push(calc(op1 , operator , op2));
+			int leftBracketIndex = bracketStack.pop();
+			while (!bracketStack.isEmpty()) leftBracketIndex = bracketStack.pop();
+			return ErrorReport.fail(report , ErrorCode.MISSING_RIGHT_BRACKET , leftBracketIndex ,
+					"A right bracket is missing for the left bracket at position " + leftBracketIndex);
 		}
 		
-		assert numStack.size() == 1 && operatorStack.isEmpty() : "Internal error";
-		return numStack.pop();
+		// an operator of two characters may end in =, which passes the primary check
+		if (nextIsNum && !equalsFlag) return ErrorReport.fail(report , ErrorCode.EXPECTING_OPERAND , expression.length() ,
+				"Expecting a numeral at the end of the expression");
+		
+		// scan finished; emit all operators in the stack from top to bottom
+		while (!operatorStack.isEmpty())
+		{
+			if (operatorStack.peek() == '?') return incompleteConditional(report , conditionStack.peek());
+			finishOperation(plan , operatorStack , jumpStack);
+		}
+		
+		assert plan.depth() == 1 : "Internal error";
+		if (plan.isTooLong()) return CompiledExpression.Builder.tooLong(report);
+		return plan.build();
 	}
 	
 	/**
-	 * finishes all operations in the stack that are prior to this operation.
+	 * emits all operations in the stack that are prior to this operation, then pushes this operation:
+	 * those of higher precedence, and those of the same if it associates to the left.
+	 * stops at a left bracket or a ? without its :, as operations outside are not to be finished yet.
 	 */
 	private void finishAllPriorOperations(
-			ArrayStack<BigDecimal> numStack , ArrayStack<Character> operatorStack , char ch
+			CompiledExpression.Builder plan , CharArrayStack operatorStack , IntArrayStack jumpStack , Operator operator
 	)
 	{
-		while (operatorStack.size() > 0 && priorityOf(operatorStack.peek()) >= priorityOf(ch))
+		while (operatorStack.size() > 0 && operatorStack.peek() != '(' && operatorStack.peek() != '?'
+				&& operator(operatorStack.peek()).precedes(operator))
+			finishOperation(plan , operatorStack , jumpStack);
+		operatorStack.push(operator.symbol());
+	}
+	
+	/**
+	 * emits the operation on top of the stack, which is complete now that its last operand is;
+	 * for && || and the : of a conditional, that means their jump now has its target.
+	 */
+	private void finishOperation(CompiledExpression.Builder plan , CharArrayStack operatorStack , IntArrayStack jumpStack)
+	{
+		Operator operator = operator(operatorStack.pop());
+		if (operator == Operator.AND || operator == Operator.OR)
 		{
-			BigDecimal op2 = numStack.pop();
-			BigDecimal op1 = numStack.pop();
-			char operator = operatorStack.pop();
-			
-			// note: op2 come in prior to op1
-			numStack.push(calc(op1 , operator , op2));
+			plan.truth();
+			plan.land(jumpStack.pop());
 		}
-		operatorStack.push(ch);
+		else if (operator == Operator.ELSE) plan.land(jumpStack.pop());
+		else plan.operator(operator);
+	}
+	
+	/**
+	 * whether the minus sign of the numeral just read from $expression negates the operation that follows
+	 * rather than the numeral alone, as the operator after the numeral binds tighter than Operator.NEGATE.
+	 * the lexer is left on the numeral, which is read again after looking ahead.
+	 */
+	private boolean isNegation(String expression , Lexer lexer)
+	{
+		int numeral = lexer.start();
+		boolean negation = false;
+		if (lexer.next(false) == Lexer.SYMBOL)
+		{
+			Operator next = Operator.builtIn(expression , lexer.start() , lexer.end());
+			if (next == null) next = config.operator(lexer.symbol());
+			negation = next != null && !Operator.NEGATE.precedes(next);
+		}
+		lexer.seek(numeral);
+		lexer.next(true);
+		return negation;
+	}
+	
+	/**
+	 * the operator of a symbol in the operator stack, built-in or configured.
+	 */
+	private Operator operator(char symbol)
+	{
+		Operator builtIn = Operator.builtIn(symbol);
+		return builtIn != null ? builtIn : config.operator(symbol);
+	}
+	
+	private static CompiledExpression incompleteConditional(ErrorReport report , int position)
+	{
+		return ErrorReport.fail(report , ErrorCode.INCOMPLETE_CONDITIONAL , position ,
+				"No : for the ? at position " + position);
 	}
 }
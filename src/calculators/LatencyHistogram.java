@@ -0,0 +1,96 @@
+package calculators;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * a concurrent histogram of durations in nanoseconds, in buckets of powers of 2:
+ * bucket i counts the durations in [2^i, 2^(i+1)), and bucket 0 those below 2 as well.
+ * recording is a leading-zero count and an uncontended increment, so it is cheap enough for every evaluation;
+ * percentiles are accurate to within a factor of 2.
+ */
+public final class LatencyHistogram
+{
+	private static final int BUCKETS = 64;
+	
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	private final LongAdder totalNanos = new LongAdder();
+	
+	public LatencyHistogram()
+	{
+		for (int i = 0 ; i < BUCKETS ; i++) buckets[i] = new LongAdder();
+	}
+	
+	void record(long nanos)
+	{
+		if (nanos < 0) nanos = 0; // nanoTime is monotonic, but a clock may still misbehave
+		buckets[63 - Long.numberOfLeadingZeros(nanos | 1)].increment();
+		totalNanos.add(nanos);
+	}
+	
+	/**
+	 * number of durations recorded.
+	 */
+	public long count()
+	{
+		long count = 0;
+		for (LongAdder bucket : buckets) count += bucket.sum();
+		return count;
+	}
+	
+	/**
+	 * mean of the durations recorded in nanoseconds, or 0 if none.
+	 */
+	public double meanNanos()
+	{
+		long count = count();
+		return count == 0 ? 0 : (double) totalNanos.sum() / count;
+	}
+	
+	/**
+	 * an upper bound of the given percentile of the durations recorded, in nanoseconds:
+	 * the end of the bucket it falls in. 0 if none recorded.
+	 *
+	 * @param percentile between 0 and 100.
+	 */
+	public long percentileNanos(double percentile)
+	{
+		if (!(percentile >= 0 && percentile <= 100))
+			throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+		
+		long[] counts = counts();
+		long count = 0;
+		for (long c : counts) count += c;
+		if (count == 0) return 0;
+		
+		long rank = Math.max(1 , (long) Math.ceil(count * percentile / 100));
+		for (int i = 0 ; i < BUCKETS ; i++)
+		{
+			rank -= counts[i];
+			if (rank <= 0) return (2L << i) - 1; // Long.MAX_VALUE for the last bucket
+		}
+		return Long.MAX_VALUE;
+	}
+	
+	/**
+	 * the count of every bucket, bucket i covering [2^i, 2^(i+1)) nanoseconds.
+	 */
+	public long[] counts()
+	{
+		long[] counts = new long[BUCKETS];
+		for (int i = 0 ; i < BUCKETS ; i++) counts[i] = buckets[i].sum();
+		return counts;
+	}
+	
+	void reset()
+	{
+		for (LongAdder bucket : buckets) bucket.reset();
+		totalNanos.reset();
+	}
+	
+	@Override
+	public String toString()
+	{
+		return String.format("count=%d mean=%.0fns p50<=%dns p99<=%dns" , count() , meanNanos() ,
+				percentileNanos(50) , percentileNanos(99));
+	}
+}
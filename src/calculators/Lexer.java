@@ -0,0 +1,391 @@
+package calculators;
+
+import static java.lang.Character.isDigit;
+
+import java.math.BigDecimal;
+
+/**
+ * splits an arithmetic expression into tokens, one at a time, without allocating per character or per token.
+ * a token is described by its type code and its offsets [start, end) in the input,
+ * and numerals are parsed straight from that range.
+ * a lexer may be reset to another input and reused.
+ */
+public final class Lexer
+{
+	/**
+	 * no more tokens; the input is exhausted.
+	 */
+	public static final int END = 0;
+	
+	/**
+	 * a numeral in decimal or scientific notation, possibly signed.
+	 * only recognised where an operand is expected; it is not validated until checked by isNumeral() or parsed.
+	 */
+	public static final int NUMERAL = 1;
+	
+	public static final int LEFT_BRACKET = 2;
+	
+	public static final int RIGHT_BRACKET = 3;
+	
+	public static final int EQUALS = 4;
+	
+	/**
+	 * any other single character, e.g. an operator, or one of the operators of two characters <= >= == != && ||;
+	 * it is up to the parser to tell whether it is recognised.
+	 */
+	public static final int SYMBOL = 5;
+	
+	/**
+	 * a variable name: a letter or underscore, followed by letters, digits and underscores.
+	 * only recognised where an operand is expected.
+	 */
+	public static final int IDENTIFIER = 6;
+	
+	/**
+	 * numerals of this many digits at most always fit in a long.
+	 */
+	static final int MAX_LONG_DIGITS = 18;
+	
+	private CharSequence input;
+	private int position;
+	private int type;
+	private int start;
+	private int end;
+	
+	public Lexer(CharSequence input)
+	{
+		reset(input);
+	}
+	
+	/**
+	 * starts over with another input.
+	 */
+	public void reset(CharSequence input)
+	{
+		if (input == null) throw new NullPointerException();
+		this.input = input;
+		this.position = 0;
+		this.type = END;
+		this.start = 0;
+		this.end = 0;
+	}
+	
+	/**
+	 * moves on to the next token, skipping blank characters.
+	 *
+	 * @param operandExpected whether an operand is expected here;
+	 *                        a sign is then part of a numeral rather than an operator.
+	 * @return the type code of the token.
+	 */
+	public int next(boolean operandExpected)
+	{
+		int length = input.length();
+		while (position < length && isWhitespace(input.charAt(position))) position++;
+		
+		start = position;
+		if (position == length)
+		{
+			end = position;
+			return type = END;
+		}
+		
+		char ch = input.charAt(position);
+		if (operandExpected && (isDigit(ch) || ch == '.' || ch == '-' || ch == '+'))
+		{
+			position = scanNumeral(position , length);
+			end = position;
+			return type = NUMERAL;
+		}
+		if (operandExpected && isIdentifierStart(ch))
+		{
+			do position++;
+			while (position < length && isIdentifierPart(input.charAt(position)));
+			end = position;
+			return type = IDENTIFIER;
+		}
+		
+		if (position + 1 < length && isPair(ch , input.charAt(position + 1)))
+		{
+			end = position += 2;
+			return type = SYMBOL;
+		}
+		
+		end = ++position;
+		return type = switch (ch)
+				{
+					case '(' -> LEFT_BRACKET;
+					case ')' -> RIGHT_BRACKET;
+					case '=' -> EQUALS;
+					default -> SYMBOL;
+				};
+	}
+	
+	/**
+	 * whether two characters make one of the operators <= >= == != && ||.
+	 */
+	private static boolean isPair(char first , char second)
+	{
+		return second == '=' ? first == '<' || first == '>' || first == '=' || first == '!'
+				: second == first && (first == '&' || first == '|');
+	}
+	
+	/**
+	 * scans a numeral from $i, returning the position after it.
+	 * the first character is taken as is; then digits, points and exponent markers follow,
+	 * with a sign allowed right after an exponent marker.
+	 * syntax problems such as multiple . or e in a numeral are left to the parsing.
+	 */
+	private int scanNumeral(int i , int length)
+	{
+		char ch = input.charAt(i);
+		do
+		{
+			boolean eFlag = ch == 'e' || ch == 'E';
+			if (++i == length) break;
+			ch = input.charAt(i);
+			
+			// if in e mode, allow this "next char" to be a sign
+			if (eFlag && (ch == '-' || ch == '+'))
+			{
+				if (++i == length) break;
+				ch = input.charAt(i);
+			}
+		} while (isDigit(ch) || ch == '.' || ch == 'e' || ch == 'E');
+		return i;
+	}
+	
+	/**
+	 * moves on so that the next token is looked for at $position.
+	 */
+	public void seek(int position)
+	{
+		this.position = position;
+	}
+	
+	public int type()
+	{
+		return type;
+	}
+	
+	/**
+	 * offset of the first character of the current token.
+	 */
+	public int start()
+	{
+		return start;
+	}
+	
+	/**
+	 * offset after the last character of the current token.
+	 */
+	public int end()
+	{
+		return end;
+	}
+	
+	/**
+	 * the first character of the current token; the whole token, unless it is a numeral, an identifier
+	 * or an operator of two characters.
+	 */
+	public char symbol()
+	{
+		return input.charAt(start);
+	}
+	
+	/**
+	 * the current token as a string; used for identifiers.
+	 */
+	public String text()
+	{
+		return input.subSequence(start , end).toString();
+	}
+	
+	/**
+	 * whether the current token is an integer numeral that fits in a long.
+	 */
+	public boolean isInteger()
+	{
+		return isInteger(input , start , end);
+	}
+	
+	/**
+	 * whether the current token is a well-formed numeral, which decimalValue() parses without throwing.
+	 */
+	public boolean isNumeral()
+	{
+		return isNumeral(input , start , end);
+	}
+	
+	/**
+	 * the current token as a long; only valid if isInteger().
+	 */
+	public long longValue()
+	{
+		return parseLong(input , start , end);
+	}
+	
+	/**
+	 * the current token as a BigDecimal.
+	 *
+	 * @throws NumberFormatException if it is not a valid numeral.
+	 */
+	public BigDecimal decimalValue()
+	{
+		BigDecimal num = parseDecimal(input , start , end);
+		
+		// long or malformed numerals are rare; leave them to the BigDecimal constructor
+		return num != null ? num : new BigDecimal(input.subSequence(start , end).toString());
+	}
+	
+	/**
+	 * identifies blank characters, the same ones as \s in a regular expression.
+	 */
+	public static boolean isWhitespace(char ch)
+	{
+		return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B' || ch == '\f' || ch == '\r';
+	}
+	
+	public static boolean isIdentifierStart(char ch)
+	{
+		return Character.isLetter(ch) || ch == '_';
+	}
+	
+	public static boolean isIdentifierPart(char ch)
+	{
+		return Character.isLetterOrDigit(ch) || ch == '_';
+	}
+	
+	/**
+	 * whether the range is an optionally signed integer of ASCII digits, short enough to fit in a long.
+	 */
+	static boolean isInteger(CharSequence s , int start , int end)
+	{
+		int i = start < end && (s.charAt(start) == '-' || s.charAt(start) == '+') ? start + 1 : start;
+		if (i == end || end - i > MAX_LONG_DIGITS) return false;
+		
+		for ( ; i < end ; i++)
+		{
+			char ch = s.charAt(i);
+			if (ch < '0' || ch > '9') return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * whether the range is a numeral the BigDecimal constructor accepts, checked without allocating:
+	 * an optional sign, digits with at most one point, and an optional exponent of e or E,
+	 * an optional sign and digits; the exponent, and the scale it gives, must fit in an int.
+	 */
+	static boolean isNumeral(CharSequence s , int start , int end)
+	{
+		int i = start;
+		if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) i++;
+		
+		long fractionDigits = 0;
+		boolean digits = false;
+		boolean point = false;
+		for ( ; i < end ; i++)
+		{
+			char ch = s.charAt(i);
+			if (isDigit(ch))
+			{
+				digits = true;
+				if (point) fractionDigits++;
+			}
+			else if (ch == '.' && !point) point = true;
+			else break;
+		}
+		if (!digits) return false;
+		if (i == end) return true;
+		
+		char ch = s.charAt(i++);
+		if (ch != 'e' && ch != 'E') return false;
+		boolean negativeExponent = false;
+		if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) negativeExponent = s.charAt(i++) == '-';
+		if (i == end) return false;
+		
+		// as BigDecimal does: leading zeros are skipped, and then at most 10 digits are allowed
+		while (end - i > 10 && Character.digit(s.charAt(i) , 10) == 0) i++;
+		if (end - i > 10) return false;
+		long exponent = 0;
+		for ( ; i < end ; i++)
+		{
+			int digit = Character.digit(s.charAt(i) , 10);
+			if (digit < 0) return false;
+			exponent = exponent * 10 + digit;
+		}
+		if (negativeExponent) exponent = -exponent;
+		
+		long scale = fractionDigits - exponent;
+		return (int)exponent == exponent && scale >= Integer.MIN_VALUE && scale <= Integer.MAX_VALUE;
+	}
+	
+	/**
+	 * parses a range that satisfies isInteger.
+	 */
+	static long parseLong(CharSequence s , int start , int end)
+	{
+		boolean negative = s.charAt(start) == '-';
+		int i = negative || s.charAt(start) == '+' ? start + 1 : start;
+		
+		long value = 0;
+		for ( ; i < end ; i++) value = value * 10 + (s.charAt(i) - '0');
+		return negative ? -value : value;
+	}
+	
+	/**
+	 * parses a well-formed numeral of ASCII digits whose digits fit in a long,
+	 * giving the same value and scale as the BigDecimal constructor would.
+	 *
+	 * @return the parsed numeral, or null if it is anything else.
+	 */
+	static BigDecimal parseDecimal(CharSequence s , int start , int end)
+	{
+		int i = start;
+		boolean negative = false;
+		if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) negative = s.charAt(i++) == '-';
+		
+		long unscaled = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean point = false;
+		for ( ; i < end ; i++)
+		{
+			char ch = s.charAt(i);
+			if (ch >= '0' && ch <= '9')
+			{
+				if (++digits > MAX_LONG_DIGITS) return null;
+				unscaled = unscaled * 10 + (ch - '0');
+				if (point) scale++;
+			}
+			else if (ch == '.' && !point) point = true;
+			else break;
+		}
+		if (digits == 0) return null;
+		
+		if (i < end)
+		{
+			// exponent: e or E, an optional sign, then at most 9 digits so that it fits in an int
+			char ch = s.charAt(i++);
+			if (ch != 'e' && ch != 'E') return null;
+			
+			boolean negativeExponent = false;
+			if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) negativeExponent = s.charAt(i++) == '-';
+			if (i == end || end - i > 9) return null;
+			
+			long exponent = 0;
+			for ( ; i < end ; i++)
+			{
+				ch = s.charAt(i);
+				if (ch < '0' || ch > '9') return null;
+				exponent = exponent * 10 + (ch - '0');
+			}
+			
+			long newScale = negativeExponent ? scale + exponent : scale - exponent;
+			if (newScale < Integer.MIN_VALUE || newScale > Integer.MAX_VALUE) return null;
+			scale = (int)newScale;
+		}
+		
+		return BigDecimal.valueOf(negative ? -unscaled : unscaled , scale);
+	}
+}
@@ -0,0 +1,64 @@
+package calculators;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * a size-bounded map evicting the least recently used entry once full.
+ * all accesses are synchronised on the cache itself, so it can be shared among threads.
+ */
+class LruCache<K, V>
+{
+	private final LinkedHashMap<K, V> map;
+	private final int capacity;
+	private long evictions = 0;
+	
+	LruCache(int capacity)
+	{
+		if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		this.capacity = capacity;
+		this.map = new LinkedHashMap<>(16 , 0.75f , true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+			{
+				if (size() <= LruCache.this.capacity) return false;
+				evictions++;
+				return true;
+			}
+		};
+	}
+	
+	/**
+	 * @return the cached value, or null if absent.
+	 */
+	synchronized V get(K key)
+	{
+		return map.get(key);
+	}
+	
+	synchronized void put(K key , V value)
+	{
+		map.put(key , value);
+	}
+	
+	synchronized void clear()
+	{
+		map.clear();
+	}
+	
+	synchronized int size()
+	{
+		return map.size();
+	}
+	
+	synchronized long evictions()
+	{
+		return evictions;
+	}
+	
+	int capacity()
+	{
+		return capacity;
+	}
+}
@@ -0,0 +1,286 @@
+package calculators;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * a binary operator: its symbol, its precedence and associativity in infix, and what it computes.
+ * the standard operators, + - * / and ^, are compiled into dedicated instructions and evaluated in long arithmetic
+ * where possible; any other is made with of(char, int, Associativity, BinaryFunction) and registered in an
+ * OperatorRegistry, and its function is called on BigDecimals.
+ * <p>
+ * a function must be pure, as an optimised plan may evaluate a repeated subexpression once;
+ * an ArithmeticException it throws fails the evaluation like a division by zero.
+ */
+public final class Operator
+{
+	public enum Associativity
+	{
+		/**
+		 * a - b - c is (a - b) - c.
+		 */
+		LEFT ,
+		
+		/**
+		 * a ^ b ^ c is a ^ (b ^ c).
+		 */
+		RIGHT
+	}
+	
+	@FunctionalInterface
+	public interface BinaryFunction
+	{
+		/**
+		 * @param scale        scale for results that are rounded, such as of division.
+		 * @param roundingMode rounding mode for results that are rounded.
+		 */
+		BigDecimal apply(BigDecimal left , BigDecimal right , int scale , RoundingMode roundingMode);
+	}
+	
+	/**
+	 * the greatest magnitude of an exponent of ^, as of BigDecimal.pow(int).
+	 */
+	public static final int MAX_EXPONENT = 999_999_999;
+	
+	/**
+	 * ^ refuses to compute a power of certainly more than this many digits.
+	 */
+	public static final int MAX_POWER_DIGITS = 10_000;
+	
+	private static final double LOG10_2 = Math.log10(2);
+	
+	public static final Operator ADD = new Operator('+' , 0 , Associativity.LEFT , null , CompiledExpression.ADD);
+	public static final Operator SUBTRACT = new Operator('-' , 0 , Associativity.LEFT , null , CompiledExpression.SUBTRACT);
+	public static final Operator MULTIPLY = new Operator('*' , 1 , Associativity.LEFT , null , CompiledExpression.MULTIPLY);
+	public static final Operator DIVIDE = new Operator('/' , 1 , Associativity.LEFT , null , CompiledExpression.DIVIDE);
+	
+	/**
+	 * exponentiation, by an integer exponent; see power(BigDecimal, BigDecimal, int, RoundingMode).
+	 */
+	public static final Operator POWER = new Operator('^' , 2 , Associativity.RIGHT , null , CompiledExpression.POWER);
+	
+	/*
+	 * the comparisons, which give 1 where they hold and 0 otherwise, and the logical operators, which take any
+	 * non-zero value as true and evaluate their right operand only if the left does not decide; as in C,
+	 * they bind looser than arithmetic, and the conditional c ? a : b loosest of all.
+	 * they are built into the syntax rather than registered, and those of two characters are known in the
+	 * operator stack of the parser by a character of the private use area.
+	 */
+	static final Operator LESS = builtIn('<' , "<" , -1 , CompiledExpression.LESS);
+	static final Operator LESS_EQUAL = builtIn('\uE000' , "<=" , -1 , CompiledExpression.LESS_EQUAL);
+	static final Operator GREATER = builtIn('>' , ">" , -1 , CompiledExpression.GREATER);
+	static final Operator GREATER_EQUAL = builtIn('\uE001' , ">=" , -1 , CompiledExpression.GREATER_EQUAL);
+	static final Operator EQUAL = builtIn('\uE002' , "==" , -2 , CompiledExpression.EQUAL);
+	static final Operator NOT_EQUAL = builtIn('\uE003' , "!=" , -2 , CompiledExpression.NOT_EQUAL);
+	static final Operator AND = builtIn('\uE004' , "&&" , -3 , CompiledExpression.AND_THEN);
+	static final Operator OR = builtIn('\uE005' , "||" , -4 , CompiledExpression.OR_ELSE);
+	
+	/**
+	 * the ? of a conditional; until its : is met, it is a left bracket to the operators after it.
+	 */
+	static final Operator CONDITIONAL = new Operator('?' , "?" , -5 , Associativity.RIGHT , null , CompiledExpression.JUMP_IF_FALSE);
+	
+	/**
+	 * the : of a conditional, which ends its second operand.
+	 */
+	static final Operator ELSE = new Operator(':' , ":" , -5 , Associativity.RIGHT , null , CompiledExpression.JUMP);
+	
+	/**
+	 * a minus sign before an operand of an operator that binds tighter than * and /, such as ^, which negates
+	 * the operation as a whole rather than the operand alone: -2 ^ 2 is -(2 ^ 2). it binds as tight as * and /,
+	 * and is compiled as a multiplication by -1, emitted before its operand; known in the operator stack of the
+	 * parser by a character of the private use area, as the built-in operators of two characters are.
+	 */
+	static final Operator NEGATE = new Operator('\uE006' , "-" , 1 , Associativity.RIGHT , null ,
+			CompiledExpression.MULTIPLY);
+	
+	/**
+	 * the symbols that operators made by of(char, int, Associativity, BinaryFunction) must not take:
+	 * those of the syntax, and the first characters of the built-in operators.
+	 */
+	private static final String RESERVED_SYMBOLS = "_.()=<>!&|?:";
+	
+	private final char symbol;
+	
+	/**
+	 * the symbol as written; other than $symbol for the built-in operators of two characters.
+	 */
+	private final String text;
+	private final int precedence;
+	private final Associativity associativity;
+	private final BinaryFunction function;
+	
+	/**
+	 * the instruction the operator compiles to; APPLY for any but the standard operators.
+	 */
+	final int opcode;
+	
+	private Operator(char symbol , int precedence , Associativity associativity , BinaryFunction function , int opcode)
+	{
+		this(symbol , String.valueOf(symbol) , precedence , associativity , function , opcode);
+	}
+	
+	private Operator(
+			char symbol , String text , int precedence , Associativity associativity , BinaryFunction function , int opcode
+	)
+	{
+		this.symbol = symbol;
+		this.text = text;
+		this.precedence = precedence;
+		this.associativity = associativity;
+		this.function = function;
+		this.opcode = opcode;
+	}
+	
+	private static Operator builtIn(char symbol , String text , int precedence , int opcode)
+	{
+		return new Operator(symbol , text , precedence , Associativity.LEFT , null , opcode);
+	}
+	
+	/**
+	 * the built-in operator written as the range [start, end) of $s, or null if it is none:
+	 * a comparison, && or ||, or either half of a conditional.
+	 */
+	static Operator builtIn(CharSequence s , int start , int end)
+	{
+		char first = s.charAt(start);
+		if (end - start == 1) return switch (first)
+				{
+					case '<' -> LESS;
+					case '>' -> GREATER;
+					case '?' -> CONDITIONAL;
+					case ':' -> ELSE;
+					default -> null;
+				};
+		if (end - start != 2) return null;
+		
+		char second = s.charAt(start + 1);
+		if (second == '=') return switch (first)
+				{
+					case '<' -> LESS_EQUAL;
+					case '>' -> GREATER_EQUAL;
+					case '=' -> EQUAL;
+					case '!' -> NOT_EQUAL;
+					default -> null;
+				};
+		if (second != first) return null;
+		return first == '&' ? AND : first == '|' ? OR : null;
+	}
+	
+	/**
+	 * the built-in operator of a symbol as kept in the operator stack of the parser, or null if it is none.
+	 */
+	static Operator builtIn(char symbol)
+	{
+		return switch (symbol)
+				{
+					case '<' -> LESS;
+					case '\uE000' -> LESS_EQUAL;
+					case '>' -> GREATER;
+					case '\uE001' -> GREATER_EQUAL;
+					case '\uE002' -> EQUAL;
+					case '\uE003' -> NOT_EQUAL;
+					case '\uE004' -> AND;
+					case '\uE005' -> OR;
+					case '?' -> CONDITIONAL;
+					case ':' -> ELSE;
+					case '\uE006' -> NEGATE;
+					default -> null;
+				};
+	}
+	
+	/**
+	 * a new operator computing $function.
+	 *
+	 * @param symbol     an ASCII character that is none of a letter, digit, blank, _ . ( ) =
+	 *                   or a character of the built-in operators, &lt; &gt; ! &amp; | ? :.
+	 * @param precedence operators of greater precedence are applied first; + and - have 0, * and / 1, ^ 2,
+	 *                   and the comparisons and logical operators less than 0.
+	 */
+	public static Operator of(char symbol , int precedence , Associativity associativity , BinaryFunction function)
+	{
+		if (associativity == null || function == null) throw new NullPointerException();
+		if (symbol >= OperatorRegistry.SIZE || Character.isLetterOrDigit(symbol) || Lexer.isWhitespace(symbol)
+				|| Character.isISOControl(symbol) || RESERVED_SYMBOLS.indexOf(symbol) >= 0)
+			throw new IllegalArgumentException("Unsuitable operator symbol '" + symbol + "'");
+		return new Operator(symbol , precedence , associativity , function , CompiledExpression.APPLY);
+	}
+	
+	public char symbol()
+	{
+		return symbol;
+	}
+	
+	public int precedence()
+	{
+		return precedence;
+	}
+	
+	public Associativity associativity()
+	{
+		return associativity;
+	}
+	
+	/**
+	 * whether this operator, met before $next, is applied before it: it binds tighter,
+	 * or as tight and $next associates to the left.
+	 */
+	boolean precedes(Operator next)
+	{
+		return precedence > next.precedence || precedence == next.precedence && next.associativity == Associativity.LEFT;
+	}
+	
+	public BigDecimal apply(BigDecimal left , BigDecimal right , int scale , RoundingMode roundingMode)
+	{
+		return function != null
+				? function.apply(left , right , scale , roundingMode)
+				: CompiledExpression.apply(left , opcode , right , scale , roundingMode);
+	}
+	
+	/**
+	 * $base raised to $exponent, by squaring. a non-negative power is exact, of scale $exponent times that of $base,
+	 * as by BigDecimal.pow(int); a negative power is its reciprocal, divided to $scale by $roundingMode.
+	 *
+	 * @throws ArithmeticException if $exponent is not an integer, is beyond MAX_EXPONENT,
+	 *                             or the power would certainly have more than MAX_POWER_DIGITS digits.
+	 */
+	static BigDecimal power(BigDecimal base , BigDecimal exponent , int scale , RoundingMode roundingMode)
+	{
+		if (exponent.signum() != 0 && exponent.stripTrailingZeros().scale() > 0)
+			throw new ArithmeticException("Exponent is not an integer: " + exponent);
+		long n;
+		try
+		{
+			n = exponent.longValueExact();
+		} catch (ArithmeticException e)
+		{
+			n = Long.MAX_VALUE;
+		}
+		if (Math.abs(n) > MAX_EXPONENT) throw new ArithmeticException("Exponent out of range: " + exponent);
+		
+		// |unscaled| >= 2^(bitLength - 1), so the power has at least this many digits
+		int magnitude = (int)Math.abs(n);
+		if ((double)magnitude * (base.unscaledValue().abs().bitLength() - 1) * LOG10_2 >= MAX_POWER_DIGITS)
+			throw new ArithmeticException("Power of more than " + MAX_POWER_DIGITS + " digits");
+		
+		BigDecimal res = BigDecimal.ONE;
+		BigDecimal square = base;
+		for (int e = magnitude ; ; )
+		{
+			if ((e & 1) != 0) res = res.multiply(square);
+			e >>>= 1;
+			if (e == 0) break;
+			square = square.multiply(square);
+		}
+		return n >= 0 ? res : BigDecimal.ONE.divide(res , scale , roundingMode);
+	}
+	
+	/**
+	 * the symbol as written.
+	 */
+	@Override
+	public String toString()
+	{
+		return text;
+	}
+}
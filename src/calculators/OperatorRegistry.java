@@ -0,0 +1,113 @@
+package calculators;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * the binary operators a calculator recognises, looked up by symbol in an array indexed by character code,
+ * so that telling an operator and its precedence costs neither hashing nor boxing.
+ * immutable: with and without give a modified copy, so a registry can be shared among configurations and threads.
+ */
+public final class OperatorRegistry
+{
+	/**
+	 * operator symbols are ASCII.
+	 */
+	static final int SIZE = 128;
+	
+	/**
+	 * + - * / and ^.
+	 */
+	public static final OperatorRegistry STANDARD = new OperatorRegistry(new Operator[SIZE])
+			.with(Operator.ADD).with(Operator.SUBTRACT).with(Operator.MULTIPLY).with(Operator.DIVIDE).with(Operator.POWER);
+	
+	private final Operator[] operators;
+	
+	private OperatorRegistry(Operator[] operators)
+	{
+		this.operators = operators;
+	}
+	
+	/**
+	 * the operator of a symbol, or null if there is none.
+	 */
+	public Operator get(char symbol)
+	{
+		return symbol < SIZE ? operators[symbol] : null;
+	}
+	
+	public boolean isOperator(char symbol)
+	{
+		return symbol < SIZE && operators[symbol] != null;
+	}
+	
+	/**
+	 * a copy with $operator registered, in place of any other of the same symbol.
+	 */
+	public OperatorRegistry with(Operator operator)
+	{
+		Operator[] copy = operators.clone();
+		copy[operator.symbol()] = operator;
+		return new OperatorRegistry(copy);
+	}
+	
+	/**
+	 * a copy without the operator of $symbol, if any.
+	 */
+	public OperatorRegistry without(char symbol)
+	{
+		if (!isOperator(symbol)) return this;
+		Operator[] copy = operators.clone();
+		copy[symbol] = null;
+		return new OperatorRegistry(copy);
+	}
+	
+	/**
+	 * a copy with only the operators of the given symbols.
+	 *
+	 * @throws IllegalArgumentException if a symbol has no operator here.
+	 */
+	public OperatorRegistry only(Set<Character> symbols)
+	{
+		Operator[] copy = new Operator[SIZE];
+		for (char symbol : symbols)
+		{
+			if (!isOperator(symbol)) throw new IllegalArgumentException("Unsupported operator(s) among " + symbols);
+			copy[symbol] = operators[symbol];
+		}
+		return new OperatorRegistry(copy);
+	}
+	
+	/**
+	 * the symbols of the operators, in order of character code.
+	 */
+	public Set<Character> symbols()
+	{
+		Set<Character> symbols = new LinkedHashSet<>();
+		for (Operator operator : operators) if (operator != null) symbols.add(operator.symbol());
+		return Collections.unmodifiableSet(symbols);
+	}
+	
+	/**
+	 * registries are equal if they hold the same operators, which are compared by identity.
+	 */
+	@Override
+	public boolean equals(Object o)
+	{
+		return o instanceof OperatorRegistry registry && Arrays.equals(operators , registry.operators);
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		return Arrays.hashCode(operators);
+	}
+	
+	@Override
+	public String toString()
+	{
+		return symbols().toString();
+	}
+}
@@ -0,0 +1,270 @@
+package calculators;
+
+import static calculators.CompiledExpression.ADD;
+import static calculators.CompiledExpression.APPLY;
+import static calculators.CompiledExpression.DIVIDE;
+import static calculators.CompiledExpression.LOAD;
+import static calculators.CompiledExpression.LOAD_TEMP;
+import static calculators.CompiledExpression.MULTIPLY;
+import static calculators.CompiledExpression.POWER;
+import static calculators.CompiledExpression.PUSH_DECIMAL;
+import static calculators.CompiledExpression.PUSH_LONG;
+import static calculators.CompiledExpression.STORE;
+import static calculators.CompiledExpression.SUBTRACT;
+import static calculators.CompiledExpression.argument;
+import static calculators.CompiledExpression.opcode;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import stacks.IntArrayStack;
+
+/**
+ * rewrites a compiled expression into an equivalent one that does less work.
+ * the program is first turned into a DAG, in which structurally identical subexpressions are a single node
+ * and constant subexpressions and identities are simplified as the nodes are created;
+ * the DAG is then written back as a program, where a node used more than once is evaluated once
+ * and kept in a temporary.
+ * <p>
+ * plans with && || or ?: are not rewritten, as their operands must only be evaluated where reached.
+ * <p>
+ * every rewrite gives exactly the same BigDecimal, scale included, as the original:
+ * <ul>
+ *     <li>constant +, - and * are exact, so they are always folded;
+ *     an operation that fails is left to fail on evaluation.</li>
+ *     <li>constant division depends on the scale and rounding mode, so it is only folded for a bound plan.</li>
+ *     <li>x * 1 is x, as the scale of a product is the sum of the scales.</li>
+ *     <li>x + 0 and x - 0 are x only if the scale of x is not negative,
+ *     as the scale of a sum is the greater of the scales; otherwise e.g. 1E+3 + 0 gives 1000.</li>
+ * </ul>
+ */
+final class Optimizer
+{
+	private static final int CONSTANT = 0;
+	private static final int VARIABLE = 1;
+	private static final int OPERATION = 2;
+	
+	/**
+	 * the scale of a node whose scale is not known in advance, e.g. a variable.
+	 */
+	private static final int UNKNOWN_SCALE = Integer.MIN_VALUE;
+	
+	private final CompiledExpression plan;
+	private final boolean bound;
+	private final int scale;
+	private final RoundingMode roundingMode;
+	
+	/**
+	 * a node of the DAG; $argument is the variable index for a variable, and the instruction for an operation.
+	 */
+	private record Node(int kind , int argument , int left , int right , BigDecimal value) {}
+	
+	/**
+	 * the nodes, children before parents; identical nodes are only ever created once.
+	 */
+	private Node[] nodes = new Node[16];
+	private int[] minScales = new int[16];
+	private int nodeCount = 0;
+	private final Map<Node , Integer> ids = new HashMap<>();
+	
+	/**
+	 * @param bound whether divisions may be folded, for $scale and $roundingMode.
+	 */
+	Optimizer(CompiledExpression plan , boolean bound , int scale , RoundingMode roundingMode)
+	{
+		this.plan = plan;
+		this.bound = bound;
+		this.scale = scale;
+		this.roundingMode = roundingMode;
+	}
+	
+	CompiledExpression optimize()
+	{
+		// a subexpression shared between a branch and elsewhere would have to be evaluated before the branch,
+		// even where the branch is not taken, which could then fail; such plans are left as they are
+		if (plan.branching) return plan;
+		
+		int root = buildDag();
+		CompiledExpression.Builder builder = new CompiledExpression.Builder(plan.variables);
+		emit(root , builder);
+		if (builder.isTooLong()) return plan; // with the temporaries it needs, the optimised plan would not fit
+		return bound ? builder.build(plan.unbound() , scale , roundingMode) : builder.build();
+	}
+	
+	/**
+	 * runs the program symbolically, creating a node for every value it computes.
+	 *
+	 * @return the node of the result.
+	 */
+	private int buildDag()
+	{
+		IntArrayStack stack = new IntArrayStack(plan.maxDepth);
+		int[] temps = new int[plan.temps];
+		for (int instruction : plan.code)
+		{
+			int argument = argument(instruction);
+			switch (opcode(instruction))
+			{
+				case PUSH_LONG , PUSH_DECIMAL -> stack.push(constant(plan.constants[argument]));
+				case LOAD -> stack.push(node(new Node(VARIABLE , argument , -1 , -1 , null) , UNKNOWN_SCALE));
+				case STORE -> temps[argument] = stack.peek();
+				case LOAD_TEMP -> stack.push(temps[argument]);
+				default -> {
+					int right = stack.pop();
+					int left = stack.pop();
+					stack.push(operation(instruction , left , right));
+				}
+			}
+		}
+		return stack.pop();
+	}
+	
+	private int constant(BigDecimal value)
+	{
+		return node(new Node(CONSTANT , 0 , -1 , -1 , value) , value.scale());
+	}
+	
+	/**
+	 * the node of an operation, simplified where it certainly gives the same result.
+	 */
+	private int operation(int instruction , int left , int right)
+	{
+		int opcode = opcode(instruction);
+		BigDecimal leftValue = nodes[left].value;
+		BigDecimal rightValue = nodes[right].value;
+		
+		// a power may be a reciprocal, divided like a division; any other operator is left to evaluation
+		if (leftValue != null && rightValue != null && opcode != APPLY && (opcode != DIVIDE && opcode != POWER || bound))
+		{
+			try
+			{
+				return constant(CompiledExpression.apply(leftValue , opcode , rightValue , scale , roundingMode));
+			} catch (ArithmeticException e)
+			{
+				// e.g. division by zero; it is reported on evaluation, as it would be without folding
+			}
+		}
+		
+		switch (opcode)
+		{
+			case MULTIPLY -> {
+				if (isOne(rightValue)) return left;
+				if (isOne(leftValue)) return right;
+			}
+			case ADD -> {
+				if (isZero(rightValue) && minScales[left] >= 0) return left;
+				if (isZero(leftValue) && minScales[right] >= 0) return right;
+			}
+			case SUBTRACT -> {
+				if (isZero(rightValue) && minScales[left] >= 0) return left;
+			}
+		}
+		
+		return node(new Node(OPERATION , instruction , left , right , null) , minScale(opcode , left , right));
+	}
+	
+	/**
+	 * the least scale the result of an operation can have.
+	 */
+	private int minScale(int opcode , int left , int right)
+	{
+		int leftScale = minScales[left];
+		int rightScale = minScales[right];
+		return switch (opcode)
+				{
+					case ADD , SUBTRACT -> Math.max(leftScale , rightScale);
+					case MULTIPLY -> leftScale == UNKNOWN_SCALE || rightScale == UNKNOWN_SCALE
+							? UNKNOWN_SCALE
+							: (int)Math.max(UNKNOWN_SCALE + 1L , (long)leftScale + rightScale);
+					case DIVIDE -> bound ? scale : UNKNOWN_SCALE;
+					default -> UNKNOWN_SCALE;
+				};
+	}
+	
+	/**
+	 * exactly 1, of scale 0; 1.0 would change the scale of a product.
+	 */
+	private static boolean isOne(BigDecimal value)
+	{
+		return value != null && value.scale() == 0 && value.compareTo(BigDecimal.ONE) == 0;
+	}
+	
+	/**
+	 * exactly 0, of scale 0.
+	 */
+	private static boolean isZero(BigDecimal value)
+	{
+		return value != null && value.scale() == 0 && value.signum() == 0;
+	}
+	
+	private int node(Node node , int minScale)
+	{
+		Integer id = ids.get(node);
+		if (id != null) return id;
+		
+		if (nodeCount == nodes.length)
+		{
+			nodes = Arrays.copyOf(nodes , nodeCount * 2);
+			minScales = Arrays.copyOf(minScales , nodeCount * 2);
+		}
+		nodes[nodeCount] = node;
+		minScales[nodeCount] = minScale;
+		ids.put(node , nodeCount);
+		return nodeCount++;
+	}
+	
+	/**
+	 * writes the DAG from $root back as a program, without recursion, as expressions may be nested very deep.
+	 * an operation used more than once is stored in a temporary the first time, and loaded from it afterwards.
+	 */
+	private void emit(int root , CompiledExpression.Builder builder)
+	{
+		// count the uses of every node reachable from the root; children always come before their parents
+		int[] uses = new int[nodeCount];
+		uses[root] = 1;
+		for (int id = root ; id >= 0 ; id--)
+		{
+			Node node = nodes[id];
+			if (uses[id] > 0 && node.kind == OPERATION)
+			{
+				uses[node.left]++;
+				uses[node.right]++;
+			}
+		}
+		
+		int[] temps = new int[nodeCount];
+		Arrays.fill(temps , -1);
+		IntArrayStack stack = new IntArrayStack();
+		stack.push(root);
+		while (!stack.isEmpty())
+		{
+			int entry = stack.pop();
+			if (entry < 0) // all operands emitted; now the operation itself
+			{
+				int id = ~entry;
+				builder.operator(plan.operatorOf(nodes[id].argument));
+				if (uses[id] > 1) temps[id] = builder.store();
+				continue;
+			}
+			
+			Node node = nodes[entry];
+			switch (node.kind)
+			{
+				case CONSTANT -> builder.operand(node.value);
+				case VARIABLE -> builder.variable(plan.variables[node.argument]);
+				default -> {
+					if (temps[entry] >= 0) builder.loadTemp(temps[entry]);
+					else
+					{
+						stack.push(~entry);
+						stack.push(node.right);
+						stack.push(node.left);
+					}
+				}
+			}
+		}
+	}
+}
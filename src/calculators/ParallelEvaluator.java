@@ -0,0 +1,258 @@
+package calculators;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * evaluates a single long infix expression in parallel on a ForkJoinPool.
+ * the expression is split at + and - outside any brackets into parts of about the threshold length,
+ * every part is evaluated by one worker as an expression of its own, and the parts are summed in BigDecimal.
+ * as addition is exact and its scale is the greater of its operands', the result is exactly that of
+ * InfixCalculator.compute(String), scale included.
+ * <p>
+ * an expression no longer than the threshold is evaluated sequentially, and so is one that cannot be split
+ * this way: one with a terminating =, or with an operator outside brackets binding as loosely as + and - or
+ * more so, such as a comparison. if any part fails, the whole expression is evaluated again sequentially,
+ * so that the error is exactly the one InfixCalculator reports.
+ * <p>
+ * the calculator is shared among the workers, which is safe as calculators are immutable;
+ * its metrics, if any, count every part as a computation of its own.
+ */
+public class ParallelEvaluator implements AutoCloseable
+{
+	public static final int DEFAULT_THRESHOLD = 1 << 20;
+	
+	private final InfixCalculator calculator;
+	private final ForkJoinPool pool;
+	private final int threshold;
+	
+	/**
+	 * whether $pool was created by this evaluator, and hence to be shut down on closing.
+	 */
+	private final boolean ownPool;
+	
+	/**
+	 * initialise a parallel evaluator on the common pool, with the default threshold.
+	 */
+	public ParallelEvaluator(InfixCalculator calculator)
+	{
+		this(calculator , ForkJoinPool.commonPool() , DEFAULT_THRESHOLD , false);
+	}
+	
+	/**
+	 * initialise a parallel evaluator on a pool of its own.
+	 *
+	 * @param parallelism number of worker threads.
+	 * @param threshold   length in characters of the parts evaluated by one worker at a time;
+	 *                    expressions no longer are evaluated sequentially.
+	 */
+	public ParallelEvaluator(InfixCalculator calculator , int parallelism , int threshold)
+	{
+		this(calculator , new ForkJoinPool(parallelism) , threshold , true);
+	}
+	
+	/**
+	 * initialise a parallel evaluator on a given pool, which will not be shut down on closing.
+	 *
+	 * @param threshold length in characters of the parts evaluated by one worker at a time;
+	 *                  expressions no longer are evaluated sequentially.
+	 */
+	public ParallelEvaluator(InfixCalculator calculator , ForkJoinPool pool , int threshold)
+	{
+		this(calculator , pool , threshold , false);
+	}
+	
+	private ParallelEvaluator(InfixCalculator calculator , ForkJoinPool pool , int threshold , boolean ownPool)
+	{
+		if (calculator == null || pool == null) throw new NullPointerException();
+		if (threshold <= 0) throw new IllegalArgumentException("Threshold must be positive: " + threshold);
+		this.calculator = calculator;
+		this.pool = pool;
+		this.threshold = threshold;
+		this.ownPool = ownPool;
+	}
+	
+	/**
+	 * evaluates an expression, in parallel if it is long enough and can be split.
+	 *
+	 * @return the computed result, the same as InfixCalculator.compute(String) gives.
+	 * @throws IllegalArgumentException as InfixCalculator.compute(String) does.
+	 * @throws ArithmeticException      as InfixCalculator.compute(String) does.
+	 */
+	public BigDecimal compute(String expression)
+	{
+		if (expression == null) throw new NullPointerException();
+		if (expression.length() <= threshold) return calculator.compute(expression);
+		
+		Parts parts = split(expression);
+		if (parts == null || parts.count == 1) return calculator.compute(expression);
+		try
+		{
+			return pool.invoke(new Sum(expression , parts , 0 , parts.count));
+		} catch (RuntimeException e)
+		{
+			return calculator.compute(expression); // fails again, as it would have on its own
+		}
+	}
+	
+	/**
+	 * the parts of an expression, each a run of terms after a + or - outside brackets, or from the start;
+	 * the i-th is the range [$starts[i], $ends[i]), and its first term ends at $firstEnds[i].
+	 */
+	private static final class Parts
+	{
+		private int[] starts = new int[16];
+		private int[] ends = new int[16];
+		private int[] firstEnds = new int[16];
+		
+		/**
+		 * whether a part follows a -, so that its first term is subtracted rather than added.
+		 */
+		private boolean[] negated = new boolean[16];
+		private int count = 0;
+		
+		void add(int start , int end , int firstEnd , boolean negate)
+		{
+			if (count == starts.length)
+			{
+				starts = Arrays.copyOf(starts , count * 2);
+				ends = Arrays.copyOf(ends , count * 2);
+				firstEnds = Arrays.copyOf(firstEnds , count * 2);
+				negated = Arrays.copyOf(negated , count * 2);
+			}
+			starts[count] = start;
+			ends[count] = end;
+			firstEnds[count] = firstEnd;
+			negated[count++] = negate;
+		}
+	}
+	
+	/**
+	 * splits an expression at + and - outside brackets into parts of at least $threshold characters,
+	 * telling operators from signs as InfixCalculator does.
+	 *
+	 * @return the parts, or null if the expression is not to be split.
+	 */
+	private Parts split(String expression)
+	{
+		Parts parts = new Parts();
+		int start = 0;
+		int firstEnd = -1; // of the current part, once known
+		boolean negate = false;
+		
+		Lexer lexer = new Lexer(expression);
+		boolean nextIsNum = true;
+		int depth = 0;
+		for (int token ; (token = lexer.next(nextIsNum)) != Lexer.END ; )
+		{
+			switch (token)
+			{
+				case Lexer.NUMERAL , Lexer.IDENTIFIER -> nextIsNum = false;
+				case Lexer.LEFT_BRACKET -> {
+					depth++;
+					nextIsNum = true;
+				}
+				case Lexer.RIGHT_BRACKET -> {
+					if (--depth < 0) return null; // a syntax error, left to the calculator to report
+					nextIsNum = false;
+				}
+				case Lexer.EQUALS -> {
+					return null;
+				}
+				default -> {
+					nextIsNum = true;
+					if (depth > 0) continue;
+					
+					Operator operator = Operator.builtIn(expression , lexer.start() , lexer.end());
+					if (operator == null) operator = calculator.config().operator(lexer.symbol());
+					if (operator == null) return null;
+					if (operator != Operator.ADD && operator != Operator.SUBTRACT)
+					{
+						// a term is whatever binds tighter than + and -
+						if (operator.precedence() <= Operator.ADD.precedence()) return null;
+						continue;
+					}
+					
+					int position = lexer.start();
+					if (firstEnd < 0) firstEnd = position;
+					if (position - start >= threshold)
+					{
+						parts.add(start , position , firstEnd , negate);
+						start = position + 1;
+						firstEnd = -1;
+						negate = operator == Operator.SUBTRACT;
+					}
+				}
+			}
+		}
+		parts.add(start , expression.length() , firstEnd < 0 ? expression.length() : firstEnd , negate);
+		return parts;
+	}
+	
+	/**
+	 * the sum of the parts in [from, to), splitting in halves while there is more than one.
+	 */
+	@SuppressWarnings("serial") // a task is never serialised, and could not be, with its evaluator
+	private class Sum extends RecursiveTask<BigDecimal>
+	{
+		private final String expression;
+		private final Parts parts;
+		private final int from;
+		private final int to;
+		
+		Sum(String expression , Parts parts , int from , int to)
+		{
+			this.expression = expression;
+			this.parts = parts;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected BigDecimal compute()
+		{
+			if (to - from == 1) return part(from);
+			
+			int mid = (from + to) >>> 1;
+			Sum right = new Sum(expression , parts , mid , to);
+			right.fork();
+			BigDecimal left = new Sum(expression , parts , from , mid).compute();
+			return left.add(right.join());
+		}
+		
+		/**
+		 * the value of a part, with its first term negated if it follows a -:
+		 * the part evaluated as it is, less twice that term.
+		 */
+		private BigDecimal part(int i)
+		{
+			BigDecimal value = calculator.compute(expression.substring(parts.starts[i] , parts.ends[i]));
+			if (!parts.negated[i]) return value;
+			if (parts.firstEnds[i] == parts.ends[i]) return value.negate();
+			
+			BigDecimal first = calculator.compute(expression.substring(parts.starts[i] , parts.firstEnds[i]));
+			return value.subtract(first).subtract(first);
+		}
+	}
+	
+	public int threshold()
+	{
+		return threshold;
+	}
+	
+	public int parallelism()
+	{
+		return pool.getParallelism();
+	}
+	
+	/**
+	 * shuts down the pool if it was created by this evaluator.
+	 */
+	@Override
+	public void close()
+	{
+		if (ownPool) pool.shutdown();
+	}
+}
@@ -0,0 +1,78 @@
+package calculators;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * the plans of the expressions a tiered calculator computed lately, by their text; see InfixCalculator.tieredPlans.
+ * <p>
+ * a lookup is a read of a ConcurrentHashMap, so threads sharing a calculator never wait on one another for a plan.
+ * once full, plans are evicted oldest first, as in SubexpressionMemo, but one looked up since it was last passed
+ * over is given a second chance: it is marked rather than moved on every lookup, which would make every lookup
+ * a write, and a formula in use stays however many others are computed once meanwhile.
+ */
+final class PlanCache
+{
+	private static final class Entry
+	{
+		final CompiledExpression plan;
+		
+		/**
+		 * whether the plan was looked up since it was put, or last passed over for eviction.
+		 */
+		volatile boolean referenced = false;
+		
+		Entry(CompiledExpression plan)
+		{
+			this.plan = plan;
+		}
+	}
+	
+	private final ConcurrentHashMap<String , Entry> plans = new ConcurrentHashMap<>();
+	
+	/**
+	 * the expressions in $plans, in the order they are to be considered for eviction.
+	 */
+	private final ConcurrentLinkedQueue<String> order = new ConcurrentLinkedQueue<>();
+	private final int capacity;
+	
+	PlanCache(int capacity)
+	{
+		if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		this.capacity = capacity;
+	}
+	
+	/**
+	 * @return the plan kept for $expression, or null if none is.
+	 */
+	CompiledExpression get(String expression)
+	{
+		Entry entry = plans.get(expression);
+		if (entry == null) return null;
+		if (!entry.referenced) entry.referenced = true; // written only once in a while, so as not to contend
+		return entry.plan;
+	}
+	
+	void put(String expression , CompiledExpression plan)
+	{
+		// one put by another thread meanwhile is kept, as it may have counted evaluations already
+		if (plans.putIfAbsent(expression , new Entry(plan)) != null) return;
+		order.add(expression);
+		
+		// a plan looked up again and again meanwhile could be passed over for ever; $chances bounds the passes
+		int chances = capacity;
+		while (plans.size() > capacity)
+		{
+			String oldest = order.poll();
+			if (oldest == null) break;
+			Entry entry = plans.get(oldest);
+			if (entry == null) continue;
+			if (entry.referenced && chances-- > 0)
+			{
+				entry.referenced = false;
+				order.add(oldest);
+			}
+			else plans.remove(oldest);
+		}
+	}
+}
@@ -0,0 +1,485 @@
+package calculators;
+
+import static calculators.CompiledExpression.ADD;
+import static calculators.CompiledExpression.APPLY;
+import static calculators.CompiledExpression.DIVIDE;
+import static calculators.CompiledExpression.LOAD;
+import static calculators.CompiledExpression.LOAD_TEMP;
+import static calculators.CompiledExpression.MULTIPLY;
+import static calculators.CompiledExpression.NOT_FIXED;
+import static calculators.CompiledExpression.POWER;
+import static calculators.CompiledExpression.PUSH_DECIMAL;
+import static calculators.CompiledExpression.PUSH_LONG;
+import static calculators.CompiledExpression.STORE;
+import static calculators.CompiledExpression.SUBTRACT;
+import static calculators.CompiledExpression.argument;
+import static calculators.CompiledExpression.isComparison;
+import static calculators.CompiledExpression.opcode;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * compiles hot tiered plans into JVM bytecode: a hidden class whose single method is the fixed-point evaluation of
+ * the plan, unrolled into straight-line code that keeps every stack slot and temporary in a pair of locals,
+ * an unscaled long and a scale, and calls FixedPoint for the arithmetic, which HotSpot inlines.
+ * wherever the interpreter would promote the evaluation to BigDecimal, the compiled code gives up instead,
+ * and the plan is evaluated again by the interpreter, so that the results are always exactly the interpreter's.
+ * <p>
+ * only plans without jumps or operators of their own, and short enough for HotSpot to compile the method,
+ * are compiled. at most MAX_CLASSES plans hold compiled code at any time; beyond that, the oldest compiled is
+ * dropped and goes back to counting. the classes are not held strongly by their class loader, so a class is
+ * unloaded once its plan is dropped or collected.
+ */
+final class PlanCompiler
+{
+	private PlanCompiler() {}
+	
+	/**
+	 * the number of evaluations after which a tiered plan is compiled.
+	 */
+	static final int THRESHOLD = 1_000;
+	
+	/**
+	 * the greatest number of tiered plans a calculator keeps by the text of their expression,
+	 * see InfixCalculator.tieredPlans.
+	 */
+	static final int CACHED_PLANS = 256;
+	
+	/**
+	 * the greatest number of plans holding compiled code at once.
+	 */
+	static final int MAX_CLASSES = 512;
+	
+	/**
+	 * the longest plan compiled; its method stays under the 8000 bytes beyond which HotSpot does not compile methods.
+	 */
+	static final int MAX_INSTRUCTIONS = 192;
+	
+	private static final int MAX_CODE_LENGTH = 8000;
+	
+	/**
+	 * a plan compiled to bytecode.
+	 */
+	interface Code
+	{
+		/**
+		 * evaluates the plan, as CompiledExpression does in long arithmetic.
+		 *
+		 * @return the result, or null where the interpreter would promote the evaluation to BigDecimal.
+		 */
+		BigDecimal evaluate(BigDecimal[] values , int scale , RoundingMode roundingMode);
+	}
+	
+	/**
+	 * the plans holding compiled code, the oldest first; held weakly, so as not to keep a plan alive.
+	 */
+	private static final ArrayDeque<WeakReference<CompiledExpression>> compiled = new ArrayDeque<>();
+	
+	/**
+	 * whether a plan would be compiled once hot.
+	 */
+	static boolean isCompilable(CompiledExpression plan)
+	{
+		if (plan.branching || plan.code.length > MAX_INSTRUCTIONS) return false;
+		for (int instruction : plan.code)
+		{
+			// APPLY is only ever evaluated in BigDecimal, and so is a constant too long for a long
+			if (opcode(instruction) == APPLY) return false;
+			if (opcode(instruction) == PUSH_DECIMAL && plan.scales[argument(instruction)] == NOT_FIXED) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * compiles a plan that isCompilable, unless it is compiled already, and sets its code;
+	 * the code of the oldest compiled plan is dropped if there are already MAX_CLASSES.
+	 */
+	static synchronized void compile(CompiledExpression plan)
+	{
+		if (plan.compiled != null) return;
+		
+		Code code;
+		try
+		{
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(new Assembler(plan).assemble() , true);
+			code = (Code)lookup.lookupClass().getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e)
+		{
+			throw new IllegalStateException("Internal error: " + e , e);
+		}
+		
+		compiled.removeIf(reference -> reference.get() == null);
+		while (compiled.size() >= MAX_CLASSES)
+		{
+			CompiledExpression oldest = compiled.removeFirst().get();
+			if (oldest == null) continue;
+			oldest.compiled = null;
+			oldest.evaluations = 0;
+		}
+		compiled.addLast(new WeakReference<>(plan));
+		plan.compiled = code;
+	}
+	
+	/**
+	 * the number of plans holding compiled code, some of which may have been collected.
+	 */
+	static synchronized int compiledCount()
+	{
+		return compiled.size();
+	}
+	
+	/**
+	 * writes the class file of a compiled plan: a final class implementing Code, with a constructor and evaluate.
+	 */
+	private static final class Assembler
+	{
+		private static final String CLASS = "calculators/CompiledPlan";
+		private static final String FIXED_POINT = "calculators/FixedPoint";
+		private static final String DECIMAL = "java/math/BigDecimal";
+		private static final String EVALUATE = "([Ljava/math/BigDecimal;ILjava/math/RoundingMode;)Ljava/math/BigDecimal;";
+		
+		/*
+		 * the locals of evaluate, after this, values, scale and roundingMode: an unscaled long and a scale
+		 * for every slot of the stack, then for every temporary.
+		 */
+		private static final int FIRST_SLOT = 4;
+		private static final int SLOT_SIZE = 3;
+		
+		private final CompiledExpression plan;
+		private final Bytes pool = new Bytes();
+		private final Map<String , Integer> poolIndices = new HashMap<>();
+		private int poolCount = 1;
+		private final Bytes code = new Bytes();
+		
+		/**
+		 * the positions of the branches to the end, where the compiled code gives up, to be patched once it is known.
+		 */
+		private int[] giveUps = new int[16];
+		private int giveUpCount = 0;
+		
+		/**
+		 * the offset of the code where it gives up, returning null.
+		 */
+		private int giveUp;
+		
+		Assembler(CompiledExpression plan)
+		{
+			this.plan = plan;
+		}
+		
+		byte[] assemble()
+		{
+			int thisClass = classEntry(CLASS);
+			int superClass = classEntry("java/lang/Object");
+			int codeInterface = classEntry("calculators/PlanCompiler$Code");
+			int codeName = utf8("Code");
+			
+			Bytes methods = new Bytes();
+			methods.u2(0x0001).u2(utf8("<init>")).u2(utf8("()V")).u2(1); // public, with a Code attribute
+			Bytes constructor = new Bytes();
+			constructor.u1(0x2A).u1(0xB7).u2(methodEntry("java/lang/Object" , "<init>" , "()V")).u1(0xB1); // aload_0 invokespecial return
+			methods.u2(codeName).u4(12 + constructor.length).u2(1).u2(1).u4(constructor.length).bytes(constructor).u2(0).u2(0);
+			
+			evaluate();
+			int stackMapName = utf8("StackMapTable");
+			Bytes stackMap = new Bytes();
+			stackMap.u2(stackMapName).u4(5).u2(1).u1(251).u2(giveUp); // one same_frame_extended, where it gives up
+			int maxLocals = FIRST_SLOT + SLOT_SIZE * (plan.maxDepth + plan.temps);
+			methods.u2(0x0001).u2(utf8("evaluate")).u2(utf8(EVALUATE)).u2(1);
+			methods.u2(codeName).u4(12 + code.length + stackMap.length)
+					.u2(8).u2(maxLocals).u4(code.length).bytes(code).u2(0).u2(1).bytes(stackMap);
+			
+			Bytes classFile = new Bytes();
+			classFile.u4(0xCAFEBABE).u2(0).u2(61); // Java 17
+			classFile.u2(poolCount).bytes(pool);
+			classFile.u2(0x0030).u2(thisClass).u2(superClass).u2(1).u2(codeInterface); // final, super
+			classFile.u2(0).u2(2).bytes(methods).u2(0); // no fields, two methods, no attributes
+			return classFile.toByteArray();
+		}
+		
+		/**
+		 * writes the code of evaluate, the instructions of the plan in turn, each with the stack at a known depth.
+		 */
+		private void evaluate()
+		{
+			int top = -1;
+			for (int instruction : plan.code)
+			{
+				int argument = argument(instruction);
+				int opcode = opcode(instruction);
+				switch (opcode)
+				{
+					case PUSH_LONG , PUSH_DECIMAL -> {
+						top++;
+						longConstant(plan.integers[argument]);
+						local(0x37 , unscaled(top)); // lstore
+						intConstant(opcode == PUSH_LONG ? 0 : plan.scales[argument]);
+						local(0x36 , scale(top)); // istore
+					}
+					case LOAD -> {
+						top++;
+						code.u1(0x2B); // aload_1
+						intConstant(argument);
+						code.u1(0x32).u1(0x59); // aaload dup
+						code.u1(0xB6).u2(methodEntry(DECIMAL , "scale" , "()I")); // invokevirtual
+						local(0x36 , scale(top));
+						invokeFixedPoint("unscaled" , "(Ljava/math/BigDecimal;)J");
+						local(0x37 , unscaled(top));
+						giveUpIfOverflow(top);
+					}
+					case ADD , SUBTRACT -> {
+						loadOperands(top);
+						invokeFixedPoint(opcode == ADD ? "add" : "subtract" , "(JIJI)J");
+						local(0x37 , unscaled(top - 1));
+						giveUpIfOverflow(top - 1);
+						local(0x15 , scale(top - 1)); // iload
+						local(0x15 , scale(top));
+						code.u1(0xB8).u2(methodEntry("java/lang/Math" , "max" , "(II)I")); // invokestatic
+						local(0x36 , scale(top - 1));
+						top--;
+					}
+					case MULTIPLY -> {
+						local(0x16 , unscaled(top - 1)); // lload
+						local(0x16 , unscaled(top));
+						invokeFixedPoint("multiply" , "(JJ)J");
+						local(0x37 , unscaled(top - 1));
+						giveUpIfOverflow(top - 1);
+						local(0x15 , scale(top - 1));
+						local(0x15 , scale(top));
+						invokeFixedPoint("productScale" , "(II)I");
+						local(0x36 , scale(top - 1));
+						giveUpIfNotFixed(top - 1);
+						top--;
+					}
+					case DIVIDE -> {
+						loadOperands(top);
+						code.u1(0x1C).u1(0x2D); // iload_2 aload_3
+						invokeFixedPoint("divide" , "(JIJIILjava/math/RoundingMode;)J");
+						local(0x37 , unscaled(top - 1));
+						giveUpIfOverflow(top - 1);
+						code.u1(0x1C);
+						local(0x36 , scale(top - 1));
+						top--;
+					}
+					case POWER -> {
+						local(0x15 , scale(top - 1));
+						local(0x16 , unscaled(top));
+						local(0x15 , scale(top));
+						invokeFixedPoint("powerScale" , "(IJI)I");
+						local(0x36 , scale(top - 1));
+						giveUpIfNotFixed(top - 1);
+						local(0x16 , unscaled(top - 1));
+						local(0x16 , unscaled(top));
+						invokeFixedPoint("power" , "(JJ)J");
+						local(0x37 , unscaled(top - 1));
+						giveUpIfOverflow(top - 1);
+						top--;
+					}
+					case STORE -> {
+						local(0x16 , unscaled(top));
+						local(0x37 , unscaled(plan.maxDepth + argument));
+						local(0x15 , scale(top));
+						local(0x36 , scale(plan.maxDepth + argument));
+					}
+					case LOAD_TEMP -> {
+						top++;
+						local(0x16 , unscaled(plan.maxDepth + argument));
+						local(0x37 , unscaled(top));
+						local(0x15 , scale(plan.maxDepth + argument));
+						local(0x36 , scale(top));
+					}
+					default -> {
+						if (!isComparison(opcode)) throw new IllegalStateException("Internal error: cannot compile opcode " + opcode);
+						intConstant(opcode);
+						loadOperands(top);
+						invokeFixedPoint("compare" , "(JIJI)I");
+						code.u1(0xB8).u2(methodEntry("calculators/CompiledExpression" , "holds" , "(II)Z"));
+						code.u1(0x85); // i2l
+						local(0x37 , unscaled(top - 1));
+						code.u1(0x03); // iconst_0
+						local(0x36 , scale(top - 1));
+						top--;
+					}
+				}
+			}
+			
+			local(0x16 , unscaled(0));
+			local(0x15 , scale(0));
+			code.u1(0xB8).u2(methodEntry(DECIMAL , "valueOf" , "(JI)Ljava/math/BigDecimal;"));
+			code.u1(0xB0); // areturn
+			
+			giveUp = code.length;
+			code.u1(0x01).u1(0xB0); // aconst_null areturn
+			for (int i = 0 ; i < giveUpCount ; i++) code.patch(giveUps[i] + 1 , giveUp - giveUps[i]);
+			if (code.length > MAX_CODE_LENGTH) throw new IllegalStateException("Internal error: compiled plan too long");
+		}
+		
+		private static int unscaled(int slot)
+		{
+			return FIRST_SLOT + SLOT_SIZE * slot;
+		}
+		
+		private static int scale(int slot)
+		{
+			return FIRST_SLOT + SLOT_SIZE * slot + 2;
+		}
+		
+		/**
+		 * pushes the unscaled values and scales of the top two slots, as FixedPoint takes them.
+		 */
+		private void loadOperands(int top)
+		{
+			local(0x16 , unscaled(top - 1));
+			local(0x15 , scale(top - 1));
+			local(0x16 , unscaled(top));
+			local(0x15 , scale(top));
+		}
+		
+		private void giveUpIfOverflow(int slot)
+		{
+			local(0x16 , unscaled(slot));
+			code.u1(0x14).u2(longEntry(FixedPoint.OVERFLOW)); // ldc2_w
+			code.u1(0x94); // lcmp
+			branchToGiveUp(0x99); // ifeq
+		}
+		
+		private void giveUpIfNotFixed(int slot)
+		{
+			local(0x15 , scale(slot));
+			intConstant(NOT_FIXED);
+			branchToGiveUp(0x9F); // if_icmpeq
+		}
+		
+		private void branchToGiveUp(int branch)
+		{
+			if (giveUpCount == giveUps.length) giveUps = Arrays.copyOf(giveUps , giveUpCount * 2);
+			giveUps[giveUpCount++] = code.length;
+			code.u1(branch).u2(0);
+		}
+		
+		private void invokeFixedPoint(String name , String descriptor)
+		{
+			code.u1(0xB8).u2(methodEntry(FIXED_POINT , name , descriptor));
+		}
+		
+		/**
+		 * a load or store of a local, widened where its index takes more than a byte.
+		 */
+		private void local(int opcode , int index)
+		{
+			if (index <= 0xFF) code.u1(opcode).u1(index);
+			else code.u1(0xC4).u1(opcode).u2(index); // wide
+		}
+		
+		private void intConstant(int value)
+		{
+			if (value >= -1 && value <= 5) code.u1(0x03 + value); // iconst_<value>
+			else if (value == (byte)value) code.u1(0x10).u1(value & 0xFF); // bipush
+			else if (value == (short)value) code.u1(0x11).u2(value & 0xFFFF); // sipush
+			else
+			{
+				int index = poolEntry("I" + value , 3 , new Bytes().u4(value));
+				code.u1(0x13).u2(index); // ldc_w
+			}
+		}
+		
+		private void longConstant(long value)
+		{
+			if (value == 0 || value == 1) code.u1(0x09 + (int)value); // lconst_<value>
+			else code.u1(0x14).u2(longEntry(value)); // ldc2_w
+		}
+		
+		private int longEntry(long value)
+		{
+			Integer index = poolIndices.get("J" + value);
+			if (index != null) return index;
+			index = poolEntry("J" + value , 5 , new Bytes().u4((int)(value >>> 32)).u4((int)value));
+			poolCount++; // a long takes two entries
+			return index;
+		}
+		
+		private int utf8(String s)
+		{
+			// the strings here are all ASCII, whose modified UTF-8 is the string itself
+			Bytes bytes = new Bytes().u2(s.length());
+			for (int i = 0 ; i < s.length() ; i++) bytes.u1(s.charAt(i));
+			return poolEntry("U" + s , 1 , bytes);
+		}
+		
+		private int classEntry(String name)
+		{
+			return poolEntry("C" + name , 7 , new Bytes().u2(utf8(name)));
+		}
+		
+		private int methodEntry(String owner , String name , String descriptor)
+		{
+			int nameAndType = poolEntry("N" + name + descriptor , 12 , new Bytes().u2(utf8(name)).u2(utf8(descriptor)));
+			return poolEntry("M" + owner + '.' + name + descriptor , 10 , new Bytes().u2(classEntry(owner)).u2(nameAndType));
+		}
+		
+		/**
+		 * the index of a constant pool entry, added unless there is one of the same $key already.
+		 */
+		private int poolEntry(String key , int tag , Bytes content)
+		{
+			Integer index = poolIndices.get(key);
+			if (index != null) return index;
+			pool.u1(tag).bytes(content);
+			poolIndices.put(key , poolCount);
+			return poolCount++;
+		}
+	}
+	
+	/**
+	 * a growable array of bytes, written big-endian as class files are.
+	 */
+	private static final class Bytes
+	{
+		private byte[] bytes = new byte[64];
+		private int length = 0;
+		
+		Bytes u1(int b)
+		{
+			if (length == bytes.length) bytes = Arrays.copyOf(bytes , length * 2);
+			bytes[length++] = (byte)b;
+			return this;
+		}
+		
+		Bytes u2(int s)
+		{
+			return u1(s >>> 8).u1(s);
+		}
+		
+		Bytes u4(int i)
+		{
+			return u2(i >>> 16).u2(i);
+		}
+		
+		Bytes bytes(Bytes other)
+		{
+			for (int i = 0 ; i < other.length ; i++) u1(other.bytes[i]);
+			return this;
+		}
+		
+		/**
+		 * overwrites the two bytes at $position.
+		 */
+		void patch(int position , int s)
+		{
+			bytes[position] = (byte)(s >>> 8);
+			bytes[position + 1] = (byte)s;
+		}
+		
+		byte[] toByteArray()
+		{
+			return Arrays.copyOf(bytes , length);
+		}
+	}
+}
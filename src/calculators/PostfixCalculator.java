@@ -1,76 +1,58 @@
 package calculators;
 
 import static java.lang.Character.isDigit;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.Map;
-import java.util.Set;
-import java.util.function.BinaryOperator;
 
-import stacks.ArrayStack;
+import stacks.IntArrayStack;
 
+/**
+ * evaluates postfix expressions.
+ * holds no state other than its immutable configuration and, if tiered, a cache of plans,
+ * so it can be shared among threads.
+ */
 public class PostfixCalculator implements Calculator
 {
 	/**
-	 * a map of character of binary operator to corresponding binary BigDecimal function.
-	 * to be initialised in constructor.
+	 * the scale, rounding mode and operators in effect.
+	 * rounding is HALF_UP unless configured otherwise.
 	 */
-	public final Map<Character, BinaryOperator<BigDecimal>> operations;
+	private final CalculatorConfig config;
 	
 	/**
-	 * a set of recognised operators, basically `operations.keySet()`.
-	 * to be initialised in constructor as that's where $operations is initialised.
+	 * under tiering, the programs of the expressions computed lately, kept by their text as in InfixCalculator;
+	 * null if not tiered.
 	 */
-	public final Set<Character> operators;
-	
-	/**
-	 * the scale (i.e. number of d.p.) when representing a decimal numeral.
-	 * protected with setter to avoid being negative.
-	 * by default 4.
-	 */
-	private int scale = 4;
+	private final PlanCache tieredPlans;
 	
 	public PostfixCalculator()
 	{
-		operations = Map.of(
-				'+' , BigDecimal::add ,
-				'-' , BigDecimal::subtract ,
-				'*' , BigDecimal::multiply ,
-				'/' , (num1 , num2) -> num1.divide(num2 , this.scale , RoundingMode.HALF_UP)
-				// '^' , (num1 , num2) -> {
-				// 	if (!num2.toPlainString().matches("\\d+(\\.0*)?")) throw new IllegalArgumentException("For now, the exponent can only be a positive integer");
-				// 	return num1.pow(num2.intValue());
-				// }
-		);
-		operators = operations.keySet();
+		this(CalculatorConfig.DEFAULT);
 	}
 	
 	public PostfixCalculator(int scale)
 	{
-		this.scale = scale;
-		operations = Map.of(
-				'+' , BigDecimal::add ,
-				'-' , BigDecimal::subtract ,
-				'*' , BigDecimal::multiply ,
-				'/' , (num1 , num2) -> num1.divide(num2 , this.scale , RoundingMode.HALF_UP)
-				// '^' , (num1 , num2) -> {
-				// 	if (!num2.toPlainString().matches("\\d+(\\.0*)?")) throw new IllegalArgumentException("For now, the exponent can only be a positive integer");
-				// 	return num1.pow(num2.intValue());
-				// }
-		);
-		operators = operations.keySet();
+		this(CalculatorConfig.of(scale));
 	}
 	
-	private static void emptyCheck(String expression)
+	public PostfixCalculator(CalculatorConfig config)
 	{
-		if (expression == null) throw new NullPointerException();
-		if (expression.length() == 0) throw new IllegalArithmeticExpressionSyntaxException("Empty expression");
+		if (config == null) throw new NullPointerException();
+		this.config = config;
+		this.tieredPlans = config.tiered() ? new PlanCache(PlanCompiler.CACHED_PLANS) : null;
 	}
 	
+	
 	/**
 	 * scientifically evaluates a given expression.
 	 * accepts numerals in decimal and scientific notation.
+	 * measured in the metrics of the configuration, if any, and reported as a SlowEvaluationEvent if enabled.
 	 *
 	 * @param expression the expression to be evaluated;
 	 *                   numerals and operators must be separated with
@@ -79,44 +61,277 @@ public class PostfixCalculator implements Calculator
 	 */
 	public BigDecimal compute(String expression)
 	{
-		emptyCheck(expression);
-		
-		String[] parts = expression.split("\\s");
-		return compute(parts);
+		SlowEvaluationEvent event = new SlowEvaluationEvent();
+		if (config.metrics() == null && !event.isEnabled()) return compute(compile(expression));
+		return CalculatorMetrics.measure(config.metrics() , event , this , expression , this::prepare , this::evaluate ,
+				null);
+	}
+	
+	/**
+	 * evaluates a postfix expression as it is read, to the end of the input; the reader is not closed.
+	 * the input is never held as a whole, so memory is bounded by the depth of the operand stack
+	 * rather than the length of the expression.
+	 * errors are reported as they are met, so an arithmetic error may be reported before a syntax error further on.
+	 * the comparisons are understood; && || and ? are refused with an IllegalArithmeticExpressionSyntaxException,
+	 * as every operand is evaluated as soon as it is read, and so could not be skipped.
+	 *
+	 * @return the computed result as BigDecimal.
+	 */
+	public BigDecimal compute(Reader reader) throws IOException
+	{
+		return new PostfixStreamEvaluator(config).evaluate(reader);
+	}
+	
+	/**
+	 * evaluates a postfix expression encoded in UTF-8 as it is read, to the end of the input;
+	 * the channel is not closed.
+	 *
+	 * @return the computed result as BigDecimal.
+	 */
+	public BigDecimal compute(ReadableByteChannel channel) throws IOException
+	{
+		return compute(Channels.newReader(channel , UTF_8.newDecoder() , -1));
+	}
+	
+	/**
+	 * evaluates a given expression without throwing for a malformed expression or a division by zero:
+	 * the error is given as a value instead, with its code and position, at about the cost of a parse.
+	 * the program is prepared and measured as by compute(String), a failure being counted as an error.
+	 *
+	 * @return the computed result, or the error that prevented it.
+	 */
+	public EvaluationResult tryCompute(String expression)
+	{
+		ErrorReport report = new ErrorReport();
+		SlowEvaluationEvent event = new SlowEvaluationEvent();
+		BigDecimal res;
+		if (config.metrics() == null && !event.isEnabled())
+		{
+			CompiledExpression program = prepare(expression , report);
+			res = program == null ? null : tryEvaluate(program , null , report);
+		}
+		else res = CalculatorMetrics.measure(config.metrics() , event , this , expression , this::prepare ,
+				this::tryEvaluate , report);
+		return res != null ? EvaluationResult.success(res) : EvaluationResult.failure(report.error);
+	}
+	
+	private BigDecimal evaluate(CompiledExpression program , CalculatorMetrics metrics , ErrorReport report)
+	{
+		return program.evaluate(config.scale() , config.roundingMode() , metrics);
+	}
+	
+	private BigDecimal tryEvaluate(CompiledExpression program , CalculatorMetrics metrics , ErrorReport report)
+	{
+		return program.tryEvaluate(config.scale() , config.roundingMode() , metrics , report);
+	}
+	
+	/**
+	 * checks the syntax of a given expression, without evaluating it or throwing.
+	 *
+	 * @return the first syntax error, or null if the expression is well-formed.
+	 */
+	public ExpressionError validate(String expression)
+	{
+		ErrorReport report = new ErrorReport();
+		return parse(expression , report) == null ? report.error : null;
 	}
 	
 	public BigDecimal compute(String[] parts)
+	{
+		return compute(compile(parts));
+	}
+	
+	/**
+	 * evaluates a compiled program with the scale and rounding mode of this calculator.
+	 * the program may come from either notation, e.g. from InfixCalculator.compile(String).
+	 *
+	 * @return the computed result as BigDecimal.
+	 */
+	public BigDecimal compute(CompiledExpression program)
+	{
+		return program.evaluate(config.scale() , config.roundingMode());
+	}
+	
+	/**
+	 * evaluates a compiled program with its variables bound to the given values.
+	 *
+	 * @return the computed result as BigDecimal.
+	 */
+	public BigDecimal compute(CompiledExpression program , Map<String , BigDecimal> bindings)
+	{
+		return program.evaluate(bindings , config.scale() , config.roundingMode());
+	}
+	
+	/**
+	 * parses a postfix expression once into a reusable program.
+	 * tokens are separated by any run of blank characters, and are not copied out of the expression
+	 * unless they are unusual numerals.
+	 * besides the configured operators, the comparisons &lt; &lt;= &gt; &gt;= == !=, && and || and the conditional
+	 * c a b ? are understood as in infix, only evaluating the operands they need.
+	 *
+	 * @return the compiled expression.
+	 */
+	public CompiledExpression compile(String expression)
+	{
+		return prepare(expression , null);
+	}
+	
+	/**
+	 * parses a given expression into a program, prepared as the configuration asks; see compile(String).
+	 *
+	 * @param report where to keep a syntax error; if null, it is thrown.
+	 * @return the program, or null if a syntax error was kept in $report.
+	 */
+	private CompiledExpression prepare(String expression , ErrorReport report)
+	{
+		CompiledExpression program = tieredPlans == null ? null : tieredPlans.get(expression);
+		if (program != null) return program;
+		
+		program = parse(expression , report);
+		if (program == null) return null;
+		program = config.prepare(program);
+		if (program.tiered) tieredPlans.put(expression , program);
+		return program;
+	}
+	
+	/**
+	 * parses a given expression into a program, as it is, without optimisation.
+	 *
+	 * @param report where to keep a syntax error; if null, it is thrown.
+	 * @return the program, or null if a syntax error was kept in $report.
+	 */
+	private CompiledExpression parse(String expression , ErrorReport report)
+	{
+		if (expression == null) throw new NullPointerException();
+		if (expression.length() == 0) return ErrorReport.fail(report , ErrorCode.EMPTY_EXPRESSION , 0 , "Empty expression");
+		CompiledExpression.Builder plan = new CompiledExpression.Builder();
+		IntArrayStack starts = new IntArrayStack();
+		
+		int length = expression.length();
+		int i = 0;
+		while (i < length)
+		{
+			if (Lexer.isWhitespace(expression.charAt(i)))
+			{
+				i++;
+				continue;
+			}
+			int start = i;
+			while (i < length && !Lexer.isWhitespace(expression.charAt(i))) i++;
+			if (!token(plan , starts , expression , start , i , start , report)) return null;
+		}
+		
+		return build(plan , length , report);
+	}
+	
+	/**
+	 * parses given tokens of a postfix expression once into a reusable program.
+	 * numerals are parsed into the constant pool here, integers straight into longs,
+	 * so that evaluation handles no strings at all and can stay in long arithmetic.
+	 * a token starting with a letter or underscore is a variable.
+	 *
+	 * @return the compiled expression.
+	 */
+	public CompiledExpression compile(String[] parts)
 	{
 		emptyCheck(parts);
-		ArrayStack<BigDecimal> numStack = new ArrayStack<>(parts.length);
+		CompiledExpression.Builder plan = new CompiledExpression.Builder();
+		IntArrayStack starts = new IntArrayStack();
 		
 		for (String part : parts)
 		{
-			if (isDigit(part.charAt(0)) || part.length() >= 2) // num with 2+ digits, or signed num
+			if (!part.isEmpty()) token(plan , starts , part , 0 , part.length() , -1 , null); // as left by splitting on every blank
+		}
+		
+		return config.prepare(build(plan , -1 , null));
+	}
+	
+	/**
+	 * emits the token in [start, end) of $s.
+	 *
+	 * @param starts   the index in the plan of the first instruction of every operand in the stack, kept up to date;
+	 *                 && || and ? insert their jumps there, so as to skip the operands they do not need.
+	 * @param position offset of the token in the expression, or -1 if not known.
+	 * @return whether the token was emitted; if not, the error is kept in $report, or thrown if none given.
+	 */
+	private boolean token(CompiledExpression.Builder plan , IntArrayStack starts , CharSequence s , int start , int end ,
+			int position , ErrorReport report)
+	{
+		char first = s.charAt(start);
+		Operator builtIn = Operator.builtIn(s , start , end);
+		if (builtIn != null && builtIn != Operator.ELSE) return builtIn(plan , starts , builtIn , position , report);
+		
+		if (Lexer.isIdentifierStart(first))
+		{
+			starts.push(plan.length());
+			plan.variable(s.subSequence(start , end).toString());
+		}
+		else if (isDigit(first) || end - start >= 2) // num with 2+ digits, or signed num
+		{
+			if (!Lexer.isInteger(s , start , end) && !Lexer.isNumeral(s , start , end))
 			{
-				BigDecimal thisNum = new BigDecimal(part);
-				numStack.push(thisNum);
+				ErrorReport.fail(report , ErrorCode.MALFORMED_NUMERAL , position ,
+						"Malformed numeral '" + s.subSequence(start , end) + "'");
+				return false;
 			}
-			else
-			{ // 1 digit: operator, or undefined symbol
-				char ch = part.charAt(0);
-				if (isOperator(ch))
+			starts.push(plan.length());
+			plan.numeral(s , start , end);
+		}
+		else
+		{ // 1 digit: operator, or undefined symbol
+			Operator operator = config.operator(first);
+			if (operator != null)
+			{
+				if (plan.depth() < 2)
 				{
-					if (numStack.size() < 2)
-						throw new IllegalArithmeticExpressionSyntaxException("Missing one or more operand(s)");
-					BigDecimal num2 = numStack.pop();
-					BigDecimal num1 = numStack.pop();
-					
-					BigDecimal res = operations.get(ch).apply(num1 , num2);
-					numStack.push(res);
+					ErrorReport.fail(report , ErrorCode.MISSING_OPERAND , position , "Missing one or more operand(s)");
+					return false;
 				}
-				else throw new IllegalArithmeticExpressionSyntaxException("Unrecognised symbol: '" + ch + "'");
+				starts.pop(); // the result starts where the left operand does
+				plan.operator(operator);
 			}
+			else
+			{
+				ErrorReport.fail(report , ErrorCode.UNRECOGNISED_SYMBOL , position ,
+						"Unrecognised symbol: '" + first + "'");
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * emits a comparison, && or ||, or the conditional c a b ?, which is c ? a : b in infix.
+	 * the jumps of && || and ? are inserted before the operands they may skip, so that these are never evaluated
+	 * unless needed, as in infix; all at once as the plan is built, so compiling stays linear in the expression.
+	 */
+	private static boolean builtIn(CompiledExpression.Builder plan , IntArrayStack starts , Operator operator ,
+			int position , ErrorReport report)
+	{
+		if (plan.depth() < (operator == Operator.CONDITIONAL ? 3 : 2))
+		{
+			ErrorReport.fail(report , ErrorCode.MISSING_OPERAND , position , "Missing one or more operand(s)");
+			return false;
 		}
 		
-		if (numStack.size() > 1)
-			throw new IllegalArithmeticExpressionSyntaxException("Missing one or more operator(s)");
-		return numStack.pop();
+		int last = starts.pop();
+		if (operator == Operator.CONDITIONAL) plan.conditional(starts.pop() , last);
+		else if (operator == Operator.AND || operator == Operator.OR) plan.logical(operator.opcode , last);
+		else plan.operator(operator);
+		return true;
+	}
+	
+	/**
+	 * @param end offset of the end of the expression, or -1 if not known.
+	 * @return the program, or null if an error was kept in $report.
+	 */
+	private CompiledExpression build(CompiledExpression.Builder plan , int end , ErrorReport report)
+	{
+		if (plan.depth() == 0) return ErrorReport.fail(report , ErrorCode.EMPTY_EXPRESSION , end , "Empty expression");
+		if (plan.depth() > 1)
+			return ErrorReport.fail(report , ErrorCode.MISSING_OPERATOR , end , "Missing one or more operator(s)");
+		if (plan.isTooLong()) return CompiledExpression.Builder.tooLong(report);
+		return plan.build();
 	}
 	
 	private void emptyCheck(String[] parts)
@@ -125,28 +340,22 @@ public class PostfixCalculator implements Calculator
 		if (parts.length == 0) throw new IllegalArithmeticExpressionSyntaxException("Empty expression");
 	}
 	
-	/**
-	 * getter for $scale.
-	 */
-	public int scale()
+	public CalculatorConfig config()
 	{
-		return this.scale;
+		return config;
 	}
 	
 	/**
-	 * setter for $scale that prohibits negative input.
+	 * a copy of this calculator with another configuration; this one is left unchanged.
 	 */
-	public void setScale(int scale)
+	public PostfixCalculator withConfig(CalculatorConfig newConfig)
 	{
-		if (scale < 0) throw new IllegalArithmeticExpressionSyntaxException("Scale cannot be negative: " + scale);
-		this.scale = scale;
+		return newConfig.equals(config) ? this : new PostfixCalculator(newConfig);
 	}
 	
-	/**
-	 * identifies if a character is an operator by checking if it is in $operators.
-	 */
-	private boolean isOperator(char c)
+	@Override
+	public PostfixCalculator withScale(int newScale)
 	{
-		return operators.contains(c);
+		return withConfig(config.withScale(newScale));
 	}
 }
\ No newline at end of file
@@ -0,0 +1,180 @@
+package calculators;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+
+import stacks.ArrayStack;
+import stacks.LongArrayStack;
+
+/**
+ * evaluates a postfix expression as its tokens are read, without holding the input.
+ * memory is bounded by the depth of the operand stack and the length of the longest token,
+ * however long the expression is.
+ * <p>
+ * operands are kept as longs for as long as possible, and promoted to BigDecimal for the rest of the expression
+ * on overflow, on a non-integral numeral or on division, as a compiled expression is.
+ * errors are reported as they are met, so an arithmetic error may be reported before a syntax error further on.
+ * <p>
+ * the comparisons are understood, but not && || and ?, which are refused: they would have to skip operands
+ * that are evaluated as soon as read, and whose errors must then not be reported.
+ */
+final class PostfixStreamEvaluator
+{
+	private static final int BUFFER_SIZE = 8192;
+	
+	private final CalculatorConfig config;
+	
+	/**
+	 * the operands while they are all integers; emptied into $decimals once promoted.
+	 */
+	private final LongArrayStack longs = new LongArrayStack();
+	
+	/**
+	 * the operands once promoted to BigDecimal; null until then.
+	 */
+	private ArrayStack<BigDecimal> decimals = null;
+	
+	private final StringBuilder token = new StringBuilder();
+	
+	PostfixStreamEvaluator(CalculatorConfig config)
+	{
+		this.config = config;
+	}
+	
+	/**
+	 * reads and evaluates the expression to the end of the input; the reader is not closed.
+	 */
+	BigDecimal evaluate(Reader reader) throws IOException
+	{
+		char[] buffer = new char[BUFFER_SIZE];
+		for (int n ; (n = reader.read(buffer)) != -1 ; )
+		{
+			for (int i = 0 ; i < n ; i++)
+			{
+				char ch = buffer[i];
+				if (!Lexer.isWhitespace(ch)) token.append(ch);
+				else if (token.length() > 0) // runs of blank characters give no empty tokens
+				{
+					accept();
+					token.setLength(0);
+				}
+			}
+		}
+		if (token.length() > 0) accept();
+		
+		int size = size();
+		if (size == 0) throw new IllegalArithmeticExpressionSyntaxException("Empty expression");
+		if (size > 1) throw new IllegalArithmeticExpressionSyntaxException("Missing one or more operator(s)");
+		return decimals == null ? BigDecimal.valueOf(longs.pop()) : decimals.pop();
+	}
+	
+	private int size()
+	{
+		return decimals == null ? longs.size() : decimals.size();
+	}
+	
+	/**
+	 * deals with the token just read, following the same rules as PostfixCalculator.compile(String[]).
+	 */
+	private void accept()
+	{
+		char first = token.charAt(0);
+		int length = token.length();
+		
+		Operator builtIn = Operator.builtIn(token , 0 , length);
+		if (builtIn == Operator.AND || builtIn == Operator.OR || builtIn == Operator.CONDITIONAL)
+			throw new IllegalArithmeticExpressionSyntaxException("'" + token
+					+ "' is unsupported in streaming mode, where the operands it may skip are evaluated as soon as read");
+		if (builtIn != null && builtIn != Operator.ELSE)
+		{
+			operate(builtIn);
+			return;
+		}
+		
+		if (Lexer.isIdentifierStart(first)) throw CompiledExpression.unbound(token.toString());
+		
+		if (Character.isDigit(first) || length >= 2) // num with 2+ digits, or signed num
+		{
+			if (decimals == null && Lexer.isInteger(token , 0 , length)) longs.push(Lexer.parseLong(token , 0 , length));
+			else
+			{
+				BigDecimal num = Lexer.parseDecimal(token , 0 , length);
+				if (num == null && !Lexer.isNumeral(token , 0 , length))
+					throw new IllegalArithmeticExpressionSyntaxException(ErrorCode.MALFORMED_NUMERAL , -1 ,
+							"Malformed numeral '" + token + "'");
+				push(num != null ? num : new BigDecimal(token.toString()));
+			}
+			return;
+		}
+		
+		Operator operator = config.operator(first);
+		if (operator == null)
+			throw new IllegalArithmeticExpressionSyntaxException("Unrecognised symbol: '" + first + "'");
+		operate(operator);
+	}
+	
+	/**
+	 * applies a binary operator, or a comparison, to the last two operands.
+	 */
+	private void operate(Operator operator)
+	{
+		if (size() < 2) throw new IllegalArithmeticExpressionSyntaxException("Missing one or more operand(s)");
+		
+		int opcode = operator.opcode;
+		if (decimals == null && CompiledExpression.isComparison(opcode))
+		{
+			long op2 = longs.pop();
+			long op1 = longs.pop();
+			longs.push(CompiledExpression.holds(opcode , Long.compare(op1 , op2)) ? 1 : 0);
+			return;
+		}
+		if (decimals == null && (opcode == CompiledExpression.ADD || opcode == CompiledExpression.SUBTRACT
+				|| opcode == CompiledExpression.MULTIPLY))
+		{
+			long op2 = longs.pop();
+			long op1 = longs.pop();
+			try
+			{
+				longs.push(switch (opcode)
+						{
+							case CompiledExpression.ADD -> Math.addExact(op1 , op2);
+							case CompiledExpression.SUBTRACT -> Math.subtractExact(op1 , op2);
+							default -> Math.multiplyExact(op1 , op2);
+						});
+				return;
+			} catch (ArithmeticException overflow)
+			{
+				// put the operands back, and redo the operation in BigDecimal
+				longs.push(op1);
+				longs.push(op2);
+			}
+		}
+		
+		promote();
+		BigDecimal op2 = decimals.pop();
+		BigDecimal op1 = decimals.pop();
+		decimals.push(operator.apply(op1 , op2 , config.scale() , config.roundingMode()));
+	}
+	
+	private void push(BigDecimal num)
+	{
+		promote();
+		decimals.push(num);
+	}
+	
+	/**
+	 * moves the long operands into $decimals, if not done already.
+	 */
+	private void promote()
+	{
+		if (decimals != null) return;
+		
+		int size = longs.size();
+		long[] values = new long[size];
+		for (int i = size - 1 ; i >= 0 ; i--) values[i] = longs.pop();
+		
+		decimals = new ArrayStack<>();
+		for (long value : values) decimals.push(BigDecimal.valueOf(value));
+	}
+}
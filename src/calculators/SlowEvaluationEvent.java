@@ -0,0 +1,48 @@
+package calculators;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * a Flight Recorder event for an expression that took long to compute, parsing included.
+ * disabled by default; while disabled, begin, end and shouldCommit do nothing and the event is never filled in,
+ * so it costs next to nothing. enable it in a recording by its name, calculators.SlowEvaluation,
+ * either through Recording.enable or with a .jfc settings file given to -XX:StartFlightRecording.
+ */
+@Name("calculators.SlowEvaluation")
+@Label("Slow Evaluation")
+@Category("Calculator")
+@Description("An expression that took longer than the threshold to parse and evaluate")
+@Enabled(false)
+@Threshold("10 ms")
+@StackTrace(false)
+final class SlowEvaluationEvent extends Event
+{
+	/**
+	 * expressions are cut to this many characters.
+	 */
+	static final int MAX_EXPRESSION_LENGTH = 256;
+	
+	@Label("Calculator")
+	String calculator;
+	
+	@Label("Expression")
+	String expression;
+	
+	@Label("Length")
+	@Description("Length of the whole expression")
+	int length;
+	
+	@Label("Stack Depth")
+	@Description("Greatest number of operands held during evaluation, or 0 if parsing failed")
+	int stackDepth;
+	
+	@Label("Failed")
+	boolean failed;
+}
@@ -0,0 +1,378 @@
+package calculators;
+
+import static calculators.CompiledExpression.AND_THEN;
+import static calculators.CompiledExpression.APPLY;
+import static calculators.CompiledExpression.DIVIDE;
+import static calculators.CompiledExpression.JUMP;
+import static calculators.CompiledExpression.JUMP_IF_FALSE;
+import static calculators.CompiledExpression.LOAD;
+import static calculators.CompiledExpression.OR_ELSE;
+import static calculators.CompiledExpression.POWER;
+import static calculators.CompiledExpression.PUSH_DECIMAL;
+import static calculators.CompiledExpression.PUSH_LONG;
+import static calculators.CompiledExpression.TRUTH;
+import static calculators.CompiledExpression.argument;
+import static calculators.CompiledExpression.opcode;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import stacks.ArrayStack;
+import stacks.IntArrayStack;
+
+/**
+ * a bounded table of the results of bracketed subexpressions, shared by all the expressions of a batch,
+ * so that a sub-term occurring in many expressions is computed once.
+ * <p>
+ * a subexpression is keyed by its operations and operands in postfix order, which are the same however it is
+ * spaced or redundantly bracketed, together with the scale and rounding mode if it has a division or a power;
+ * without one, its result depends on neither. subexpressions referring to variables, or applying operators
+ * other than the standard ones, are never memoised.
+ * the key of a group holds only its own operations and operands, and refers to the keys of the groups
+ * directly within it, as kept in the table; the keys of all the groups of a plan are so made in a single pass,
+ * and neither making them nor keeping them costs more than the length of the plan, however deeply it nests.
+ * a group within one whose entry was evicted is keyed anew, and so is not found until computed again.
+ * the table is safe to share among threads; once full, the oldest entry is evicted for every new one.
+ * <p>
+ * only plans compiled from infix record their bracketed subexpressions; any other plan is evaluated as usual.
+ */
+public final class SubexpressionMemo
+{
+	private final ConcurrentHashMap<Key , Entry> results = new ConcurrentHashMap<>();
+	
+	/**
+	 * the keys in $results, oldest first.
+	 */
+	private final ConcurrentLinkedQueue<Key> order = new ConcurrentLinkedQueue<>();
+	private final int capacity;
+	
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	
+	/**
+	 * stands in the opcodes of a key for a group within.
+	 */
+	private static final int GROUP = -1;
+	
+	/**
+	 * a subexpression: its opcodes, without arguments, the constants it pushes, and the keys of the groups
+	 * directly within it, in order; a group within is GROUP among the opcodes.
+	 * the keys of groups within are compared by identity, which is why they are taken from the table where there.
+	 * $roundingMode is null, and $scale 0, for a subexpression without division.
+	 */
+	private static final class Key
+	{
+		private final int[] opcodes;
+		private final BigDecimal[] operands;
+		private final Key[] groups;
+		private final int scale;
+		private final RoundingMode roundingMode;
+		private final int hash;
+		
+		Key(int[] opcodes , BigDecimal[] operands , Key[] groups , int scale , RoundingMode roundingMode)
+		{
+			this.opcodes = opcodes;
+			this.operands = operands;
+			this.groups = groups;
+			this.scale = scale;
+			this.roundingMode = roundingMode;
+			this.hash = 31 * (31 * (31 * Arrays.hashCode(opcodes) + Arrays.hashCode(operands)) + Arrays.hashCode(groups))
+					+ scale;
+		}
+		
+		@Override
+		public boolean equals(Object o)
+		{
+			return o instanceof Key key && hash == key.hash && scale == key.scale && roundingMode == key.roundingMode
+					&& Arrays.equals(opcodes , key.opcodes) && Arrays.equals(operands , key.operands)
+					&& sameGroups(groups , key.groups);
+		}
+		
+		private static boolean sameGroups(Key[] groups1 , Key[] groups2)
+		{
+			if (groups1.length != groups2.length) return false;
+			for (int i = 0 ; i < groups1.length ; i++) if (groups1[i] != groups2[i]) return false;
+			return true;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+	}
+	
+	/**
+	 * a result in the table, with the key it was put with, which the keys of groups around it refer to.
+	 */
+	private record Entry(Key key , BigDecimal value) {}
+	
+	/**
+	 * @param capacity the greatest number of results kept.
+	 */
+	public SubexpressionMemo(int capacity)
+	{
+		if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		this.capacity = capacity;
+	}
+	
+	/**
+	 * evaluates a plan, which must not refer to any variable, taking the result of every bracketed subexpression
+	 * from the table if there, and putting it there otherwise.
+	 * the result is exactly that of CompiledExpression.evaluate(int, RoundingMode).
+	 *
+	 * @param scale        scale for division results.
+	 * @param roundingMode rounding mode for division operation.
+	 * @return the computed result as BigDecimal.
+	 * @throws IllegalArgumentException if the plan refers to a variable.
+	 */
+	public BigDecimal evaluate(CompiledExpression plan , int scale , RoundingMode roundingMode)
+	{
+		if (roundingMode == null) throw new NullPointerException();
+		plan = plan.planFor(scale , roundingMode);
+		if (plan.groupStarts.length == 0 || plan.temps > 0) return plan.evaluate(scale , roundingMode);
+		if (plan.variables.length > 0) throw CompiledExpression.unbound(plan.variables[0]);
+		
+		int[] code = plan.code;
+		int[] starts = plan.groupStarts;
+		int[] ends = plan.groupEnds;
+		BigDecimal[] found = new BigDecimal[starts.length];
+		Key[] keys = keys(plan , scale , roundingMode , found);
+		ArrayStack<BigDecimal> numStack = new ArrayStack<>(plan.maxDepth);
+		IntArrayStack pending = new IntArrayStack(starts.length); // the groups entered and not yet left, innermost on top
+		
+		int pc = 0;
+		int g = 0; // the next group to enter
+		while (true)
+		{
+			// the value on top is that of every group ending here
+			while (!pending.isEmpty() && ends[pending.peek()] == pc) put(keys[pending.pop()] , numStack.peek());
+			if (pc == code.length) break;
+			while (g < starts.length && starts[g] < pc) g++; // those in a branch jumped over
+			
+			boolean memoised = false;
+			for ( ; g < starts.length && starts[g] == pc ; g++)
+			{
+				BigDecimal res = found[g];
+				if (res == null && keys[g] != null)
+				{
+					Entry entry = results.get(keys[g]); // put since the keys were made, e.g. by an equal group before
+					if (entry != null) res = entry.value();
+				}
+				if (res == null)
+				{
+					if (keys[g] != null) pending.push(g);
+					continue;
+				}
+				
+				// skip the whole group, along with the groups within
+				hits.increment();
+				numStack.push(res);
+				pc = ends[g];
+				while (g < starts.length && starts[g] < pc) g++;
+				memoised = true;
+				break;
+			}
+			if (memoised) continue;
+			
+			int instruction = code[pc++];
+			switch (opcode(instruction))
+			{
+				case PUSH_LONG , PUSH_DECIMAL -> numStack.push(plan.constants[argument(instruction)]);
+				case JUMP , JUMP_IF_FALSE , AND_THEN , OR_ELSE , TRUTH ->
+						pc = CompiledExpression.branch(numStack , instruction , pc - 1) + 1;
+				default -> {
+					BigDecimal op2 = numStack.pop();
+					BigDecimal op1 = numStack.pop();
+					numStack.push(plan.operate(op1 , instruction , op2 , scale , roundingMode));
+				}
+			}
+		}
+		
+		assert numStack.size() == 1 : "Internal error";
+		return numStack.pop();
+	}
+	
+	/**
+	 * the keys of the groups of a plan, or null for one that refers to a variable or applies an operator
+	 * that is not standard, made in a single pass over the plan, each once the groups within it have theirs.
+	 * a key equal to one in the table, or to one made before in the pass, is replaced by that one,
+	 * so that the keys of groups around it can refer to it by identity.
+	 * a jump is keyed with its target relative to the start of its group, so that the same subexpression
+	 * has the same key wherever it is.
+	 *
+	 * @param found where to keep the result of every group found in the table.
+	 */
+	private Key[] keys(CompiledExpression plan , int scale , RoundingMode roundingMode , BigDecimal[] found)
+	{
+		int[] code = plan.code;
+		int[] starts = plan.groupStarts;
+		int[] ends = plan.groupEnds;
+		Key[] keys = new Key[starts.length];
+		Map<Key , Key> made = new HashMap<>();
+		
+		// what the groups open hold directly, one group after another, innermost last;
+		// as every instruction is held by one group at most, these never grow
+		int[] opcodes = new int[code.length + starts.length];
+		BigDecimal[] operands = new BigDecimal[code.length];
+		Key[] groups = new Key[starts.length];
+		int opcodeCount = 0 , operandCount = 0 , groupCount = 0;
+		
+		// for every group open, where its contents start, whether it can be keyed, and whether it divides
+		int[] opcodeStarts = new int[starts.length];
+		int[] operandStarts = new int[starts.length];
+		int[] groupStarts = new int[starts.length];
+		boolean[] keyed = new boolean[starts.length];
+		boolean[] division = new boolean[starts.length];
+		IntArrayStack open = new IntArrayStack(starts.length); // innermost on top
+		
+		int g = 0; // the next group to open
+		for (int pc = 0 ; ; pc++)
+		{
+			while (!open.isEmpty() && ends[open.peek()] == pc)
+			{
+				int group = open.pop();
+				Key key = null;
+				if (keyed[group])
+				{
+					key = new Key(Arrays.copyOfRange(opcodes , opcodeStarts[group] , opcodeCount) ,
+							Arrays.copyOfRange(operands , operandStarts[group] , operandCount) ,
+							Arrays.copyOfRange(groups , groupStarts[group] , groupCount) ,
+							division[group] ? scale : 0 , division[group] ? roundingMode : null);
+					Entry entry = results.get(key);
+					if (entry != null)
+					{
+						key = entry.key();
+						found[group] = entry.value();
+					}
+					else
+					{
+						Key before = made.putIfAbsent(key , key);
+						if (before != null) key = before;
+					}
+				}
+				keys[group] = key;
+				opcodeCount = opcodeStarts[group];
+				Arrays.fill(operands , operandStarts[group] , operandCount , null);
+				operandCount = operandStarts[group];
+				Arrays.fill(groups , groupStarts[group] , groupCount , null);
+				groupCount = groupStarts[group];
+				
+				if (open.isEmpty()) continue;
+				int outer = open.peek();
+				if (key == null) keyed[outer] = false;
+				else if (keyed[outer])
+				{
+					division[outer] |= key.roundingMode != null;
+					opcodes[opcodeCount++] = GROUP;
+					groups[groupCount++] = key;
+				}
+			}
+			if (pc == code.length) break;
+			
+			for ( ; g < starts.length && starts[g] == pc ; g++)
+			{
+				opcodeStarts[g] = opcodeCount;
+				operandStarts[g] = operandCount;
+				groupStarts[g] = groupCount;
+				keyed[g] = true;
+				division[g] = false;
+				open.push(g);
+			}
+			if (open.isEmpty()) continue;
+			
+			int inner = open.peek();
+			if (!keyed[inner]) continue;
+			int instruction = code[pc];
+			int opcode = opcode(instruction);
+			if (opcode == LOAD || opcode == APPLY)
+			{
+				keyed[inner] = false;
+				continue;
+			}
+			if (opcode == PUSH_LONG || opcode == PUSH_DECIMAL) operands[operandCount++] = plan.constants[argument(instruction)];
+			division[inner] |= opcode == DIVIDE || opcode == POWER; // a negative power is divided
+			opcodes[opcodeCount++] = CompiledExpression.isJump(instruction)
+					? CompiledExpression.instruction(opcode , argument(instruction) - starts[inner])
+					: opcode;
+		}
+		return keys;
+	}
+	
+	private void put(Key key , BigDecimal value)
+	{
+		misses.increment();
+		// one put by another thread meanwhile is kept, as keys around it may refer to its key already
+		if (results.putIfAbsent(key , new Entry(key , value)) != null) return;
+		order.add(key);
+		while (results.size() > capacity)
+		{
+			Key oldest = order.poll();
+			if (oldest == null) break;
+			if (results.remove(oldest) != null) evictions.increment();
+		}
+	}
+	
+	/**
+	 * drops all memoised results; the statistics are kept.
+	 */
+	public void clear()
+	{
+		results.clear();
+		order.clear();
+	}
+	
+	/**
+	 * number of subexpressions whose result was taken from the table.
+	 */
+	public long hits()
+	{
+		return hits.sum();
+	}
+	
+	/**
+	 * number of subexpressions computed and put in the table.
+	 */
+	public long misses()
+	{
+		return misses.sum();
+	}
+	
+	/**
+	 * the share of subexpressions looked up that were found, between 0 and 1; 0 before any lookup.
+	 */
+	public double hitRate()
+	{
+		long hit = hits.sum();
+		long total = hit + misses.sum();
+		return total == 0 ? 0 : (double) hit / total;
+	}
+	
+	/**
+	 * number of results dropped to make room for newer ones.
+	 */
+	public long evictions()
+	{
+		return evictions.sum();
+	}
+	
+	/**
+	 * number of results currently memoised.
+	 */
+	public int size()
+	{
+		return results.size();
+	}
+	
+	public int capacity()
+	{
+		return capacity;
+	}
+}
@@ -1,6 +1,8 @@
 package calculators.leetcode;
 
-import java.util.Stack;
+import java.util.Arrays;
+
+import stacks.IntArrayStack;
 
 /**
  * https://leetcode.com/problems/basic-calculator/
@@ -13,11 +15,92 @@ import java.util.Stack;
  */
 public class BasicCalculator
 {
+	/**
+	 * nesting of brackets whose signs fit in a single long; deeper ones spill into an array.
+	 */
+	private static final int WORD = Long.SIZE;
+	
+	/**
+	 * the sum in a single pass, without allocating.
+	 * a sum of + and - only is that of its numerals, each negated if an odd number of minuses applies to it:
+	 * the one before it, if any, and the one before each bracket it is in.
+	 * so the only state kept across brackets is whether each open bracket is negated, one bit per level,
+	 * held in a long for up to 64 levels; an array is allocated only for deeper nesting.
+	 * <p>
+	 * the result is identical to calculateWithStacks, overflow included, as int arithmetic wraps around either way.
+	 */
 	public static int calculate(String expression)
+	{
+		int res = 0;
+		boolean negated = false; // whether the bracket being scanned is negated
+		boolean minus = false; // whether the operator before the next operand is -
+		long outer = 0; // bit i: whether the bracket at level i + 1 was negated when entered, i < 64
+		long[] deeper = null; // the same for the levels beyond
+		int depth = 0;
+		
+		for (int i = 0 , length = expression.length() ; i < length ; )
+		{
+			char ch = expression.charAt(i);
+			if (Character.isDigit(ch))
+			{
+				int num = Character.getNumericValue(ch);
+				for (i++; i < length && Character.isDigit(ch = expression.charAt(i)) ; i++)
+				{
+					num *= 10;
+					num += Character.getNumericValue(ch);
+				}
+				res = negated != minus ? res - num : res + num;
+				// no need i++
+				continue;
+			}
+			
+			switch (ch)
+			{
+				case '+' -> minus = false;
+				case '-' -> minus = true;
+				case '(' -> {
+					// remember the sign outside, to be restored at the closing bracket
+					if (depth < WORD)
+					{
+						if (negated) outer |= 1L << depth;
+						else outer &= ~(1L << depth);
+					}
+					else
+					{
+						int word = depth / WORD - 1;
+						if (deeper == null) deeper = new long[4];
+						else if (word == deeper.length) deeper = Arrays.copyOf(deeper , word * 2);
+						if (negated) deeper[word] |= 1L << depth;
+						else deeper[word] &= ~(1L << depth);
+					}
+					depth++;
+					negated = negated != minus;
+					minus = false;
+				}
+				case ')' -> {
+					depth--;
+					negated = depth < WORD
+							? (outer & 1L << depth) != 0
+							: (deeper[depth / WORD - 1] & 1L << depth) != 0;
+					minus = false;
+				}
+				case ' ' -> {}
+				default -> throw new IllegalStateException("Unexpected value: " + ch);
+			}
+			i++;
+		}
+		return res;
+	}
+	
+	/**
+	 * the original solution, with a stack of numerals and a recursive call on the substring of each bracket;
+	 * kept as the reference calculate is tested against.
+	 */
+	public static int calculateWithStacks(String expression)
 	{
 		// no need to check validity of expression
 		
-		Stack<Integer> numStack = new Stack<>();
+		IntArrayStack numStack = new IntArrayStack();
 		char operatorRegistry = '\0';
 		// no need operator stack because no priority issues;
 		// do the operation once
@@ -110,7 +193,7 @@ public class BasicCalculator
 					
 					int rightBracketIndex = i - 1;
 					String bracketedExpression = expression.substring(leftBracketIndex + 1 , rightBracketIndex);
-					int res = calculate(bracketedExpression);
+					int res = calculateWithStacks(bracketedExpression);
 					numStack.push(res);
 					// no need i++
 				}
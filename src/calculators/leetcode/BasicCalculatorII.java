@@ -3,8 +3,8 @@ package calculators.leetcode;
 import static java.lang.Character.getNumericValue;
 import static java.lang.Character.isDigit;
 
-import java.util.List;
-import java.util.Stack;
+import stacks.CharArrayStack;
+import stacks.IntArrayStack;
 
 /**
  * https://leetcode.com/problems/basic-calculator-ii/
@@ -40,13 +40,65 @@ public class BasicCalculatorII
 	
 	private static boolean isOperator(char c)
 	{
-		return List.of('+' , '-' , '*' , '/').contains(c);
+		return c == '+' || c == '-' || c == '*' || c == '/';
 	}
 	
+	/**
+	 * the value in a single pass, without allocating.
+	 * with only two priorities and no brackets, an operator stack never holds more than a + or - below a * or /,
+	 * so it comes down to a running sum of the terms finished so far and the term being multiplied out.
+	 * <p>
+	 * the result is identical to calculateWithStacks, overflow included: the terms are computed in the same order,
+	 * and are added in the same order, where int arithmetic wraps around.
+	 */
 	public static int calculate(String expression)
 	{
-		Stack<Integer> numStack = new Stack<>();
-		Stack<Character> operatorStack = new Stack<>();
+		int sum = 0;
+		boolean minus = false; // whether the term is subtracted from the sum
+		int term = 0;
+		char operator = '\0'; // the * or / before the next numeral, if any
+		
+		for (int i = 0 , length = expression.length() ; i < length ; )
+		{
+			char ch = expression.charAt(i);
+			if (isDigit(ch))
+			{
+				int num = getNumericValue(ch);
+				for (i++; i < length && isDigit(ch = expression.charAt(i)) ; i++)
+				{
+					num *= 10;
+					num += getNumericValue(ch);
+				}
+				term = operator == '\0' ? num : calc(term , operator , num);
+				// no i++
+				continue;
+			}
+			
+			switch (ch)
+			{
+				case '+' , '-' -> {
+					sum = minus ? sum - term : sum + term;
+					minus = ch == '-';
+					operator = '\0';
+				}
+				case '*' , '/' -> operator = ch;
+				default -> {
+					assert ch == ' ';
+				}
+			}
+			i++;
+		}
+		return minus ? sum - term : sum + term;
+	}
+	
+	/**
+	 * the original solution, by a stack of numerals and a stack of operators; kept as the reference
+	 * calculate is tested against.
+	 */
+	public static int calculateWithStacks(String expression)
+	{
+		IntArrayStack numStack = new IntArrayStack();
+		CharArrayStack operatorStack = new CharArrayStack();
 		
 		for (int i = 0 ; i < expression.length() ; )
 		{
@@ -3,9 +3,14 @@ package stacks;
 import static java.lang.String.format;
 import static java.lang.String.join;
 
+import java.util.Arrays;
+
 public class ArrayStack<T>
 {
-	private final Object[] stack;
+	static final int DEFAULT_CAPACITY = 16;
+	static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	private Object[] stack;
 	private int top = -1;
 	final int maxSize;
 
@@ -15,6 +20,15 @@ public class ArrayStack<T>
 		this.stack = new Object[maxSize];
 	}
 
+	/**
+	 * a growable stack, which starts small and is never full.
+	 */
+	public ArrayStack()
+	{
+		this.maxSize = MAX_ARRAY_SIZE;
+		this.stack = new Object[DEFAULT_CAPACITY];
+	}
+
 	public boolean isFull()
 	{
 		return top == maxSize - 1;
@@ -34,6 +48,7 @@ public class ArrayStack<T>
 	public boolean push(T elem)
 	{
 		if (this.isFull()) return false;
+		if (top == stack.length - 1) this.stack = Arrays.copyOf(stack , grownCapacity(stack.length , maxSize));
 		
 		this.top++;
 		this.stack[top] = elem;
@@ -46,8 +61,10 @@ public class ArrayStack<T>
 	{
 		if (this.isEmpty()) throw new IndexOutOfBoundsException("Popping from an empty stack");
 
+		T elem = (T)this.stack[top];
+		this.stack[top] = null; // let go of the reference
 		this.top--;
-		return (T)this.stack[top + 1];
+		return elem;
 	}
 
 	public String toString(String sep)
@@ -72,4 +89,12 @@ public class ArrayStack<T>
 	{
 		return (T)this.stack[top];
 	}
+
+	/**
+	 * the capacity to grow to once $capacity is used up: double, but no more than $maxSize.
+	 */
+	static int grownCapacity(int capacity , int maxSize)
+	{
+		return (int)Math.min((long)Math.max(capacity , 1) * 2 , maxSize);
+	}
 }
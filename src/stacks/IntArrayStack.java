@@ -0,0 +1,88 @@
+package stacks;
+
+import static java.lang.String.format;
+import static java.lang.String.join;
+
+import java.util.Arrays;
+
+/**
+ * a stack of primitive ints, without boxing; otherwise the same as ArrayStack.
+ */
+public class IntArrayStack
+{
+	private int[] stack;
+	private int top = -1;
+	final int maxSize;
+
+	public IntArrayStack(int maxSize)
+	{
+		this.maxSize = maxSize;
+		this.stack = new int[maxSize];
+	}
+
+	/**
+	 * a growable stack, which starts small and is never full.
+	 */
+	public IntArrayStack()
+	{
+		this.maxSize = ArrayStack.MAX_ARRAY_SIZE;
+		this.stack = new int[ArrayStack.DEFAULT_CAPACITY];
+	}
+
+	public boolean isFull()
+	{
+		return top == maxSize - 1;
+	}
+
+	public boolean isEmpty()
+	{
+		return top == -1;
+	}
+
+	public int size()
+	{
+		return this.top + 1;
+	}
+
+	@SuppressWarnings("UnusedReturnValue")
+	public boolean push(int elem)
+	{
+		if (this.isFull()) return false;
+		if (top == stack.length - 1) this.stack = Arrays.copyOf(stack , ArrayStack.grownCapacity(stack.length , maxSize));
+
+		this.top++;
+		this.stack[top] = elem;
+
+		return true;
+	}
+
+	public int pop()
+	{
+		if (this.isEmpty()) throw new IndexOutOfBoundsException("Popping from an empty stack");
+
+		this.top--;
+		return this.stack[top + 1];
+	}
+
+	public String toString(String sep)
+	{
+		String[] arr = new String[top + 1];
+		for (int i = 0 ; i <= top ; i++)
+		{
+			arr[i] = String.valueOf(this.stack[i]);
+		}
+
+		return format("[%s]" , join(sep , arr));
+	}
+
+	@Override
+	public String toString()
+	{
+		return this.toString(" , ");
+	}
+
+	public int peek()
+	{
+		return this.stack[top];
+	}
+}